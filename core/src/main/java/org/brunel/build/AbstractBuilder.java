@@ -21,6 +21,7 @@ import org.brunel.build.info.ChartStructure;
 import org.brunel.build.controls.Controls;
 import org.brunel.build.data.DataBuilder;
 import org.brunel.build.data.DataModifier;
+import org.brunel.build.data.DerivedDataCache;
 import org.brunel.build.info.ElementStructure;
 import org.brunel.build.util.BuilderOptions;
 import org.brunel.data.Dataset;
@@ -199,7 +200,8 @@ public abstract class AbstractBuilder implements Builder, DataModifier {
         VisSingle[] elements = new VisSingle[items.length];
         for (int i = 0; i < items.length; i++) {
             elements[i] = items[i].getSingle().makeCanonical();
-            data[i] = new DataBuilder(elements[i], this).build();
+            data[i] = new DataBuilder(elements[i], this, options.dataParallelism,
+                    options.cacheDerivedData ? DerivedDataCache.shared() : null).build();
         }
 
 
@@ -25,13 +25,17 @@ import org.brunel.build.data.DataTransformParameters;
 import org.brunel.build.info.ChartStructure;
 import org.brunel.build.info.ElementStructure;
 import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataMethod;
 import org.brunel.build.util.ScriptWriter;
 import org.brunel.data.Data;
+import org.brunel.data.Dataset;
 import org.brunel.model.VisItem;
 import org.brunel.model.VisSingle;
 import org.brunel.model.VisTypes.Coordinates;
 import org.brunel.model.VisTypes.Element;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -69,6 +73,8 @@ public class D3Builder extends AbstractBuilder {
     private D3ScaleBuilder scalesBuilder;       // The scales for the current chart
     private D3Interaction interaction;          // Builder for interactions
     private D3ElementBuilder[] elementBuilders; // Builder for each element
+    private int[] datasetUses;                  // Number of elements using each data set (minimal data only)
+    private Dataset[] summarizedData;           // Summarized data to send in place of the original data sets
 
     private D3Builder(BuilderOptions options) {
         super(options);
@@ -78,6 +84,16 @@ public class D3Builder extends AbstractBuilder {
         return out.content();
     }
 
+    /**
+     * Write the visualization script, streaming the data tables rather than building them as text
+     *
+     * @param writer where to write the same text as getVisualization returns
+     * @throws IOException if the writer fails
+     */
+    public void writeVisualization(Writer writer) throws IOException {
+        out.writeTo(writer);
+    }
+
     public String makeImports() {
 
         String pattern = "\t<script src=\"%s\" charset=\"utf-8\"></script>\n";
@@ -188,7 +204,12 @@ public class D3Builder extends AbstractBuilder {
         // Data transforms
         int datasetIndex = structure.getBaseDatasetIndex();
         VisSingle vis = structure.vis;
-        D3DataBuilder dataBuilder = new D3DataBuilder(vis, out, structure.data, datasetIndex);
+        Dataset summarized = null;
+        if (summarizedData != null) {
+            summarized = D3DataBuilder.makeSummarizedData(structure, datasetUses[datasetIndex]);
+            summarizedData[datasetIndex] = summarized;
+        }
+        D3DataBuilder dataBuilder = new D3DataBuilder(vis, out, structure.data, datasetIndex, summarized != null);
         dataBuilder.writeDataManipulation(createResultFields(vis));
 
         scalesBuilder.writeAestheticScales(vis);
@@ -226,6 +247,15 @@ public class D3Builder extends AbstractBuilder {
         this.visHeight = height;
         this.out = new ScriptWriter(options);
 
+        // For minimal data we may send summarized data sets in place of the originals
+        if (options.includeData == DataMethod.minimal) {
+            datasetUses = D3DataBuilder.countDatasetUses(main);
+            summarizedData = new Dataset[datasetUses.length];
+        } else {
+            datasetUses = null;
+            summarizedData = null;
+        }
+
         // Write the class definition function (and flag to use strict mode)
         out.add("function ", options.className, "(visId) {").ln().indentMore();
         out.add("\"use strict\";").comment("Strict Mode");
@@ -319,7 +349,7 @@ public class D3Builder extends AbstractBuilder {
         out.indentLess().onNewLine().add("}").ln();
 
         // Create the initial raw data table
-        D3DataBuilder.writeTables(main, out, options);
+        D3DataBuilder.writeTables(main, out, options, summarizedData);
 
         // Call the function on the data
         if (options.generateBuildCode) {
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.d3;
+
+import org.brunel.build.util.ScriptWriter;
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.util.DateFormat;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.data.values.NumericProvider;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the columns of a data table as base64 encoded typed arrays, which BrunelD3.makeDataset decodes.
+ * Each column is an object with one of these forms (all arrays are little-endian):
+ *
+ * {numbers: '...'}                             -- Float64Array, NaN for missing values
+ * {integers: '...'}                            -- Int32Array, used when all values are present and whole
+ * {dates: '...'}                               -- Float64Array of milliseconds since the epoch, NaN for missing
+ * {values: [...], codes: '...', size: n}       -- Int8, Int16 or Int32Array (size n bytes) of indices into
+ *                                                 the values, -1 for missing
+ */
+class D3ColumnWriter implements ScriptWriter.Deferred {
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private final Field[] fields;
+    private final int rowCount;
+    private final String newLine;                           // Line break and indentation before a column
+
+    private final D3ValueFormat format = new D3ValueFormat();
+    private final StringBuilder text = new StringBuilder();
+
+    D3ColumnWriter(Field[] fields, int rowCount, String indent) {
+        this.fields = fields;
+        this.rowCount = rowCount;
+        this.newLine = System.lineSeparator() + indent;
+    }
+
+    public void write(Writer out) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            if (i > 0) out.write(",");
+            out.write(newLine);
+
+            NumericProvider numeric = field.numericProvider();
+            if (field.isDate())
+                writeDates(out, field);
+            else if (field.isNumeric() && numeric != null)
+                writeNumbers(out, numeric);
+            else
+                writeCodes(out, field);
+        }
+    }
+
+    private void writeNumbers(Writer out, NumericProvider numeric) throws IOException {
+        boolean integers = true;
+        for (int i = 0; i < rowCount && integers; i++) {
+            double v = numeric.doubleValue(i);
+            integers = !numeric.isMissing(i) && v == (int) v;
+        }
+
+        Base64Output data = new Base64Output(out);
+        if (integers) {
+            out.write("{integers: '");
+            for (int i = 0; i < rowCount; i++) data.writeInt((int) numeric.doubleValue(i));
+        } else {
+            out.write("{numbers: '");
+            for (int i = 0; i < rowCount; i++) data.writeDouble(numeric.doubleValue(i));
+        }
+        data.finish();
+        out.write("'}");
+    }
+
+    private void writeDates(Writer out, Field field) throws IOException {
+        // Dates shown at the level of days are sent as the start of the day, as in the row format
+        DateFormat dateFormat = (DateFormat) field.property("dateFormat");
+        boolean days = dateFormat != null && dateFormat.ordinal() >= DateFormat.YearMonthDay.ordinal();
+
+        out.write("{dates: '");
+        Base64Output data = new Base64Output(out);
+        for (int i = 0; i < rowCount; i++) {
+            Object value = field.value(i);
+            Date date = value == null ? null : Data.asDate(value);
+            if (date == null) {
+                data.writeDouble(Double.NaN);
+            } else {
+                long millis = date.getTime();
+                if (days) millis -= ((millis % MILLIS_PER_DAY) + MILLIS_PER_DAY) % MILLIS_PER_DAY;
+                data.writeDouble(millis);
+            }
+        }
+        data.finish();
+        out.write("'}");
+    }
+
+    private void writeCodes(Writer out, Field field) throws IOException {
+        // Use the dictionary if there is one, otherwise build one in the order values are found
+        Object[] values;
+        int[] codes = new int[rowCount];
+        DictionaryColumnProvider dictionary = field.dictionaryProvider();
+        if (dictionary != null) {
+            values = dictionary.dictionary();
+            for (int i = 0; i < rowCount; i++) codes[i] = dictionary.code(i);
+        } else {
+            Map<Object, Integer> index = new HashMap<>();
+            List<Object> found = new ArrayList<>();
+            for (int i = 0; i < rowCount; i++) {
+                Object o = field.value(i);
+                if (o == null) {
+                    codes[i] = -1;
+                    continue;
+                }
+                Integer code = index.get(o);
+                if (code == null) {
+                    code = found.size();
+                    index.put(o, code);
+                    found.add(o);
+                }
+                codes[i] = code;
+            }
+            values = found.toArray();
+        }
+
+        text.setLength(0);
+        text.append("{values: [");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) text.append(", ");
+            format.appendValue(text, field, values[i], null);
+        }
+        int size = values.length < 128 ? 1 : values.length < 32768 ? 2 : 4;
+        text.append("], size: ").append(size).append(", codes: '");
+        out.append(text);
+
+        Base64Output data = new Base64Output(out);
+        for (int i = 0; i < rowCount; i++) {
+            if (size == 1) data.writeByte(codes[i]);
+            else if (size == 2) data.writeShort(codes[i]);
+            else data.writeInt(codes[i]);
+        }
+        data.finish();
+        out.write("'}");
+    }
+
+    /**
+     * Encodes little-endian binary data as base64, writing it in pieces as it goes
+     */
+    static class Base64Output {
+        private static final char[] DIGITS =
+                "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+        private final Writer out;
+        private final char[] chars = new char[1 << 12];     // Encoded text waiting to be written
+        private int charCount;
+        private int pending;                                // Bytes not yet encoded, in the low bits
+        private int pendingCount;
+
+        Base64Output(Writer out) {
+            this.out = out;
+        }
+
+        void writeByte(int b) throws IOException {
+            pending = (pending << 8) | (b & 0xff);
+            if (++pendingCount == 3) {
+                if (charCount + 4 > chars.length) flush();
+                chars[charCount++] = DIGITS[(pending >> 18) & 63];
+                chars[charCount++] = DIGITS[(pending >> 12) & 63];
+                chars[charCount++] = DIGITS[(pending >> 6) & 63];
+                chars[charCount++] = DIGITS[pending & 63];
+                pending = 0;
+                pendingCount = 0;
+            }
+        }
+
+        void writeShort(int v) throws IOException {
+            writeByte(v);
+            writeByte(v >> 8);
+        }
+
+        void writeInt(int v) throws IOException {
+            writeByte(v);
+            writeByte(v >> 8);
+            writeByte(v >> 16);
+            writeByte(v >> 24);
+        }
+
+        void writeDouble(double v) throws IOException {
+            long bits = Double.doubleToLongBits(v);
+            writeInt((int) bits);
+            writeInt((int) (bits >>> 32));
+        }
+
+        /* Encode any remaining bytes with padding, and write everything out */
+        void finish() throws IOException {
+            if (charCount + 4 > chars.length) flush();
+            if (pendingCount == 1) {
+                chars[charCount++] = DIGITS[(pending >> 2) & 63];
+                chars[charCount++] = DIGITS[(pending << 4) & 63];
+                chars[charCount++] = '=';
+                chars[charCount++] = '=';
+            } else if (pendingCount == 2) {
+                chars[charCount++] = DIGITS[(pending >> 10) & 63];
+                chars[charCount++] = DIGITS[(pending >> 4) & 63];
+                chars[charCount++] = DIGITS[(pending << 2) & 63];
+                chars[charCount++] = '=';
+            }
+            pending = 0;
+            pendingCount = 0;
+            flush();
+        }
+
+        private void flush() throws IOException {
+            out.write(chars, 0, charCount);
+            charCount = 0;
+        }
+    }
+}
@@ -17,31 +17,25 @@
 package org.brunel.build.d3;
 
 import org.brunel.action.Param;
-import org.brunel.build.d3.D3Util.DateBuilder;
 import org.brunel.build.data.DataTransformParameters;
+import org.brunel.build.info.ElementStructure;
 import org.brunel.build.util.BuilderOptions;
 import org.brunel.build.util.BuilderOptions.DataMethod;
 import org.brunel.build.util.ScriptWriter;
-import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
 import org.brunel.data.summary.FieldRowComparison;
-import org.brunel.data.util.DateFormat;
-import org.brunel.data.util.Range;
 import org.brunel.model.VisItem;
 import org.brunel.model.VisSingle;
 import org.brunel.model.VisTypes.Diagram;
 import org.brunel.model.VisTypes.Element;
 import org.brunel.model.VisTypes.Interaction;
 
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -52,32 +46,31 @@ import java.util.Map.Entry;
  */
 public class D3DataBuilder {
 
-    public static void writeTables(VisItem main, ScriptWriter out, BuilderOptions options) {
+    public static void writeTables(VisItem main, ScriptWriter out, BuilderOptions options, Dataset[] summarized) {
         if (options.includeData == DataMethod.none) return;
-        if (options.includeData == DataMethod.minimal) {
-            throw new UnsupportedOperationException("Cannot make minimal data yet");
-        }
 
         out.titleComment("Data Tables");
 
-        NumberFormat format = new DecimalFormat();
-        format.setGroupingUsed(false);
-        format.setMinimumFractionDigits(0);
-        format.setMaximumFractionDigits(8);
-
         Dataset[] datasets = main.getDataSets();
         for (int d = 0; d < datasets.length; d++) {
             Dataset data = datasets[d];
             Field[] fields;
-
-            if (options.includeData == DataMethod.columns) {
+            boolean minimal = summarized != null && summarized[d] != null;
+
+            if (minimal) {
+                // The data as summarized for its element, keeping the counts and rows the summary made
+                data = summarized[d];
+                List<Field> used = new ArrayList<>();
+                for (Field f : data.fields) if (!f.name.equals("#selection")) used.add(f);
+                fields = used.toArray(new Field[used.size()]);
+            } else if (options.includeData == DataMethod.full) {
+                // All the fields
+                fields = withoutSynthetic(data.fields);
+            } else {
                 // Only the fields needed by the vis items
                 LinkedHashSet<Field> fieldsAsSet = new LinkedHashSet<>();
                 addUsedFields(main, data, fieldsAsSet);
                 fields = fieldsAsSet.toArray(new Field[fieldsAsSet.size()]);
-            } else {
-                // All the fields
-                fields = data.fields;
             }
 
             if (fields.length == 0) {
@@ -90,16 +83,23 @@ public class D3DataBuilder {
 
             out.onNewLine().add(" names: [");
             for (int i = 0; i < fields.length; i++) {
-                if (fields[i].isSynthetic()) continue;
-                String name = fields[i].name;
                 if (i > 0) out.add(", ");
-                out.add("'").add(name).add("'");
+                out.add("'").add(fields[i].name).add("'");
             }
             out.add("], ");
 
+            if (minimal) {
+                // Summaries are labeled with their measure, so send the labels too
+                out.onNewLine().add(" labels: [");
+                for (int i = 0; i < fields.length; i++) {
+                    if (i > 0) out.add(", ");
+                    out.add(out.quote(fields[i].label));
+                }
+                out.add("], ");
+            }
+
             out.onNewLine().add(" options: [");
             for (int i = 0; i < fields.length; i++) {
-                if (fields[i].isSynthetic()) continue;
                 String name;
                 if (fields[i].isDate())
                     name = "date";
@@ -114,22 +114,73 @@ public class D3DataBuilder {
             }
             out.add("], ");
 
-            out.onNewLine().add(" rows: [");
-
-            for (int r = 0; r < data.rowCount(); r++) {
-                if (r > 0) out.add(",");
-                String rowText = makeRowText(fields, r, format);
-                if (out.currentColumn() + rowText.length() > 99)
-                    out.onNewLine();
-                else if (r > 0)
-                    out.add(" ");
-                out.add(rowText);
+            // The rows or columns are written when the script is output, so they can be streamed
+            if (options.includeData == DataMethod.binary) {
+                out.onNewLine().add(" columns: [");
+                out.addDeferred(new D3ColumnWriter(fields, data.rowCount(), out.indentation() + "  "));
+            } else {
+                out.onNewLine().add(" rows: [");
+                out.addDeferred(new D3TableWriter(fields, data.rowCount(), out.currentColumn(), out.indentation()));
             }
             out.add("]");
             out.indentLess().onNewLine().add("}").endStatement();
         }
     }
 
+    /**
+     * For the minimal data method, an element's data is summarized here, so only the summary is sent and the
+     * client starts from that. This can only be done when nothing on the client needs the original rows:
+     * there must be no selection, filtering, keys or nesting, and no other element may use the same data.
+     * Binning and splitting of lists are also left to the client.
+     *
+     * @param structure the element to summarize for
+     * @param uses      the number of elements using the element's data set
+     * @return the summarized data, or null if the original data must be sent
+     */
+    static Dataset makeSummarizedData(ElementStructure structure, int uses) {
+        VisSingle vis = structure.vis;
+        DataTransformParameters params = (DataTransformParameters) structure.data.property("parameters");
+        if (uses != 1 || params.summaryCommand.isEmpty()) return null;
+        if (!params.eachCommand.isEmpty() || !params.transformCommand.isEmpty()) return null;
+        if (vis.tInteraction.containsKey(Interaction.select) || vis.tInteraction.containsKey(Interaction.filter))
+            return null;
+        if (!vis.fFilter.isEmpty() || !vis.fKeys.isEmpty()) return null;
+        if (structure.chart.nested() || structure.chart.innerChartIndex != null) return null;
+
+        // The same steps, in the same order, as the client performs them in makeData()
+        return vis.getDataset().addConstants(params.constantsCommand)
+                .summarize(params.summaryCommand)
+                .filter(params.filterCommand);
+    }
+
+    /**
+     * Count how many elements use each data set
+     *
+     * @param main the whole visualization
+     * @return counts, indexed as main.getDataSets()
+     */
+    static int[] countDatasetUses(VisItem main) {
+        Dataset[] datasets = main.getDataSets();
+        int[] uses = new int[datasets.length];
+        addDatasetUses(main, datasets, uses);
+        return uses;
+    }
+
+    private static void addDatasetUses(VisItem item, Dataset[] datasets, int[] uses) {
+        if (item.children() == null) {
+            Dataset data = ((VisSingle) item).getDataset();
+            for (int i = 0; i < datasets.length; i++) if (datasets[i] == data) uses[i]++;
+        } else {
+            for (VisItem i : item.children()) addDatasetUses(i, datasets, uses);
+        }
+    }
+
+    private static Field[] withoutSynthetic(Field[] fields) {
+        List<Field> result = new ArrayList<>();
+        for (Field f : fields) if (!f.isSynthetic()) result.add(f);
+        return result.toArray(new Field[result.size()]);
+    }
+
     private static void addUsedFields(VisItem item, Dataset data, Collection<Field> fields) {
         if (item.children() == null) {
             VisSingle vis = (VisSingle) item;                           // No children => VisSingle
@@ -145,45 +196,18 @@ public class D3DataBuilder {
         }
     }
 
-    // If the row contains any nulls, return null for the whole row
-    private static String makeRowText(Field[] fields, int r, NumberFormat format) {
-        StringBuilder row = new StringBuilder();
-        DateBuilder dateBuilder = new DateBuilder();
-        row.append("[");
-        for (int i = 0; i < fields.length; i++) {
-            Field field = fields[i];
-            if (field.name.startsWith("#")) continue;           // Skip special fields
-            if (i > 0) row.append(", ");
-            Object value = field.value(r);
-            if (value == null) {
-                row.append("null");
-            } else if (value instanceof Range) {
-                row.append(Data.quote(value.toString()));
-            } else if (field.isDate()) {
-                Date date = Data.asDate(value);
-                if (date == null) row.append("null");
-                else row.append(dateBuilder.make(date, (DateFormat) field.property("dateFormat"), false));
-            } else if (field.isNumeric()) {
-                Double d = Data.asNumeric(value);
-                if (d == null) row.append("null");
-                else row.append(format.format(d));
-            } else
-                row.append(Data.quote(value.toString()));
-        }
-        row.append("]");
-        return row.toString();
-    }
-
     private final VisSingle vis;
     private final ScriptWriter out;
     private final Dataset data;
     private final int datasetIndex;
+    private final boolean summarized;                           // True if the data set was summarized already
 
-    public D3DataBuilder(VisSingle vis, ScriptWriter out, Dataset data, int index) {
+    public D3DataBuilder(VisSingle vis, ScriptWriter out, Dataset data, int index, boolean summarized) {
         this.vis = vis;
         this.out = out;
         this.data = data;
         datasetIndex = index;
+        this.summarized = summarized;
     }
 
     public void writeDataManipulation(Map<String, Integer> requiredFields) {
@@ -201,21 +225,23 @@ public class D3DataBuilder {
         out.add("if (filterRows) original = original.retainRows(filterRows)").endStatement();
         out.add("processed = pre(original,", datasetIndex, ")");
         out.mark();
-        writeTransform("addConstants", params.constantsCommand);
-
-        // Check for selection filtering
-        Param param = vis.tInteraction.get(Interaction.filter);
-        if (param != null) {
-            if ("unselected".equals(param.asString()))
-                writeTransform("filter", "#selection is " + Field.VAL_UNSELECTED);
-            else
-                writeTransform("filter", "#selection is " + Field.VAL_SELECTED);
-        }
+        if (!summarized) {
+            writeTransform("addConstants", params.constantsCommand);
+
+            // Check for selection filtering
+            Param param = vis.tInteraction.get(Interaction.filter);
+            if (param != null) {
+                if ("unselected".equals(param.asString()))
+                    writeTransform("filter", "#selection is " + Field.VAL_UNSELECTED);
+                else
+                    writeTransform("filter", "#selection is " + Field.VAL_SELECTED);
+            }
 
-        writeTransform("each", params.eachCommand);
-        writeTransform("transform", params.transformCommand);
-        writeTransform("summarize", params.summaryCommand);
-        writeTransform("filter", params.filterCommand);
+            writeTransform("each", params.eachCommand);
+            writeTransform("transform", params.transformCommand);
+            writeTransform("summarize", params.summaryCommand);
+            writeTransform("filter", params.filterCommand);
+        }
 
         // Because series creates duplicates of fields, it is an expensive transformation
         // So we do not want to make it work on all fields, only the fields that are necessary.
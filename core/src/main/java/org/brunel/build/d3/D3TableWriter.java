@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.d3;
+
+import org.brunel.build.util.ScriptWriter;
+import org.brunel.data.Field;
+import org.brunel.data.util.DateFormat;
+import org.brunel.data.values.NumericProvider;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the rows of a data table as Javascript arrays, one array per row.
+ * The rows are written when the script is output, through reused buffers, so large tables are streamed
+ * rather than built up as text in memory.
+ */
+class D3TableWriter implements ScriptWriter.Deferred {
+
+    private static final int MAX_ROW_END = 99;              // Start a new line if a row would end past here
+    private static final int FLUSH_SIZE = 1 << 14;          // Characters to hold before writing them
+
+    private final Field[] fields;
+    private final int rowCount;
+    private final int startColumn;                          // Column the first row follows on
+    private final String newLine;                           // Line break and indentation before a row
+
+    private final StringBuilder row = new StringBuilder();
+    private final StringBuilder chunk = new StringBuilder();
+    private final D3ValueFormat format = new D3ValueFormat();
+
+    D3TableWriter(Field[] fields, int rowCount, int startColumn, String indent) {
+        this.fields = fields;
+        this.rowCount = rowCount;
+        this.startColumn = startColumn;
+        this.newLine = System.lineSeparator() + indent;
+    }
+
+    public void write(Writer out) throws IOException {
+        int indentLength = newLine.length() - System.lineSeparator().length();
+        NumericProvider[] numerics = new NumericProvider[fields.length];
+        DateFormat[] dateFormats = new DateFormat[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].isDate()) dateFormats[i] = (DateFormat) fields[i].property("dateFormat");
+            else if (fields[i].isNumeric()) numerics[i] = fields[i].numericProvider();
+        }
+
+        char[] buffer = new char[FLUSH_SIZE];
+        int column = startColumn;
+        for (int r = 0; r < rowCount; r++) {
+            row.setLength(0);
+            appendRow(r, numerics, dateFormats);
+            if (r > 0) {
+                chunk.append(',');
+                column++;
+            }
+            if (column + row.length() > MAX_ROW_END) {
+                chunk.append(newLine);
+                column = indentLength;
+            } else if (r > 0) {
+                chunk.append(' ');
+                column++;
+            }
+            chunk.append(row);
+            column += row.length();
+            if (chunk.length() >= FLUSH_SIZE) buffer = flush(out, buffer);
+        }
+        flush(out, buffer);
+    }
+
+    private char[] flush(Writer out, char[] buffer) throws IOException {
+        int length = chunk.length();
+        if (buffer.length < length) buffer = new char[length];
+        chunk.getChars(0, length, buffer, 0);
+        out.write(buffer, 0, length);
+        chunk.setLength(0);
+        return buffer;
+    }
+
+    private void appendRow(int r, NumericProvider[] numerics, DateFormat[] dateFormats) {
+        row.append('[');
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            if (i > 0) row.append(", ");
+            if (numerics[i] != null) {
+                // Primitive values, so no need to create objects
+                if (numerics[i].isMissing(r)) row.append("null");
+                else format.appendNumber(row, numerics[i].doubleValue(r));
+                continue;
+            }
+            format.appendValue(row, field, field.value(r), dateFormats[i]);
+        }
+        row.append(']');
+    }
+}
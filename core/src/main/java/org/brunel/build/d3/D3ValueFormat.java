@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.d3;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.util.DateFormat;
+import org.brunel.data.util.Range;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes data values as Javascript literals, appending to a buffer so no text objects are made per value.
+ * Numbers are formatted directly, independent of the locale. Not thread-safe; each writer uses its own.
+ */
+class D3ValueFormat {
+
+    private static final double SCALE = 1e8;                // Numbers are written with up to 8 decimal places
+    private static final long[] POWERS = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L};
+
+    private final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    private NumberFormat fallbackFormat;                    // Used for numbers that cannot be written exactly
+
+    /**
+     * Write a value of a field as a Javascript literal
+     *
+     * @param target     where to write
+     * @param field      the field the value came from
+     * @param value      the value, which may be null
+     * @param dateFormat format for date fields, null for other fields
+     */
+    void appendValue(StringBuilder target, Field field, Object value, DateFormat dateFormat) {
+        if (value == null) {
+            target.append("null");
+        } else if (value instanceof Range) {
+            target.append(Data.quote(value.toString()));
+        } else if (dateFormat != null) {
+            Date date = Data.asDate(value);
+            if (date == null) target.append("null");
+            else appendDate(target, date, dateFormat);
+        } else if (field.isNumeric()) {
+            Double d = Data.asNumeric(value);
+            if (d == null) target.append("null");
+            else appendNumber(target, d);
+        } else
+            target.append(Data.quote(value.toString()));
+    }
+
+    /*
+     * Write with up to 8 decimal places and no grouping, as DecimalFormat does.
+     * Values are scaled to a whole number of the smallest decimal place, which is exact unless the scaled
+     * value lies close to halfway between two whole numbers; those are left to DecimalFormat.
+     */
+    void appendNumber(StringBuilder target, double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            target.append("null");
+            return;
+        }
+        double a = Math.abs(v);
+        boolean negative = v < 0 || v == 0 && 1 / v < 0;
+        if (a < 1e15 && a == Math.rint(a)) {
+            if (negative) target.append('-');
+            target.append((long) a);
+            return;
+        }
+
+        double scaled = a * SCALE;
+        double rounded = Math.rint(scaled);
+        if (a >= 1e7 || Math.abs(scaled - rounded) > 0.3) {
+            if (fallbackFormat == null) fallbackFormat = makeFallbackFormat();
+            target.append(fallbackFormat.format(v));
+            return;
+        }
+
+        long digits = (long) rounded;
+        if (negative) target.append('-');
+        target.append(digits / (long) SCALE);
+        long fraction = digits % (long) SCALE;
+        if (fraction == 0) return;
+
+        // Drop trailing zeros, then pad with leading ones to the remaining width
+        int width = 8;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            width--;
+        }
+        target.append('.');
+        for (long p = POWERS[width - 1]; p > fraction; p /= 10) target.append('0');
+        target.append(fraction);
+    }
+
+    /* The same text as DateBuilder makes, without the formatting objects */
+    void appendDate(StringBuilder target, Date date, DateFormat dateFormat) {
+        calendar.setTime(date);
+        target.append('\'').append(calendar.get(Calendar.YEAR));
+        appendPadded(target, '-', calendar.get(Calendar.MONTH) + 1);
+        appendPadded(target, '-', calendar.get(Calendar.DAY_OF_MONTH));
+        if (dateFormat.ordinal() < DateFormat.YearMonthDay.ordinal()) {
+            appendPadded(target, 'T', calendar.get(Calendar.HOUR));
+            appendPadded(target, ':', calendar.get(Calendar.MINUTE));
+            appendPadded(target, ':', calendar.get(Calendar.SECOND));
+        }
+        target.append('\'');
+    }
+
+    private static void appendPadded(StringBuilder target, char separator, int value) {
+        target.append(separator);
+        if (value < 10) target.append('0');
+        target.append(value);
+    }
+
+    private static NumberFormat makeFallbackFormat() {
+        NumberFormat format = new DecimalFormat("0.########", DecimalFormatSymbols.getInstance(Locale.ROOT));
+        format.setGroupingUsed(false);
+        return format;
+    }
+}
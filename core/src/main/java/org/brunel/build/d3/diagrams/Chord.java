@@ -45,7 +45,13 @@ class Chord extends D3Diagram {
         // Always need from and to, but the size may be empty when building the chord data
         if (size == null) out.addQuoted(f1, f2);
         else out.addQuoted(f1, f2, size);
-        out.add(")").endStatement();
+
+        out.add(")");
+
+        // When a limit is given, only the heaviest groups are drawn, so the matrix stays a drawable size
+        if (vis.tDiagramParameters.length > 0)
+            out.add(".prune(" + (int) vis.tDiagramParameters[0].asDouble() + ")");
+        out.endStatement();
         out.add("var chord = d3.layout.chord().padding(.025).sortSubgroups(d3.descending).matrix(chordData.matrix())").endStatement();
 
         // take arc path font size into account, adding a bit of padding, to define the arc width
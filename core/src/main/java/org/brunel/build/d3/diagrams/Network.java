@@ -74,7 +74,12 @@ class Network extends D3Diagram {
 
         String from = quoted(fromFieldID),to = quoted(toFieldID);
         out.add("graph = BrunelData.diagram_Graph.make(processed,", nodeField, ",",
-                edgeDataset, ",", from, ",", to, ")").endStatement();
+                edgeDataset, ",", from, ",", to, ")");
+
+        // When a limit is given, only the best connected nodes are laid out, so large graphs stay drawable
+        if (vis.tDiagramParameters.length > 1)
+            out.add(".prune(" + (int) vis.tDiagramParameters[1].asDouble() + ")");
+        out.endStatement();
         out.ln();
         makeLayout();
         out.ln();
@@ -20,6 +20,7 @@ import org.brunel.action.Param;
 import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
+import org.brunel.data.util.ForkJoinPools;
 import org.brunel.model.VisSingle;
 
 import java.util.ArrayList;
@@ -31,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * A class for manipulating and building data structures
@@ -39,6 +41,8 @@ public class DataBuilder {
 
     private final DataModifier modifier;
     private final VisSingle vis;
+    private final int parallelism;
+    private final DerivedDataCache cache;
 
     /**
      * Constructor
@@ -56,8 +60,33 @@ public class DataBuilder {
      * @param modifier a class that modifies the data parameters after they have been created (may be null)
      */
     public DataBuilder(VisSingle vis, DataModifier modifier) {
+        this(vis, modifier, 1);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param vis         the vis to build the data for
+     * @param modifier    a class that modifies the data parameters after they have been created (may be null)
+     * @param parallelism number of threads to use for large data; 1 to build serially. The results are identical
+     */
+    public DataBuilder(VisSingle vis, DataModifier modifier, int parallelism) {
+        this(vis, modifier, parallelism, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param vis         the vis to build the data for
+     * @param modifier    a class that modifies the data parameters after they have been created (may be null)
+     * @param parallelism number of threads to use for large data; 1 to build serially. The results are identical
+     * @param cache       data derived by earlier builds, to reuse and add to (may be null)
+     */
+    public DataBuilder(VisSingle vis, DataModifier modifier, int parallelism, DerivedDataCache cache) {
         this.vis = vis;
         this.modifier = modifier;
+        this.parallelism = parallelism;
+        this.cache = cache;
     }
 
     /**
@@ -83,20 +112,84 @@ public class DataBuilder {
         // Call the engine to see if it has any special needs
         if (modifier != null) params = modifier.modifyParameters(params, vis);
 
-        Dataset data = vis.getDataset();                                                // The data to use
-        data = data.addConstants(params.constantsCommand);                              // add constant fields
-        data = data.each(params.eachCommand);                                           // divide up fields into parts
-        data = data.filter(params.filterCommand);                                       // filter data
-        data = data.transform(params.transformCommand);                                 // bin, rank, ... on data
-        data = data.summarize(params.summaryCommand);                                   // summarize data
-        data = data.series(params.seriesCommand);                                       // convert series
-        data = data.sort(params.sortCommand);                                           // sort data
-        data = data.sortRows(params.sortRowsCommand);                                   // sort rows only
-        data = data.stack(params.stackCommand);                                         // stack data
+        if (parallelism <= 1) return transform(params);
+
+        // Operations called from within a fork-join pool divide large work into parallel chunks
+        final DataTransformParameters p = params;
+        return ForkJoinPools.get(parallelism).invoke(new RecursiveTask<Dataset>() {
+            protected Dataset compute() {
+                return transform(p);
+            }
+        });
+    }
+
+    private Dataset transform(DataTransformParameters params) {
+        Dataset source = vis.getDataset();                                              // The data to use
+        String[] commands = {
+                params.constantsCommand,                                                // add constant fields
+                params.eachCommand,                                                     // divide up fields into parts
+                params.filterCommand,                                                   // filter data
+                params.transformCommand,                                                // bin, rank, ... on data
+                params.summaryCommand,                                                  // summarize data
+                params.seriesCommand,                                                   // convert series
+                params.sortCommand,                                                     // sort data
+                params.sortRowsCommand,                                                 // sort rows only
+                params.stackCommand                                                     // stack data
+        };
+
+        // Each step is identified by its command and those of the steps before it
+        String[] keys = new String[commands.length];
+        for (int i = 0; i < commands.length; i++)
+            keys[i] = i == 0 ? commands[0] : keys[i - 1] + '\u0000' + commands[i];
+
+        // Start after the longest run of steps that has been built before
+        Dataset data = source;
+        int start = 0;
+        if (cache != null) {
+            for (int i = commands.length - 1; i >= 0 && start == 0; i--) {
+                Dataset cached = cache.get(source, keys[i]);
+                if (cached != null) {
+                    data = cached;
+                    start = i + 1;
+                }
+            }
+        }
+
+        for (int i = start; i < commands.length; i++) {
+            data = apply(data, i, commands[i]);
+            if (cache != null) cache.put(source, keys[i], data);
+        }
+
+        // Cached data is shared, so the parameters are set on a copy
+        if (cache != null) data = data.replaceFields(data.fields);
         data.set("parameters", params);                                                 // Params used to build this
         return data;
     }
 
+    /* Apply the numbered step of the pipeline */
+    private static Dataset apply(Dataset data, int step, String command) {
+        switch (step) {
+            case 0:
+                return data.addConstants(command);
+            case 1:
+                return data.each(command);
+            case 2:
+                return data.filter(command);
+            case 3:
+                return data.transform(command);
+            case 4:
+                return data.summarize(command);
+            case 5:
+                return data.series(command);
+            case 6:
+                return data.sort(command);
+            case 7:
+                return data.sortRows(command);
+            default:
+                return data.stack(command);
+        }
+    }
+
     /**
      * Utility to get the built data from a Vis
      *
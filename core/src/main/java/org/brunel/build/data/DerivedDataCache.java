@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.data;
+
+import org.brunel.data.Dataset;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers the datasets made by transforming a source dataset, so that building the same chart again, or a chart
+ * that starts with the same steps, does not repeat the work. Derived data is keyed by the identity of the source
+ * dataset and the commands of the steps applied to it. Only source datasets that are still in use elsewhere are
+ * kept, and each keeps only its most recently used derived datasets.
+ * Cached datasets are shared, so must not be modified.
+ * Builds only use a cache when given one, or when BuilderOptions.cacheDerivedData asks for the shared cache.
+ */
+public class DerivedDataCache {
+
+    private static final DerivedDataCache SHARED = new DerivedDataCache(64);
+
+    /**
+     * The cache shared by builds whose options ask to cache derived data
+     *
+     * @return shared cache
+     */
+    public static DerivedDataCache shared() {
+        return SHARED;
+    }
+
+    private final Map<Dataset, Map<String, Dataset>> bySource = new WeakHashMap<>();     // Guarded by this
+    private final int maxPerSource;
+
+    /**
+     * Make a cache
+     *
+     * @param maxPerSource the number of derived datasets to keep for each source dataset
+     */
+    public DerivedDataCache(int maxPerSource) {
+        this.maxPerSource = maxPerSource;
+    }
+
+    /**
+     * Find previously derived data
+     *
+     * @param source the original data
+     * @param key    identifies the steps applied to the original data
+     * @return the derived data, or null if it is not cached
+     */
+    public synchronized Dataset get(Dataset source, String key) {
+        Map<String, Dataset> derived = bySource.get(source);
+        return derived == null ? null : derived.get(key);
+    }
+
+    /**
+     * Remember derived data. This must not be the source itself, as the source would then never be released
+     *
+     * @param source  the original data
+     * @param key     identifies the steps applied to the original data
+     * @param derived the result of those steps
+     */
+    public synchronized void put(Dataset source, String key, Dataset derived) {
+        if (derived == source) return;
+        Map<String, Dataset> map = bySource.get(source);
+        if (map == null) {
+            // Access ordered, so the least recently used derived data is dropped first
+            map = new LinkedHashMap<String, Dataset>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, Dataset> eldest) {
+                    return size() > maxPerSource;
+                }
+            };
+            bySource.put(source, map);
+        }
+        map.put(key, derived);
+    }
+
+    /**
+     * Forget all derived data
+     */
+    public synchronized void clear() {
+        bySource.clear();
+    }
+}
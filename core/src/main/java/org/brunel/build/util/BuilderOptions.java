@@ -32,6 +32,8 @@ public class BuilderOptions {
     public String locMaps = "http://www.brunelvis.org/geo";     // The location of the mapping resources
     public String locD3 = "//cdnjs.cloudflare.com/ajax/libs/d3/3.5.5/d3.min";  //Location of D3
     public String version = "1.1";                              // Which online version to use
+    public int dataParallelism = 1;                             // Threads used to build data (1 means serially)
+    public boolean cacheDerivedData = false;                    // Share data built for earlier charts from the same data
 
     public static BuilderOptions make(String[] args) {
         BuilderOptions options = new BuilderOptions();
@@ -43,6 +45,10 @@ public class BuilderOptions {
                 options.locJavaScript = args[i+1];
             if (arg.equals("-m") || arg.equals("-maps"))
                 options.locMaps = args[i+1];
+            if (arg.equals("-p") || arg.equals("-parallel"))
+                options.dataParallelism = Integer.parseInt(args[i+1]);
+            if (arg.equals("-d") || arg.equals("-data"))
+                options.includeData = DataMethod.valueOf(args[i+1]);
         }
         return options;
     }
@@ -58,6 +64,9 @@ public class BuilderOptions {
     		if (keyVal[0].trim().equalsIgnoreCase("locJavaScript")) options.locJavaScript = keyVal[1].trim();
     		else if (keyVal[0].trim().equalsIgnoreCase("locMaps")) options.locMaps = keyVal[1].trim();
     		else if (keyVal[0].trim().equalsIgnoreCase("locD3")) options.locD3 = keyVal[1].trim();
+    		else if (keyVal[0].trim().equalsIgnoreCase("dataParallelism")) options.dataParallelism = Integer.parseInt(keyVal[1].trim());
+    		else if (keyVal[0].trim().equalsIgnoreCase("cacheDerivedData")) options.cacheDerivedData = Boolean.parseBoolean(keyVal[1].trim());
+    		else if (keyVal[0].trim().equalsIgnoreCase("includeData")) options.includeData = DataMethod.valueOf(keyVal[1].trim());
     	}
     	
     	return options;
@@ -68,9 +77,10 @@ public class BuilderOptions {
      * full - send full data set
      * columns - send only required columns
      * minimal - send the minimal data needed by the system
+     * binary - send only required columns, encoded as typed arrays rather than rows of text
      */
     public enum DataMethod {
-        none, full, columns, minimal
+        none, full, columns, minimal, binary
     }
 
 }
@@ -22,9 +22,13 @@ import java.net.URI;
 
 public class ContentReader {
     public static String readContentFromUrl(URI uri) throws IOException {
+        return readContent(openStreamFromUrl(uri));
+    }
+
+    public static InputStream openStreamFromUrl(URI uri) throws IOException {
         //TODO:  Centrally handle security
     	try {
-    		return readContent(uri.toURL().openStream());
+    		return uri.toURL().openStream();
     	}
     	catch(IllegalArgumentException ex) {
     		throw new IllegalArgumentException("Could not read data from: " + uri,ex.getCause());
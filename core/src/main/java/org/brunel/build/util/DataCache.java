@@ -18,43 +18,106 @@ package org.brunel.build.util;
 
 import org.brunel.data.Dataset;
 import org.brunel.data.io.CSV;
+import org.brunel.data.io.CSVReader;
 import org.brunel.util.GeneratedData;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Brunel's access to Datasets via a cache.  The key must be unique.  If the key is an URL it will
  * be used to load the content if it is not in the cache.
+ * The cache may be used from many threads. Retrieving cached data takes no lock, and concurrent requests
+ * for data that is not yet cached share a single load, so they all receive the same Dataset instance.
  */
 public class DataCache {
 
     public static final String SAMPLE_DATA_LOCATION = "http://brunel.mybluemix.net/sample_data/";
     // Local cache is needed because Brunel needs identical Datasets to be the same instance
-    private static final DatasetCache localCache = new SimpleCache();
-    private static DatasetCache userCache;
+    private static final SimpleCache localCache = new SimpleCache();
+    private static volatile DatasetCache userCache = makeCacheFromEnvironment();
+
+    // Loads in progress, by key; a request for a key being loaded waits for that load
+    private static final ConcurrentMap<String, FutureTask<Dataset>> loading = new ConcurrentHashMap<>();
+
+    // Threads for asynchronous requests
+    private static final ExecutorService loader = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "brunel-data-loader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /* A directory for a persistent cache of data may be given in the environment; if it cannot be used, we go without */
+    private static DatasetCache makeCacheFromEnvironment() {
+        String directory = System.getenv("BRUNEL_DATA_CACHE");
+        if (directory == null || directory.trim().isEmpty()) return null;
+        try {
+            return new MappedDatasetCache(Paths.get(directory.trim()));
+        } catch (IOException | RuntimeException e) {
+            Logger.getLogger(DataCache.class.getName()).log(Level.WARNING,
+                    "Cannot use data cache directory " + directory + "; data will not be cached persistently", e);
+            return null;
+        }
+    }
 
     /**
      * Specify an alternative cache implementation for storing Datasets by key.
-     * This should called once before any use of caching.
+     * This should called once before any use of caching. The cache must be safe to use from many threads.
      *
      * @param cache the alternate cache to use
      */
-    public static synchronized void useCache(DatasetCache cache) {
+    public static void useCache(DatasetCache cache) {
         userCache = cache;
     }
 
+    /**
+     * Change the limits of the local in-memory cache
+     *
+     * @param maxBytes         the maximum estimated memory use of the cached data
+     * @param timeToLiveMillis how long an entry is kept after it is stored, or zero to keep entries indefinitely
+     */
+    public static void configureLocalCache(long maxBytes, long timeToLiveMillis) {
+        localCache.setMaximumSize(maxBytes);
+        localCache.setTimeToLive(timeToLiveMillis);
+    }
+
+    /**
+     * The hits, misses, evictions and load times of the local in-memory cache
+     *
+     * @return a snapshot of the counts
+     */
+    public static SimpleCache.Stats statistics() {
+        return localCache.stats();
+    }
+
     /**
      * Store a dataset into the cache.  If a user cache is provided, the data will be stored there as well.
      *
      * @param dataKey unique identifier for data
      * @param data    the data to cache
      */
-    public static synchronized void store(String dataKey, Dataset data) {
+    public static void store(String dataKey, Dataset data) {
         localCache.store(dataKey, data);
-        if (userCache != null) {
-            userCache.store(dataKey, data);
+        DatasetCache user = userCache;
+        if (user != null) {
+            user.store(dataKey, data);
         }
     }
 
@@ -64,7 +127,7 @@ public class DataCache {
      * @param dataKey the location to read from
      * @return the built data set
      */
-    public static synchronized Dataset get(String dataKey) throws IOException {
+    public static Dataset get(String dataKey) throws IOException {
         return get(dataKey, null);
     }
 
@@ -77,9 +140,79 @@ public class DataCache {
      * @return the built data set
      * @throws IOException can happen if the key is not a URL and the content for the key is no longer in the cache
      */
-    public static synchronized Dataset get(String dataKey, InputStream is) throws IOException {
+    public static Dataset get(final String dataKey, final InputStream is) throws IOException {
         if (dataKey == null) return null;
 
+        Dataset dataset = cached(dataKey);
+        if (dataset != null) return dataset;
+
+        // Join a load already in progress, or start one
+        FutureTask<Dataset> task = new FutureTask<>(new Callable<Dataset>() {
+            public Dataset call() throws Exception {
+                return load(dataKey, is);
+            }
+        });
+        FutureTask<Dataset> existing = loading.putIfAbsent(dataKey, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                loading.remove(dataKey, task);
+            }
+            existing = task;
+        }
+        return await(existing);
+    }
+
+    /**
+     * Return the data for a key without waiting for it to be read.
+     * Cached data is returned in a completed future; otherwise the data is read in a background thread
+     *
+     * @param dataKey the location to read from
+     * @return a future giving the built data set, or the failure to read it
+     */
+    public static Future<Dataset> getAsync(final String dataKey) {
+        Dataset dataset = dataKey == null ? null : cached(dataKey);
+        if (dataset != null) {
+            FutureTask<Dataset> done = new FutureTask<>(NOTHING, dataset);
+            done.run();
+            return done;
+        }
+        return loader.submit(new Callable<Dataset>() {
+            public Dataset call() throws Exception {
+                return get(dataKey, null);
+            }
+        });
+    }
+
+    private static final Runnable NOTHING = new Runnable() {
+        public void run() {
+        }
+    };
+
+    /* The locally cached data for a key, unless the key asks for a refresh */
+    private static Dataset cached(String dataKey) {
+        return dataKey.startsWith("refresh:") ? null : localCache.retrieve(dataKey);
+    }
+
+    /* Wait for a load, throwing what it threw */
+    private static Dataset await(FutureTask<Dataset> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /* Read the data for a key; only one thread at a time loads any given key */
+    private static Dataset load(String dataKey, InputStream is) throws IOException {
         boolean useCache = true;                                    // Unless we ask to refresh, use it!
 
         URI uri = makeURI(dataKey);
@@ -87,11 +220,13 @@ public class DataCache {
             String content = dataKey.substring(0, "generate:".length()).trim();
             Dataset data = GeneratedData.make(content);
             localCache.store(dataKey, data);
+            return data;
         } else if (dataKey.startsWith("raw:")) {
             // Raw data is simply a CSV file with newlines replaced by semi-colons. This is intended for quick
             // testing and not as a production facility -- complex CSV will likely fail.
             Dataset data = Dataset.make(CSV.read(dataKey.substring(4).replaceAll(";", "\n")));
             localCache.store(dataKey, data);
+            return data;
         } else if (uri != null && uri.getScheme() != null) {
             // We change our URI
             if (uri.getScheme().equals("sample"))
@@ -102,22 +237,33 @@ public class DataCache {
             }
         }
 
+        // Another load may have completed after this one was requested
         Dataset dataset = useCache ? localCache.retrieve(dataKey) : null;
         if (dataset != null) return dataset;
 
         // Not found in local cache check if in user supplied cache.
         // If so, stick it back in the local cache
-        if (userCache != null && useCache) {
-            dataset = userCache.retrieve(dataKey);
+        DatasetCache user = userCache;
+        if (user != null && useCache) {
+            dataset = user.retrieve(dataKey);
             if (dataset != null) localCache.store(dataKey, dataset);
         }
         if (dataset != null) return dataset;
 
-        // Actually read the data
-        String content = is == null ? ContentReader.readContentFromUrl(uri) : ContentReader.readContent(is);
-        dataset = Dataset.make(CSV.read(content));
+        // Actually read the data, streaming it into columns (local files are mapped into memory)
+        long start = System.nanoTime();
+        if (is != null) {
+            dataset = Dataset.make(CSVReader.read(is));
+        } else if (uri != null && "file".equals(uri.getScheme())) {
+            dataset = Dataset.make(CSVReader.read(new File(uri)));
+        } else {
+            try (InputStream stream = ContentReader.openStreamFromUrl(uri)) {
+                dataset = Dataset.make(CSVReader.read(stream));
+            }
+        }
+        localCache.recordLoad(System.nanoTime() - start);
         localCache.store(dataKey, dataset);
-        if (userCache != null) userCache.store(dataKey, dataset);
+        if (user != null) user.store(dataKey, dataset);
         return dataset;
     }
 
@@ -20,7 +20,7 @@ import org.brunel.data.Dataset;
 
 /**
  * Interface defining a caching mechanism to cache Dataset instances by a key name. Implementations
- * can be set using DataCache.useCache().
+ * can be set using DataCache.useCache(). Implementations are called from many threads, so must be thread-safe.
  *
  * @author drope
  */
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.util;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.io.Serialize;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A cache that keeps datasets in files in a directory, so they survive restarts.
+ * The files are in the columnar serialization format and are memory-mapped when read, so the numeric columns of
+ * cached data live in the operating system's file cache rather than on the Java heap.
+ * Entries are also keyed on the modification time and size of the source the key refers to (a file, or an HTTP
+ * resource that reports them), so data is read again when its source changes. Files are checked on every use, but
+ * the version of an HTTP resource is asked for once and kept until the entry is stored again.
+ * Datasets are written in a background thread, and are returned from memory until they have been written.
+ * The cache is only an optimization, so data that cannot be written or read is treated as not cached.
+ * It is safe to use from many threads, and from many processes sharing the directory.
+ */
+public class MappedDatasetCache implements DatasetCache {
+
+    private static final String SUFFIX = ".data";
+
+    // One thread writes for all caches, so writes do not compete with each other for the disk
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "brunel-cache-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Path directory;
+    private final ConcurrentMap<String, String> remoteVersions = new ConcurrentHashMap<>();  // Known HTTP versions
+    private final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<>();       // Stored, not yet written
+
+    /**
+     * Use a directory for the cache, creating it if necessary
+     *
+     * @param directory where to keep the data files
+     * @throws IOException if the directory cannot be created
+     */
+    public MappedDatasetCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public Dataset retrieve(String key) {
+        String version = versionOf(key);
+        Pending waiting = pending.get(key);
+        if (waiting != null && (waiting.version == null || waiting.version.equals(version))) return waiting.dataset;
+
+        Path file = fileFor(key, version);
+        if (!Files.exists(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return Serialize.readMappedDataset(channel);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void store(final String key, Dataset dataset) {
+        // Only the version of a file is found here; asking an HTTP server is left to the writer
+        String version = isRemote(key) ? remoteVersions.get(key) : sourceVersion(key);
+        final Pending item = new Pending(dataset, version);
+        pending.put(key, item);
+        writer.execute(new Runnable() {
+            public void run() {
+                // A later store for the same key replaces this one, and writes its own data
+                if (pending.get(key) != item) return;
+                try {
+                    write(key, item.dataset);
+                } finally {
+                    pending.remove(key, item);
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait until the datasets stored so far have been written
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(new Runnable() {
+                public void run() {
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /* Called only in the writer thread */
+    private void write(String key, Dataset dataset) {
+        // Write to a new file and then move it into place, so readers never see a partly written file
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, "store", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                Serialize.writeMappableDataset(dataset, channel);
+            }
+
+            // The data has just been read, so the version of its source is found again
+            String version = sourceVersion(key);
+            if (isRemote(key)) remoteVersions.put(key, version);
+            Path file = fileFor(key, version);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            removeOtherVersions(key, file);
+        } catch (IOException e) {
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Nothing more can be done
+            }
+        }
+    }
+
+    /* Data for earlier versions of the source will not be asked for again */
+    private void removeOtherVersions(String key, Path keep) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, digest(key) + "-*" + SUFFIX)) {
+            for (Path f : files) if (!f.equals(keep)) Files.deleteIfExists(f);
+        }
+    }
+
+    /* The version of the source for a key; for HTTP it is only asked for when not already known */
+    private String versionOf(String key) {
+        if (!isRemote(key)) return sourceVersion(key);
+        String version = remoteVersions.get(key);
+        if (version == null) {
+            version = sourceVersion(key);
+            remoteVersions.putIfAbsent(key, version);
+        }
+        return version;
+    }
+
+    private static boolean isRemote(String key) {
+        return key.startsWith("http:") || key.startsWith("https:");
+    }
+
+    /* Keys are often URLs, so the file is named by digests of the key and the version of its source */
+    private Path fileFor(String key, String version) {
+        return directory.resolve(digest(key) + "-" + digest(version) + SUFFIX);
+    }
+
+    /* The modification time and size of the source, or an empty string if they cannot be found */
+    private static String sourceVersion(String key) {
+        try {
+            URI uri = new URI(key.replaceAll(" ", "%20"));
+            String scheme = uri.getScheme();
+            if ("file".equals(scheme)) {
+                File file = new File(uri);
+                if (file.exists()) return file.lastModified() + ":" + file.length();
+            } else if ("http".equals(scheme) || "https".equals(scheme)) {
+                HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+                try {
+                    connection.setRequestMethod("HEAD");
+                    connection.setConnectTimeout(5000);
+                    connection.setReadTimeout(5000);
+                    if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                        long modified = connection.getLastModified();
+                        long size = connection.getContentLengthLong();
+                        if (modified != 0 || size >= 0) return modified + ":" + size;
+                    }
+                } finally {
+                    connection.disconnect();
+                }
+            }
+        } catch (Exception e) {
+            // The version is unknown
+        }
+        return "";
+    }
+
+    private static String digest(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest)
+                name.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 must be supported", e);
+        }
+    }
+
+    /* A dataset waiting to be written, with the version of its source if that is known */
+    private static final class Pending {
+        final Dataset dataset;
+        final String version;
+
+        Pending(Dataset dataset, String version) {
+            this.dataset = dataset;
+            this.version = version;
+        }
+    }
+}
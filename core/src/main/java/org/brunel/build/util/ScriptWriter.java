@@ -18,11 +18,15 @@ package org.brunel.build.util;
 
 import org.brunel.data.Data;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -30,11 +34,20 @@ import java.util.Set;
  */
 public class ScriptWriter {
 
+    /**
+     * Content that is only generated when the script is output, so it can be streamed
+     */
+    public interface Deferred {
+        void write(Writer out) throws IOException;
+    }
+
     private static final Set<Character> NO_SPACE_BEFORE = new HashSet<>(Arrays.asList(':', ',', ';', '(', ')', ']'));
     private static final String INDENT = "  ";
     private final int lineMaxLength;
     private final PrintWriter out;
     private final StringWriter base;
+    private final List<Object> parts = new ArrayList<>();   // Text and deferred content before that in base;
+                                                            // deferred content is replaced by its text once made
     public final BuilderOptions options;
     private int consecutiveNewLines;
     private int indentLevel;
@@ -117,12 +130,20 @@ public class ScriptWriter {
     }
 
     public int currentColumn() {
-        base.flush();
+        out.flush();
         StringBuffer b = base.getBuffer();
-        int end = b.length() - 1;
         int eol = b.lastIndexOf("\n");
-        if (eol < 0) eol = 0;
-        return end - eol;
+        if (eol >= 0) return b.length() - 1 - eol;
+
+        // The line started before deferred content, so count back through the text before this
+        int length = b.length();
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            String text = materialize(i);
+            eol = text.lastIndexOf('\n');
+            if (eol >= 0) return length + text.length() - 1 - eol;
+            length += text.length();
+        }
+        return length - 1;
     }
 
     public String quote(Object item) {
@@ -167,9 +188,70 @@ public class ScriptWriter {
         return this;
     }
 
+    /**
+     * Add content that will be written when the script is output
+     *
+     * @param content the content, which must not contain line breaks unless it also handles indentation
+     * @return this
+     */
+    public ScriptWriter addDeferred(Deferred content) {
+        out.flush();
+        parts.add(base.toString());
+        parts.add(content);
+        base.getBuffer().setLength(0);
+        consecutiveNewLines = 0;
+        changed = true;
+        return this;
+    }
+
     public String content() {
         out.close();
-        return base.toString();
+        if (parts.isEmpty()) return base.toString();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) result.append(materialize(i));
+        return result.append(base.toString()).toString();
+    }
+
+    /* The text of a part, making and keeping the text of deferred content so it is only made once */
+    private String materialize(int index) {
+        Object part = parts.get(index);
+        if (part instanceof String) return (String) part;
+        StringWriter text = new StringWriter();
+        try {
+            ((Deferred) part).write(text);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);                 // Cannot happen for a StringWriter
+        }
+        parts.set(index, text.toString());
+        return text.toString();
+    }
+
+    /**
+     * Write the script, generating deferred content as it goes
+     *
+     * @param writer where to write
+     * @throws IOException when the writer fails
+     */
+    public void writeTo(Writer writer) throws IOException {
+        out.flush();
+        for (Object part : parts) {
+            if (part instanceof Deferred) ((Deferred) part).write(writer);
+            else writer.write((String) part);
+        }
+        writer.write(base.toString());
+        writer.flush();
+    }
+
+    /**
+     * The indentation used at the start of a line
+     *
+     * @return spaces to use, which will be empty for compact output
+     */
+    public String indentation() {
+        StringBuilder b = new StringBuilder();
+        if (options.readableJavascript)
+            for (int i = 0; i < indentLevel; i++) b.append(INDENT);
+        return b.toString();
     }
 
     public ScriptWriter continueOnNextLine(String... before) {
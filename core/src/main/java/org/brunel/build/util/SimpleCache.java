@@ -18,46 +18,402 @@ package org.brunel.build.util;
 
 import org.brunel.data.Dataset;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A very simple and limited cache that stores a Dataset instance content by a key name.
+ * A cache that stores Dataset instances by a key name, within a budget for their estimated memory use.
+ * Eviction follows W-TinyLFU: new entries enter a small window, and when they leave it they are only kept in place
+ * of an older entry if they have been asked for more often, so a stream of one-off datasets cannot push out the
+ * datasets that are used all the time. Frequencies are kept approximately in a small sketch, and halved
+ * periodically so that popularity fades. Each entry may also have a time to live.
+ * Retrieval does not wait for the lock; accesses are buffered and applied by whichever thread next holds it.
  *
  * @author drope
  */
 public class SimpleCache implements DatasetCache {
 
-    /* Maximum amount of memory to allow in cache in bytes */
+    /* Default maximum amount of memory to allow in cache in bytes */
     private static final long MAX_ESTIMATED_MEMORY = 512 * 1024 * 1024;
 
-    private final Map<String, Dataset> map = Collections.synchronizedMap(new MapCache());
-    private long estimatedMemoryUse;
+    private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
 
-    @Override
-    public synchronized Dataset retrieve(String key) {
-        return map.get(key);
+    private final ConcurrentMap<String, Node> map = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Node> accesses = new ConcurrentLinkedQueue<>();  // Not yet recorded
+    private final Queue[] queues = {new Queue(), new Queue(), new Queue()};    // Guarded by lock
+    private final FrequencySketch sketch = new FrequencySketch(4096);         // Guarded by lock
+    private long maxBytes;                                                     // Guarded by lock
+    private volatile long timeToLiveNanos;                                     // Zero for no expiry
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    /**
+     * A cache with the default budget of 512MB, whose entries do not expire
+     */
+    public SimpleCache() {
+        this(MAX_ESTIMATED_MEMORY, 0);
+    }
+
+    /**
+     * A cache with a given memory budget and default time to live
+     *
+     * @param maxBytes         the maximum estimated memory use of the cached data
+     * @param timeToLiveMillis how long an entry is kept after it is stored, or zero to keep entries indefinitely
+     */
+    public SimpleCache(long maxBytes, long timeToLiveMillis) {
+        this.maxBytes = maxBytes;
+        setTimeToLive(timeToLiveMillis);
+    }
+
+    /**
+     * Change the budget for the estimated memory use, evicting entries if the cache is now over it
+     *
+     * @param maxBytes the maximum estimated memory use of the cached data
+     */
+    public void setMaximumSize(long maxBytes) {
+        lock.lock();
+        try {
+            drainAccesses();
+            this.maxBytes = maxBytes;
+            evict(null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Change the time to live for entries stored from now on
+     *
+     * @param timeToLiveMillis how long an entry is kept after it is stored, or zero to keep entries indefinitely
+     */
+    public void setTimeToLive(long timeToLiveMillis) {
+        timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
     }
 
     @Override
-    public synchronized void store(String key, Dataset dataset) {
-        Dataset previous = map.put(key, dataset);
-        if (previous != null) estimatedMemoryUse -= previous.expectedSize();
-        estimatedMemoryUse += dataset.expectedSize();
-    }
-
-    private class MapCache extends LinkedHashMap<String, Dataset> {
-        protected boolean removeEldestEntry(Map.Entry<String, Dataset> eldest) {
-            synchronized (SimpleCache.this) {
-                if (estimatedMemoryUse > MAX_ESTIMATED_MEMORY) {
-                    // This will be removed, so reduce the total memory size
-                    estimatedMemoryUse -= eldest.getValue().expectedSize();
-                    return true;
-                } else {
-                    return false;
+    public Dataset retrieve(String key) {
+        Node node = map.get(key);
+        if (node != null && node.expired(System.nanoTime())) {
+            // Leave the removal to the next thread to hold the lock if we cannot get it now
+            if (lock.tryLock()) {
+                try {
+                    drainAccesses();
+                    if (map.get(key) == node) {
+                        remove(node);
+                        expirations.incrementAndGet();
+                    }
+                } finally {
+                    lock.unlock();
                 }
             }
+            node = null;
+        }
+        if (node == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        accesses.add(node);
+        if (lock.tryLock()) {
+            try {
+                drainAccesses();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return node.dataset;
+    }
+
+    @Override
+    public void store(String key, Dataset dataset) {
+        store(key, dataset, TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos));
+    }
+
+    /**
+     * Store a given data set using the given key, to be kept for a given time
+     *
+     * @param key              unique key
+     * @param dataset          the Dataset instance to store in the cache
+     * @param timeToLiveMillis how long the entry is kept, or zero to keep it indefinitely
+     */
+    public void store(String key, Dataset dataset, long timeToLiveMillis) {
+        long ttl = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        Node node = new Node(key, dataset, dataset.expectedSize(), ttl > 0 ? System.nanoTime() + ttl : 0);
+        lock.lock();
+        try {
+            drainAccesses();
+            Node previous = map.put(key, node);
+            if (previous != null) queues[previous.queue].unlink(previous);
+            sketch.increment(key);
+            queues[WINDOW].append(node, WINDOW);
+            evict(node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record the time taken to load data that was not cached
+     *
+     * @param nanos time taken
+     */
+    public void recordLoad(long nanos) {
+        loads.incrementAndGet();
+        loadNanos.addAndGet(nanos);
+    }
+
+    /**
+     * The counts of what the cache has done so far
+     *
+     * @return a snapshot of the counts
+     */
+    public Stats stats() {
+        lock.lock();
+        try {
+            drainAccesses();
+            return new Stats(hits.get(), misses.get(), evictions.get(), expirations.get(), loads.get(),
+                    loadNanos.get(), map.size(), weight());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* Record the buffered retrievals of entries that are still cached; the lock must be held */
+    private void drainAccesses() {
+        Node node;
+        while ((node = accesses.poll()) != null)
+            if (map.get(node.key) == node) onAccess(node);
+    }
+
+    /* An entry was retrieved; move it up its queue, promoting it from probation to the protected queue */
+    private void onAccess(Node node) {
+        sketch.increment(node.key);
+        if (node.queue == PROBATION) {
+            queues[PROBATION].unlink(node);
+            queues[PROTECTED].append(node, PROTECTED);
+            // Demote the least recently used protected entries back to probation
+            long protectedMax = (maxBytes - windowMax()) * 4 / 5;
+            while (queues[PROTECTED].bytes > protectedMax && queues[PROTECTED].head != node) {
+                Node demoted = queues[PROTECTED].head;
+                queues[PROTECTED].unlink(demoted);
+                queues[PROBATION].append(demoted, PROBATION);
+            }
+        } else {
+            queues[node.queue].unlink(node);
+            queues[node.queue].append(node, node.queue);
+        }
+    }
+
+    /* Bring the cache back within budget, but never evict the entry being kept (which may be null) */
+    private void evict(Node keep) {
+        // Entries leaving the window become candidates at the end of the probation queue
+        Node firstCandidate = null;
+        while (queues[WINDOW].bytes > windowMax() && queues[WINDOW].head != null) {
+            Node n = queues[WINDOW].head;
+            queues[WINDOW].unlink(n);
+            queues[PROBATION].append(n, PROBATION);
+            if (firstCandidate == null) firstCandidate = n;
+        }
+
+        long now = System.nanoTime();
+        while (weight() > maxBytes) {
+            Node victim = first(queues[PROBATION].head, keep);
+            if (victim == null) victim = first(queues[PROTECTED].head, keep);
+            if (victim == null) victim = first(queues[WINDOW].head, keep);
+            if (victim == null) return;                         // Only the kept entry is left
+
+            // The newest candidate replaces the victim only if it is used more often
+            Node candidate = firstCandidate == null ? null : queues[PROBATION].tail;
+            if (candidate != null && candidate != victim && candidate != keep
+                    && (candidate.expired(now) || !victim.expired(now)
+                    && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)))
+                victim = candidate;
+
+            if (victim == firstCandidate) firstCandidate = victim.next;     // Candidates end the queue
+            if (victim.expired(now)) expirations.incrementAndGet();
+            else evictions.incrementAndGet();
+            remove(victim);
+        }
+    }
+
+    /* The first node starting at the given one that is not the kept one */
+    private Node first(Node n, Node keep) {
+        return n == keep ? n.next : n;
+    }
+
+    private void remove(Node node) {
+        queues[node.queue].unlink(node);
+        map.remove(node.key, node);
+    }
+
+    private long windowMax() {
+        return Math.max(1, maxBytes / 100);
+    }
+
+    private long weight() {
+        return queues[WINDOW].bytes + queues[PROBATION].bytes + queues[PROTECTED].bytes;
+    }
+
+    /**
+     * The counts of what a cache has done, at one moment
+     */
+    public static final class Stats {
+        private final long hits, misses, evictions, expirations, loads, loadNanos, entries, bytes;
+
+        Stats(long hits, long misses, long evictions, long expirations, long loads, long loadNanos,
+              long entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.loads = loads;
+            this.loadNanos = loadNanos;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public long hitCount() {
+            return hits;
+        }
+
+        public long missCount() {
+            return misses;
+        }
+
+        public double hitRate() {
+            return hits + misses == 0 ? 1.0 : hits / (double) (hits + misses);
+        }
+
+        public long evictionCount() {
+            return evictions;
+        }
+
+        public long expirationCount() {
+            return expirations;
+        }
+
+        public long loadCount() {
+            return loads;
+        }
+
+        public long totalLoadTimeNanos() {
+            return loadNanos;
+        }
+
+        public long entryCount() {
+            return entries;
+        }
+
+        public long estimatedBytes() {
+            return bytes;
+        }
+
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", expirations="
+                    + expirations + ", loads=" + loads + ", loadMillis=" + TimeUnit.NANOSECONDS.toMillis(loadNanos)
+                    + ", entries=" + entries + ", bytes=" + bytes;
+        }
+    }
+
+    /* A cached dataset, with its weight calculated once when stored */
+    private static final class Node {
+        final String key;
+        final Dataset dataset;
+        final long weight;
+        final long expiresAt;                                   // System.nanoTime() value, or zero for never
+        int queue;
+        Node prev, next;
+
+        Node(String key, Dataset dataset, long weight, long expiresAt) {
+            this.key = key;
+            this.dataset = dataset;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean expired(long now) {
+            return expiresAt != 0 && now - expiresAt >= 0;
+        }
+    }
+
+    /* Doubly linked list of nodes in order of use, least recent first, with their total weight */
+    private static final class Queue {
+        Node head, tail;
+        long bytes;
+
+        void append(Node node, int queue) {
+            node.queue = queue;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) head = node;
+            else tail.next = node;
+            tail = node;
+            bytes += node.weight;
+        }
+
+        void unlink(Node node) {
+            if (node.prev == null) head = node.next;
+            else node.prev.next = node.next;
+            if (node.next == null) tail = node.prev;
+            else node.next.prev = node.prev;
+            node.prev = node.next = null;
+            bytes -= node.weight;
+        }
+    }
+
+    /* Count-min sketch of how often keys are used, with four-bit counters that are halved periodically */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counts;
+        private final int mask;
+        private final int resetAt;
+        private int additions;
+
+        FrequencySketch(int width) {
+            counts = new byte[SEEDS.length][width];
+            mask = width - 1;
+            resetAt = width * 10;
+        }
+
+        int frequency(String key) {
+            int h = spread(key.hashCode()), result = 15;
+            for (int i = 0; i < SEEDS.length; i++) result = Math.min(result, counts[i][index(h, i)]);
+            return result;
+        }
+
+        void increment(String key) {
+            int h = spread(key.hashCode());
+            for (int i = 0; i < SEEDS.length; i++) {
+                int j = index(h, i);
+                if (counts[i][j] < 15) counts[i][j]++;
+            }
+            if (++additions >= resetAt) {
+                for (byte[] row : counts)
+                    for (int j = 0; j < row.length; j++) row[j] >>= 1;
+                additions /= 2;
+            }
+        }
+
+        private int index(int h, int row) {
+            int x = h * SEEDS[row];
+            return (x ^ (x >>> 16)) & mask;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 16;
+            h *= 0x45d9f3b;
+            return h ^ (h >>> 16);
         }
     }
 }
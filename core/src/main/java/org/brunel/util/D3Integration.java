@@ -21,16 +21,21 @@ package org.brunel.util;
 import org.brunel.action.Action;
 import org.brunel.action.ActionUtil;
 import org.brunel.action.Param;
+import org.brunel.build.controls.Controls;
 import org.brunel.build.d3.D3Builder;
 import org.brunel.build.util.BuilderOptions;
 import org.brunel.build.util.DataCache;
 import org.brunel.data.Dataset;
-import org.brunel.data.io.CSV;
+import org.brunel.data.io.CSVReader;
 import org.brunel.model.VisException;
 import org.brunel.model.VisItem;
 
 import com.google.gson.Gson;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
 /**
  * Brunel integration methods provided for services and other languages.  Only primitives are used for language integration methods
  *
@@ -126,8 +131,7 @@ public class D3Integration {
 	 */
 
     public static BrunelD3Result createBrunelResult(String data, String brunelSrc, int width,  int height, String visId, String controlsId) {
-    			Dataset dataset = makeBrunelData(data);
-				D3Builder builder = makeD3(dataset, brunelSrc, width, height, visId, controlsId);
+				D3Builder builder = createBrunelBuilder(data, brunelSrc, width, height, visId, controlsId);
 				BrunelD3Result result = new BrunelD3Result();
 				result.css = builder.getStyleOverrides();
 				result.js = builder.getVisualization().toString();
@@ -136,6 +140,41 @@ public class D3Integration {
     }
     
     
+    /**
+     * Build the visualization, ready for its results to be written with writeBrunelJSON
+     * @param data the data as a CSV String
+     * @param brunelSrc the brunel syntax
+     * @param width the desired width for the visualization
+     * @param height the desired height for the visualization
+     * @param visId an identifier used in the SVG tag that will contain the visualization
+     * @return the builder that has built the visualization
+     */
+    public static D3Builder createBrunelBuilder(String data, String brunelSrc, int width,  int height, String visId, String controlsId) {
+    	return makeD3(makeBrunelData(data), brunelSrc, width, height, visId, controlsId);
+    }
+
+    /**
+     * Write the Brunel results as JSON, the same as createBrunelJSON makes.  The Javascript (which holds the data tables)
+     * is streamed to the writer rather than being built as a String first.
+     * @param builder a builder that has built the visualization
+     * @param out where to write the JSON
+     * @throws IOException if the writer fails
+     */
+    public static void writeBrunelJSON(D3Builder builder, Writer out) throws IOException {
+    	out.write("{\"js\":\"");
+    	builder.writeVisualization(new JsonStringWriter(out));
+    	out.write("\"");
+    	String css = builder.getStyleOverrides();
+    	if (css != null) out.write(",\"css\":" + gson.toJson(css));
+    	Controls controls = builder.getControls();
+    	if (controls != null) {
+    		out.write(",\"controls\":");
+    		gson.toJson(controls, out);
+    	}
+    	out.write("}");
+    	out.flush();
+    }
+
     /**
      * Append Brunel exception messages following the cause of a given exception stack trace, stopping when reaching a VisException.  
      * @param thrown the Exception that was thrown.  The message for this exception is not included in the results.
@@ -175,7 +214,8 @@ public class D3Integration {
     private static Dataset makeBrunelData(String data) {
     	if (data == null || data.isEmpty()) return null;
     	try {
-            return  Dataset.make(CSV.read(data));
+            int parallelism = BuilderOptions.makeFromENV().dataParallelism;
+            return Dataset.make(CSVReader.read(ByteBuffer.wrap(data.getBytes("UTF-8")), parallelism));
     	 } catch (Exception e) {
              throw new IllegalArgumentException("Could not create data as CSV from content", e);
          }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes text as the contents of a JSON string, escaping characters the same way Gson does by default
+ * (including the HTML-sensitive ones). The surrounding quotes are not written.
+ */
+class JsonStringWriter extends Writer {
+
+    private static final String[] REPLACEMENTS = new String[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) REPLACEMENTS[c] = String.format("\\u%04x", c);
+        for (char c : "<>&='".toCharArray()) REPLACEMENTS[c] = String.format("\\u%04x", (int) c);
+        REPLACEMENTS['"'] = "\\\"";
+        REPLACEMENTS['\\'] = "\\\\";
+        REPLACEMENTS['\t'] = "\\t";
+        REPLACEMENTS['\b'] = "\\b";
+        REPLACEMENTS['\n'] = "\\n";
+        REPLACEMENTS['\r'] = "\\r";
+        REPLACEMENTS['\f'] = "\\f";
+    }
+
+    private final Writer out;
+
+    JsonStringWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void write(char[] chars, int off, int len) throws IOException {
+        int end = off + len;
+        int plain = off;                                    // Start of characters not yet written
+        for (int i = off; i < end; i++) {
+            String escaped = escape(chars[i]);
+            if (escaped == null) continue;
+            out.write(chars, plain, i - plain);
+            out.write(escaped);
+            plain = i + 1;
+        }
+        out.write(chars, plain, end - plain);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static String escape(char c) {
+        if (c < REPLACEMENTS.length) return REPLACEMENTS[c];
+        return c == '\u2028' || c == '\u2029' ? String.format("\\u%04x", (int) c) : null;
+    }
+}
@@ -60,15 +60,39 @@ var BrunelD3 = (function () {
     }
 
 
+    // Decode a column sent as a base64 typed array (little-endian). The object has one of these forms:
+    // {numbers: '..'}, {integers: '..'}, {dates: '..'} or {values: [..], size: n, codes: '..'}
+    function makeColumn(c) {
+        // Payloads are empty strings for empty columns, so test for presence, not truth
+        var i, bytes, array, text, result = [],
+            isIntegers = c.integers != null, isCodes = c.codes != null, isDates = c.dates != null;
+        text = atob(isIntegers ? c.integers : isCodes ? c.codes : isDates ? c.dates : c.numbers);
+        bytes = new Uint8Array(text.length);
+        for (i = 0; i < text.length; i++) bytes[i] = text.charCodeAt(i);
+        if (isIntegers) array = new Int32Array(bytes.buffer);
+        else if (isCodes) array = c.size == 1 ? new Int8Array(bytes.buffer)
+            : c.size == 2 ? new Int16Array(bytes.buffer) : new Int32Array(bytes.buffer);
+        else array = new Float64Array(bytes.buffer);
+        for (i = 0; i < array.length; i++) {
+            if (isCodes) result.push(array[i] < 0 ? null : c.values[array[i]]);
+            else if (isNaN(array[i])) result.push(null);
+            else result.push(isDates ? new Date(array[i]) : array[i]);
+        }
+        return result;
+    }
+
     // Create a dataset from rows. Each object has three parts - names, types, rows
+    // Instead of rows, it may have columns, each in the form read by makeColumn
     // The types are 'string', 'date' or 'numeric'
     function makeDataset(data) {
         var col, field, i, opt, fields = [];
         for (i = 0; i < data.names.length; i++) {
-            col = data.rows.map(function (x) {
+            if (data.columns) col = makeColumn(data.columns[i]);
+            else col = data.rows.map(function (x) {
                 return x[i]
             });                               // Extract i'th item
-            field = new BrunelData.Field(data.names[i], null, new BrunelData.values_ColumnProvider(col));
+            field = new BrunelData.Field(data.names[i], data.labels ? data.labels[i] : null,
+                new BrunelData.values_ColumnProvider(col));
             opt = data.options ? data.options[i] : "string";                                // Apply type options
             if (opt == 'numeric') field = BrunelData.Data.toNumeric(field);
             if (opt == 'date') field = BrunelData.Data.toDate(field);
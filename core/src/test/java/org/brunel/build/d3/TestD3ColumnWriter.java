@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.d3;
+
+import org.brunel.action.Action;
+import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataMethod;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.io.CSV;
+import org.brunel.model.VisItem;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the writing of data table columns as typed arrays
+ */
+public class TestD3ColumnWriter {
+
+    private static final Dataset DATA = Dataset.make(CSV.read(
+            "A,B,C,D\na,1,2010-01-05,0.5\nb,2,,\n,3,2011-02-06,-2"));
+
+    @Test
+    public void testColumns() throws Exception {
+        Field[] fields = {DATA.field("A"), DATA.field("B"), DATA.field("C"), DATA.field("D")};
+        StringWriter out = new StringWriter();
+        new D3ColumnWriter(fields, DATA.rowCount(), "  ").write(out);
+
+        // Codes 0, 1, -1 as bytes; integers 1, 2, 3; days as milliseconds with NaN; doubles 0.5, NaN, -2
+        String n = System.lineSeparator();
+        assertEquals(n + "  {values: ['a', 'b'], size: 1, codes: 'AAH/'},"
+                + n + "  {integers: 'AQAAAAIAAAADAAAA'},"
+                + n + "  {dates: 'AACAfrxfckIAAAAAAAD4fwAAQEmE33JC'},"
+                + n + "  {numbers: 'AAAAAAAA4D8AAAAAAAD4fwAAAAAAAADA'}", out.toString());
+    }
+
+    @Test
+    public void testBinaryOption() {
+        BuilderOptions options = new BuilderOptions();
+        options.includeData = DataMethod.binary;
+        D3Builder builder = D3Builder.make(options);
+        VisItem item = Action.parse("x(A) y(D)").apply(DATA);
+        builder.build(item, 400, 300);
+        String js = builder.getVisualization().toString();
+        assertTrue(js.contains("columns: ["));
+        assertTrue(js.contains("{values: ['a', 'b'], size: 1, codes: 'AAH/'}"));
+        assertTrue(!js.contains("rows: ["));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.d3;
+
+import org.brunel.action.Action;
+import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataMethod;
+import org.brunel.data.Dataset;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the data tables written for the different data methods
+ */
+public class TestD3DataBuilder {
+
+    private static final Dataset DATA = Dataset.make(CSV.read(
+            "Region,Water\nNorth,1\nSouth,2\nNorth,3\nEast,4\nSouth,5\nNorth,6\nEast,7\nWest,8"));
+
+    @Test
+    public void testMinimalSendsSummary() {
+        String js = build("bar x(Region) y(Water) mean(Water)");
+
+        // Four summary rows, with the counts and rows they summarize, rather than the eight original rows
+        assertTrue(js.contains("names: ['Region', 'Water', '#count', '#row']"));
+        assertTrue(js.contains("labels: ['Region', 'Mean(Water)', 'Count', 'Row']"));
+        assertTrue(js.contains("options: ['string', 'numeric', 'numeric', 'list']"));
+        assertTrue(js.contains("rows: [['East', 5.5, 2, '4, 7'], ['North', 3.33333333, 3, '1, 3, 6'], "
+                + "['South', 3.5, 2, '2, 5'],"));
+        assertTrue(js.contains("['West', 8, 1, '8']]"));
+
+        // The client must not summarize again
+        assertTrue(!js.contains(".summarize("));
+    }
+
+    @Test
+    public void testMinimalFallsBackForInteraction() {
+        // Selection needs the original rows, so the data is sent as for columns
+        String js = build("bar x(Region) y(Water) mean(Water) interaction(select)");
+        assertTrue(js.contains("names: ['Region', 'Water']"));
+        assertTrue(!js.contains("labels: ["));
+        assertTrue(js.contains(".summarize("));
+
+        // So is data with nothing to summarize
+        js = build("point x(Region) y(Water)");
+        assertTrue(js.contains("names: ['Region', 'Water']"));
+        assertEquals(js, buildWith("point x(Region) y(Water)", DataMethod.columns));
+    }
+
+    private String build(String action) {
+        return buildWith(action, DataMethod.minimal);
+    }
+
+    private String buildWith(String action, DataMethod method) {
+        BuilderOptions options = new BuilderOptions();
+        options.includeData = method;
+        D3Builder builder = D3Builder.make(options);
+        builder.build(Action.parse(action).apply(DATA), 400, 300);
+        return builder.getVisualization().toString();
+    }
+}
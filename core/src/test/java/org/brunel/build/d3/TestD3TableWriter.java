@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.d3;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the streamed writing of data table rows
+ */
+public class TestD3TableWriter {
+
+    @Test
+    public void testNumbersMatchDecimalFormat() {
+        NumberFormat format = new DecimalFormat("0.########", DecimalFormatSymbols.getInstance(Locale.US));
+        D3ValueFormat writer = new D3ValueFormat();
+        StringBuilder b = new StringBuilder();
+
+        double[] fixed = {0, -0.0, 1, -1, 0.5, 0.1, 1e-9, -1e-10, 0.5e-8, 1.5e-8, 2.5e-8, 123.456, 1e7 + 0.25,
+                9999999.999999995, 1e15, 1e20, -3.14159265358979, Double.MIN_VALUE, Double.MAX_VALUE};
+        for (double v : fixed) {
+            b.setLength(0);
+            writer.appendNumber(b, v);
+            assertEquals(format.format(v), b.toString());
+        }
+
+        Random random = new Random(11);
+        for (int i = 0; i < 100000; i++) {
+            double v = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(24) - 12);
+            if (i % 2 == 0) v = Math.rint(v * 1e6) / Math.pow(10, random.nextInt(9));
+            b.setLength(0);
+            writer.appendNumber(b, v);
+            assertEquals(format.format(v), b.toString());
+        }
+
+        b.setLength(0);
+        writer.appendNumber(b, Double.NaN);
+        assertEquals("null", b.toString());
+    }
+
+    @Test
+    public void testRows() throws Exception {
+        Dataset data = Dataset.make(CSV.read("A,B,C,D\na,1.5,,2010-01-05\nb,2,3,2011-02-06\n'c',-0.25,1e-9,"));
+        Field[] fields = {data.field("A"), data.field("B"), data.field("C"), data.field("D")};
+
+        StringWriter out = new StringWriter();
+        new D3TableWriter(fields, data.rowCount(), 10, "  ").write(out);
+        assertEquals("['a', 1.5, null, '2010-01-05'], ['b', 2, 3, '2011-02-06'], [\"'c'\", -0.25, 0, null]",
+                out.toString());
+
+        // Rows that do not fit start a new line
+        out = new StringWriter();
+        new D3TableWriter(fields, data.rowCount(), 70, "  ").write(out);
+        String n = System.lineSeparator();
+        assertEquals(n + "  ['a', 1.5, null, '2010-01-05'], ['b', 2, 3, '2011-02-06'], [\"'c'\", -0.25, 0, null]",
+                out.toString());
+    }
+}
@@ -17,10 +17,17 @@
 package org.brunel.build.data;
 
 import org.brunel.action.Action;
+import org.brunel.build.util.DataCache;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.brunel.data.io.CSV;
 import org.brunel.model.VisSingle;
 import org.junit.Test;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
 
 /**
  * Tests the building information
@@ -48,6 +55,62 @@ public class TestDataBuilder {
                 getSummarizeCommands("x(income) color(region) y(population) mean(population,income)"));
     }
 
+    @Test
+    public void testParallelBuildMatchesSerial() {
+        // Large enough to be divided into chunks
+        int n = 50000;
+        Object[] a = new Object[n], b = new Object[n], c = new Object[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = "cat" + (i % 7);
+            b[i] = i % 13 == 0 ? null : (double) ((i * 7919) % 1000);
+            c[i] = (i * 31 % 997) / 10.0;
+        }
+        Dataset data = Dataset.make(new Field[]{Fields.makeColumnField("a", null, a),
+                Fields.makeColumnField("b", null, b), Fields.makeColumnField("c", null, c)});
+        DataCache.store("test:parallel", data);
+
+        String[] commands = {"x(b) y(c) color(a)", "x(a) y(b) median(b)", "x(c) y(b) bin(c) mean(b)",
+                "x(a) y(c) range(c) color(b) bin(b)"};
+        for (String command : commands) {
+            VisSingle vis = Action.parse("data('test:parallel') " + command).apply().getSingle().makeCanonical();
+            Dataset serial = new DataBuilder(vis, null, 1, null).build();
+            Dataset parallel = new DataBuilder(vis, null, 4, null).build();
+            assertEquals(dump(serial), dump(parallel));
+        }
+    }
+
+    @Test
+    public void testDerivedDataReused() {
+        Dataset data = Dataset.make(CSV.read("a,b\nx,1\ny,2\nx,3\nz,4"));
+        DataCache.store("test:derived", data);
+        DerivedDataCache cache = new DerivedDataCache(10);
+
+        VisSingle vis = Action.parse("data('test:derived') x(a) y(b) mean(b)").apply().getSingle().makeCanonical();
+        Dataset first = new DataBuilder(vis, null, 1, cache).build();
+        Dataset second = new DataBuilder(vis, null, 1, cache).build();
+        assertEquals(dump(new DataBuilder(vis, null, 1, null).build()), dump(second));
+
+        // The summary was not recomputed, but each build has its own parameters
+        assertTrue(first != second);
+        assertSame(first.field("b"), second.field("b"));
+        assertTrue(first.property("parameters") != second.property("parameters"));
+
+        // A different chart that starts with the same steps reuses them
+        VisSingle sorted = Action.parse("data('test:derived') x(a) y(b) mean(b) sort(b)").apply().getSingle().makeCanonical();
+        Dataset third = new DataBuilder(sorted, null, 1, cache).build();
+        assertEquals(dump(new DataBuilder(sorted, null, 1, null).build()), dump(third));
+    }
+
+    private String dump(Dataset data) {
+        StringBuilder b = new StringBuilder();
+        for (Field f : data.fields) {
+            b.append(f.name).append(':');
+            for (int i = 0; i < f.rowCount(); i++) b.append(f.value(i)).append(',');
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
     private String getSummarizeCommands(String brunel) {
         String command = "data('sample:US States.csv') " + brunel;
         VisSingle vis = Action.parse(command).apply().getSingle().makeCanonical();
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.util;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for concurrent use of the data cache
+ */
+public class TestDataCache {
+
+    @Test
+    public void testConcurrentRequestsShareOneLoad() throws Exception {
+        // A slow user cache that makes a new instance each time, as deserializing would
+        final AtomicInteger retrieved = new AtomicInteger();
+        DataCache.useCache(new DatasetCache() {
+            public Dataset retrieve(String key) {
+                if (!key.equals("test:single-flight")) return null;
+                retrieved.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return Dataset.make(CSV.read("a,b\n1,2\n3,4"));
+            }
+
+            public void store(String key, Dataset dataset) {
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Dataset>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                results.add(executor.submit(new Callable<Dataset>() {
+                    public Dataset call() throws Exception {
+                        return DataCache.get("test:single-flight");
+                    }
+                }));
+            Dataset first = results.get(0).get();
+            for (Future<Dataset> result : results) assertSame(first, result.get());
+            assertEquals(1, retrieved.get());
+
+            // Now cached, so an asynchronous request is already complete
+            Future<Dataset> async = DataCache.getAsync("test:single-flight");
+            assertEquals(true, async.isDone());
+            assertSame(first, async.get());
+        } finally {
+            executor.shutdown();
+            DataCache.useCache(null);
+        }
+    }
+
+    @Test
+    public void testAsyncLoad() throws Exception {
+        Dataset a = DataCache.getAsync("raw:x,y;1,2;3,4").get();
+        assertEquals(2, a.rowCount());
+        assertSame(a, DataCache.get("raw:x,y;1,2;3,4"));
+    }
+
+    @Test
+    public void testFileLoad() throws Exception {
+        File file = File.createTempFile("brunel", ".csv");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("Name,Value\na,1\nb,7".getBytes("UTF-8"));
+        }
+        Dataset data = DataCache.get(file.toURI().toString());
+        assertEquals(2, data.rowCount());
+        assertEquals(7.0, data.field("Value").value(1));
+    }
+}
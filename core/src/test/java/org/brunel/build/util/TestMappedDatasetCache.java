@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.io.CSV;
+import org.brunel.data.values.MappedNumericProvider;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the cache of data in memory-mapped files
+ */
+public class TestMappedDatasetCache {
+
+    @Test
+    public void testStoreAndRetrieve() throws Exception {
+        Path directory = Files.createTempDirectory("brunel-cache");
+        try {
+            Dataset data = Dataset.make(CSV.read("a,b,c,d\n1,x,1.5,2010-01-05\n,,,\n-3,y,NaN,1970-01-01"));
+            MappedDatasetCache cache = new MappedDatasetCache(directory);
+            cache.store("upload:data", data);
+
+            // The data can be retrieved at once, whether or not it has been written yet
+            assertEquals(3, cache.retrieve("upload:data").rowCount());
+            cache.flush();
+            assertNull(new MappedDatasetCache(directory).retrieve("upload:other"));
+
+            // A new cache on the same directory, as after a restart, finds the data
+            Dataset copy = new MappedDatasetCache(directory).retrieve("upload:data");
+            assertEquals(3, copy.rowCount());
+            for (Field f : data.fields) {
+                Field g = copy.field(f.name);
+                assertEquals(f.isNumeric(), g.isNumeric());
+                assertEquals(f.isDate(), g.isDate());
+                for (int i = 0; i < 3; i++) assertEquals(0, Data.compare(f.value(i), g.value(i)));
+            }
+
+            // Numbers and dates are read from the file, not the heap
+            assertTrue(copy.field("a").numericProvider() instanceof MappedNumericProvider);
+            assertTrue(copy.field("d").numericProvider() instanceof MappedNumericProvider);
+            assertEquals(-1.0, copy.field("a").numProperty("mean"), 1e-9);
+        } finally {
+            for (File f : directory.toFile().listFiles()) f.delete();
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testChangedSourceIsNotRetrieved() throws Exception {
+        Path directory = Files.createTempDirectory("brunel-cache");
+        Path source = Files.createTempFile("brunel-source", ".csv");
+        try {
+            String key = source.toUri().toString();
+            Files.write(source, "a\n1\n2".getBytes("UTF-8"));
+            MappedDatasetCache cache = new MappedDatasetCache(directory);
+            cache.store(key, Dataset.make(CSV.read("a\n1\n2")));
+            assertEquals(2, cache.retrieve(key).rowCount());
+
+            // Changing the file changes its size and time, so the cached copy is no longer used
+            Files.write(source, "a\n1\n2\n3".getBytes("UTF-8"));
+            assertNull(cache.retrieve(key));
+
+            // Storing the new version replaces the old file
+            cache.store(key, Dataset.make(CSV.read("a\n1\n2\n3")));
+            cache.flush();
+            assertEquals(3, cache.retrieve(key).rowCount());
+            assertEquals(1, directory.toFile().listFiles().length);
+        } finally {
+            for (File f : directory.toFile().listFiles()) f.delete();
+            Files.delete(directory);
+            Files.delete(source);
+        }
+    }
+
+    @Test
+    public void testRemoteVersionIsAskedForOnce() throws Exception {
+        final AtomicInteger heads = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestMethod().equals("HEAD")) heads.incrementAndGet();
+                exchange.getResponseHeaders().add("Last-Modified", "Tue, 01 Mar 2016 10:00:00 GMT");
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        Path directory = Files.createTempDirectory("brunel-cache");
+        try {
+            String key = "http://localhost:" + server.getAddress().getPort() + "/data.csv";
+            MappedDatasetCache cache = new MappedDatasetCache(directory);
+            assertNull(cache.retrieve(key));
+            assertNull(cache.retrieve(key));
+            assertEquals(1, heads.get());
+
+            // Storing asks again in the writer, as the source has just been read
+            cache.store(key, Dataset.make(CSV.read("a\n1\n2")));
+            cache.flush();
+            assertEquals(2, heads.get());
+            assertEquals(2, cache.retrieve(key).rowCount());
+            assertEquals(2, cache.retrieve(key).rowCount());
+            assertEquals(2, heads.get());
+        } finally {
+            server.stop(0);
+            for (File f : directory.toFile().listFiles()) f.delete();
+            Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.build.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for writing script text with deferred content
+ */
+public class TestScriptWriter {
+
+    @Test
+    public void testColumnFollowsDeferredContent() {
+        ScriptWriter out = new ScriptWriter(new BuilderOptions());
+        out.add("a").ln().add("abc");
+        assertEquals(3, out.currentColumn());
+
+        // Deferred text without a line break continues the line
+        out.addDeferred(writing("1234", new AtomicInteger())).add("xy");
+        assertEquals(9, out.currentColumn());
+
+        // Deferred text with a line break starts a new one
+        out.addDeferred(writing("12\n345", new AtomicInteger())).add("xy");
+        assertEquals(5, out.currentColumn());
+    }
+
+    @Test
+    public void testDeferredContentIsMadeOnce() throws IOException {
+        AtomicInteger made = new AtomicInteger();
+        ScriptWriter out = new ScriptWriter(new BuilderOptions());
+        out.add("var a = [").addDeferred(writing("1, 2", made)).add("]").endStatement();
+        String text = out.content();
+        assertEquals("var a = [1, 2];" + System.lineSeparator(), text);
+        assertEquals(text, out.content());
+        assertEquals(1, made.get());
+
+        StringWriter written = new StringWriter();
+        out.writeTo(written);
+        assertEquals(text, written.toString());
+        assertEquals(1, made.get());
+    }
+
+    /* Deferred content writing fixed text, counting how often it is made */
+    private static ScriptWriter.Deferred writing(final String text, final AtomicInteger made) {
+        return new ScriptWriter.Deferred() {
+            public void write(Writer out) throws IOException {
+                made.incrementAndGet();
+                out.write(text);
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.util;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the in-memory cache's eviction, expiry and counts
+ */
+public class TestSimpleCache {
+
+    private static Dataset make(int i) {
+        return Dataset.make(CSV.read("a,b\n" + i + ",x" + i + "\n" + (i + 1) + ",y" + i));
+    }
+
+    @Test
+    public void testFrequentDataSurvivesOneOffs() {
+        Dataset shared = make(0);
+        long size = shared.expectedSize();
+        SimpleCache cache = new SimpleCache(size * 10, 0);
+        cache.store("shared", shared);
+        for (int i = 1; i < 200; i++) {
+            assertSame(shared, cache.retrieve("shared"));
+            cache.store("upload" + i, make(i));
+        }
+        assertSame(shared, cache.retrieve("shared"));
+        assertTrue(cache.stats().estimatedBytes() <= size * 10);
+        assertTrue(cache.stats().evictionCount() > 150);
+    }
+
+    @Test
+    public void testBudget() {
+        Dataset data = make(1);
+        SimpleCache cache = new SimpleCache(data.expectedSize() * 3, 0);
+        for (int i = 0; i < 10; i++) cache.store("k" + i, make(1));
+        assertEquals(3, cache.stats().entryCount());
+        assertEquals(data.expectedSize() * 3, cache.stats().estimatedBytes());
+
+        // Data larger than the budget is still kept until something else is stored
+        cache.setMaximumSize(1);
+        assertEquals(0, cache.stats().entryCount());
+        cache.store("big", data);
+        assertSame(data, cache.retrieve("big"));
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        SimpleCache cache = new SimpleCache(1000000, 0);
+        cache.store("short", make(1), 20);
+        cache.store("long", make(2));
+        assertNotNull(cache.retrieve("short"));
+        Thread.sleep(50);
+        assertNull(cache.retrieve("short"));
+        assertNotNull(cache.retrieve("long"));
+        assertEquals(1, cache.stats().expirationCount());
+    }
+
+    @Test
+    public void testStats() {
+        SimpleCache cache = new SimpleCache();
+        cache.store("a", make(1));
+        cache.retrieve("a");
+        cache.retrieve("a");
+        cache.retrieve("b");
+        cache.recordLoad(2000000);
+        SimpleCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(2 / 3.0, stats.hitRate(), 1e-9);
+        assertEquals(1, stats.loadCount());
+        assertEquals(2000000, stats.totalLoadTimeNanos());
+        assertEquals(1, stats.entryCount());
+        assertEquals("hits=2, misses=1, evictions=0, expirations=0, loads=1, loadMillis=2, entries=1, bytes="
+                + make(1).expectedSize(), stats.toString());
+    }
+
+    @Test
+    public void testAccessesDuringStoresAreRecorded() throws Exception {
+        final Dataset shared = make(0);
+        final long size = shared.expectedSize();
+        final SimpleCache cache = new SimpleCache(size * 10, 0);
+        cache.store("shared", shared);
+
+        // Readers compete for the lock with a writer storing one-off data
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 2000; i++) cache.retrieve("shared");
+                }
+            };
+            readers[t].start();
+        }
+        for (int i = 1; i < 500; i++) {
+            cache.store("upload" + i, make(i));
+            cache.retrieve("shared");
+        }
+        for (Thread t : readers) t.join();
+
+        assertSame(shared, cache.retrieve("shared"));
+        assertEquals(500 + 4 * 2000, cache.stats().hitCount());
+    }
+}
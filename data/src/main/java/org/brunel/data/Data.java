@@ -16,9 +16,11 @@
 
 package org.brunel.data;
 
+import org.brunel.data.summary.RowSorter;
 import org.brunel.data.util.Dates;
 import org.brunel.data.util.ItemsList;
 import org.brunel.data.util.Range;
+import org.brunel.data.values.DictionaryColumnProvider;
 import org.brunel.translator.JSTranslation;
 
 import java.text.DecimalFormat;
@@ -177,7 +179,7 @@ public class Data {
             return ((Date) c).getTime() / MILLIS_PER_DAY;
         else if (c instanceof String) try {
             String s = ((String) c).trim();
-            if (s.isEmpty()) return null;
+            if (s.isEmpty() || !mayBeNumber(s)) return null;
             d = Double.parseDouble(s);
         } catch (NumberFormatException ignored) {
             // We do not convert string -> date -> numbers; that must be done manually
@@ -186,6 +188,54 @@ public class Data {
         return d == null || Double.isNaN(d) ? null : d;
     }
 
+    /*
+     * False if the text is certainly not read by Double.parseDouble, so most failures avoid throwing an exception.
+     * Decimal numbers are checked fully; NaN, Infinity and hexadecimal forms are left to the parser
+     */
+    @JSTranslation(ignore = true)
+    private static boolean mayBeNumber(String s) {
+        int n = s.length(), i = 0;
+        char c = s.charAt(0);
+        if (c == '+' || c == '-') {
+            if (n == 1) return false;
+            c = s.charAt(++i);
+        }
+        if (c == 'N' || c == 'I') return true;
+        if (c == '0' && i + 1 < n && (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X')) return true;
+
+        int digits = 0;
+        while (i < n && isDigit(s.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < n && s.charAt(i) == '.') {
+            i++;
+            while (i < n && isDigit(s.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) return false;
+
+        if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+            int exponentDigits = 0;
+            while (i < n && isDigit(s.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) return false;
+        }
+        if (i < n && "fFdD".indexOf(s.charAt(i)) >= 0) i++;
+        return i == n;
+    }
+
+    @JSTranslation(ignore = true)
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
     @JSTranslation(js = "$.sort(data, $$CLASS$$.compare)")
     public static void sort(Object[] data) {
         Arrays.sort(data, new Comparator<Object>() {
@@ -209,6 +259,25 @@ public class Data {
         return ((Comparable) a).compareTo(b);
     }
 
+    /**
+     * Compare two numbers in the same order as Double.compare, which is not available in Javascript.
+     * NaN sorts above everything else and -0.0 sorts below 0.0, as they do for compare.
+     *
+     * @param a first number
+     * @param b second number
+     * @return negative, zero or positive as a is less than, equal to or greater than b
+     */
+    public static int compareNumbers(double a, double b) {
+        if (a < b) return -1;
+        if (a > b) return 1;
+        boolean aNaN = Double.isNaN(a), bNaN = Double.isNaN(b);
+        if (aNaN || bNaN) return aNaN == bNaN ? 0 : (aNaN ? 1 : -1);
+        if (a != 0) return 0;
+        // Zeros differ only in sign, which shows in their reciprocals
+        boolean aNegative = 1 / a < 0, bNegative = 1 / b < 0;
+        return aNegative == bNegative ? 0 : (aNegative ? -1 : 1);
+    }
+
     @JSTranslation(ignore = true)
     public static Field toDate(Field f) {
         return toDate(f, null);
@@ -217,21 +286,18 @@ public class Data {
     public static Field toDate(Field f, String method) {
         if (f.isDate()) return f;
         Date[] data = new Date[f.rowCount()];
-        boolean changed = false;
-        for (int i = 0; i < data.length; i++) {
-            Object o = f.value(i);
-            if ("year".equals(method)) {
-                // Must be numeric and is equal to years
-                Double v = asNumeric(o);
-                if (v != null) data[i] = asDate(Data.format(v, false) + "-01-01");
-            } else if ("excel".equals(method)) {
-                // Must be numeric and is equal to the number of days since 1900.
-                // We use the number of days since 1970, so we need to subtract the difference
-                Double v = asNumeric(o);
-                if (v != null) data[i] = asDate(v - 24107);
-            } else
-                data[i] = asDate(o);
-            if (!changed) changed = Data.compare(o, data[i]) != 0;
+        DictionaryColumnProvider dictionary = f.dictionaryProvider();
+        if (dictionary != null) {
+            // Convert each distinct value only once
+            Object[] values = dictionary.dictionary();
+            Date[] converted = new Date[values.length];
+            for (int i = 0; i < values.length; i++) converted[i] = convertToDate(values[i], method);
+            for (int i = 0; i < data.length; i++) {
+                int code = dictionary.code(i);
+                if (code >= 0) data[i] = converted[code];
+            }
+        } else {
+            for (int i = 0; i < data.length; i++) data[i] = convertToDate(f.value(i), method);
         }
         Field result = Fields.makeColumnField(f.name, f.label, data);
         result.set("date", true);
@@ -239,6 +305,20 @@ public class Data {
         return result;
     }
 
+    private static Date convertToDate(Object o, String method) {
+        if ("year".equals(method)) {
+            // Must be numeric and is equal to years
+            Double v = asNumeric(o);
+            return v == null ? null : asDate(Data.format(v, false) + "-01-01");
+        } else if ("excel".equals(method)) {
+            // Must be numeric and is equal to the number of days since 1900.
+            // We use the number of days since 1970, so we need to subtract the difference
+            Double v = asNumeric(o);
+            return v == null ? null : asDate(v - 24107);
+        } else
+            return asDate(o);
+    }
+
     // JavaScript date parsing uses LOCAL time zone for non ISO-8601 dates,
     // But UTC for ISO-6801 dates, so we need to undo that by detecting the ISO format 'T'
     @JSTranslation(js = {
@@ -255,9 +335,18 @@ public class Data {
     public static Field toNumeric(Field f) {
         if (f.isNumeric()) return f;
         Number[] data = new Number[f.rowCount()];
-        for (int i = 0; i < data.length; i++) {
-            Object o = f.value(i);
-            data[i] = asNumeric(o);
+        DictionaryColumnProvider dictionary = f.dictionaryProvider();
+        if (dictionary != null) {
+            // Convert each distinct value only once
+            Object[] values = dictionary.dictionary();
+            Number[] converted = new Number[values.length];
+            for (int i = 0; i < values.length; i++) converted[i] = asNumeric(values[i]);
+            for (int i = 0; i < data.length; i++) {
+                int code = dictionary.code(i);
+                if (code >= 0) data[i] = converted[code];
+            }
+        } else {
+            for (int i = 0; i < data.length; i++) data[i] = asNumeric(f.value(i));
         }
         Field result = Fields.makeColumnField(f.name, f.label, data);
         result.setNumeric();
@@ -382,8 +471,19 @@ public class Data {
     })
     public static Integer[] order(Object[] c, boolean ascending) {
         Integer[] o = new Integer[c.length];
-        for (int i = 0; i < o.length; i++) o[i] = i;
-        Arrays.sort(o, new IndexedCompare(c, ascending));
+        long[] keys = RowSorter.valueKeys(c);
+        if (keys == null) {
+            for (int i = 0; i < o.length; i++) o[i] = i;
+            Arrays.sort(o, new IndexedCompare(c, ascending));
+            return o;
+        }
+
+        // Numbers can be sorted by primitive keys
+        if (!ascending) RowSorter.reverse(keys);
+        int[] rows = new int[c.length];
+        for (int i = 0; i < rows.length; i++) rows[i] = i;
+        rows = RowSorter.sort(rows, new long[][]{keys});
+        for (int i = 0; i < o.length; i++) o[i] = rows[i];
         return o;
     }
 
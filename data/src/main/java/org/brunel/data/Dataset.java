@@ -32,11 +32,11 @@ import org.brunel.data.util.Informative;
 import org.brunel.data.util.ItemsList;
 import org.brunel.translator.JSTranslation;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -55,21 +55,25 @@ public class Dataset extends Informative implements Serializable {
     /*
    * Make a data set from raw fields; we will add a "#count" and "#row" field.
    * By default we will automatically convert fields to their best unit
+   * Synthetic fields already in the raw fields (as for data summarized elsewhere) are kept, not added
    */
     public static Dataset make(Field[] fields, Boolean autoConvert) {
         fields = ensureUniqueNames(fields);
-        Field[] augmented = new Field[fields.length + 3];
-        for (int i = 0; i < fields.length; i++)
-            augmented[i] = Boolean.FALSE.equals(autoConvert) ? fields[i] : Auto.convert(fields[i]);
+        List<Field> augmented = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (Field f : fields) {
+            augmented.add(Boolean.FALSE.equals(autoConvert) ? f : Auto.convert(f));
+            names.add(f.name);
+        }
         int len = fields.length == 0 ? 0 : fields[0].rowCount();
-        augmented[fields.length] = Fields.makeConstantField("#count", "Count", 1.0, len);
-        augmented[fields.length + 1] = Fields.makeIndexingField("#row", "Row", len);
+        if (!names.contains("#count")) augmented.add(Fields.makeConstantField("#count", "Count", 1.0, len));
+        if (!names.contains("#row")) augmented.add(Fields.makeIndexingField("#row", "Row", len));
 
         // The selection data
-        Field selection = Fields.makeConstantField("#selection", "Selection", "\u2717", len);
+        if (!names.contains("#selection"))
+            augmented.add(Fields.makeConstantField("#selection", "Selection", "\u2717", len));
 
-        augmented[fields.length + 2] = selection;
-        return new Dataset(augmented);
+        return new Dataset(augmented.toArray(new Field[augmented.size()]));
     }
 
     private static Field[] ensureUniqueNames(Field[] fields) {
@@ -103,10 +107,7 @@ public class Dataset extends Informative implements Serializable {
     }
 
     public Dataset retainRows(int[] keep) {
-        Field[] results = new Field[fields.length];
-        for (int i = 0; i < results.length; i++)
-            results[i] = Fields.permute(fields[i], keep, false);
-        return replaceFields(results);
+        return replaceFields(Fields.permuteAll(fields, keep, false));
     }
 
     /**
@@ -367,19 +368,12 @@ public class Dataset extends Informative implements Serializable {
 
     @JSTranslation(ignore = true)
     private void writeObject(ObjectOutputStream out) throws IOException {
-        out.write(Serialize.serializeDataset(this));
+        Serialize.writeDataset(this, Channels.newChannel(out));
     }
 
     @JSTranslation(ignore = true)
     private void readObject(ObjectInputStream in) throws IOException {
-        ByteArrayOutputStream store = new ByteArrayOutputStream();
-        byte[] block = new byte[10240];
-        for (; ; ) {
-            int len = in.read(block);
-            if (len < 0) break;
-            store.write(block, 0, len);
-        }
-        Dataset d = (Dataset) Serialize.deserialize(store.toByteArray());
+        Dataset d = Serialize.readDataset(Channels.newChannel(in), null);
         fields = d.fields;
         fieldByName = d.fieldByName;
         info = new HashMap<>();
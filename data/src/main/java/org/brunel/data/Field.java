@@ -24,7 +24,10 @@ import org.brunel.data.util.Informative;
 import org.brunel.data.util.ItemsList;
 import org.brunel.data.util.MapInt;
 import org.brunel.data.util.Range;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.data.values.NumericProvider;
 import org.brunel.data.values.Provider;
+import org.brunel.data.values.ReorderedProvider;
 
 public class Field extends Informative implements Comparable<Field> {
 
@@ -34,6 +37,7 @@ public class Field extends Informative implements Comparable<Field> {
     public final String label;                  // human-readable, not necessarily unique
     public final String name;                   // unique within the data set
     Provider provider;                          // Provides values for the field (not final as it may need conversion)
+    private Provider primitive;                 // Column copied from a reordered provider for primitive access
 
     private boolean calculatedNominal, calculatedNumeric, calculatedDate;   // True when we calculate these
     private MapInt categoryOrder;                                           // order of the categories
@@ -74,12 +78,21 @@ public class Field extends Informative implements Comparable<Field> {
     }
 
     public int compareRows(int a, int b) {
+        return provider.compareRows(a, b, comparisonOrder());
+    }
+
+    /**
+     * The order of categories used to compare rows
+     *
+     * @return the category order, or an empty map if the field is not compared as categories
+     */
+    public MapInt comparisonOrder() {
         if (categoryOrder == null) {
             // Build it no matter what so next call is faster
             categoryOrder = new MapInt();
             if (preferCategorical())  categoryOrder.index(categories());
         }
-        return provider.compareRows(a, b, categoryOrder);
+        return categoryOrder;
     }
 
     public long expectedSize() {
@@ -214,6 +227,36 @@ public class Field extends Informative implements Comparable<Field> {
         return provider.value(index);
     }
 
+    /**
+     * Access to the values as dictionary codes, when the field stores them that way
+     *
+     * @return the dictionary provider, or null if values are not dictionary encoded
+     */
+    public DictionaryColumnProvider dictionaryProvider() {
+        Provider p = materialized();
+        return p instanceof DictionaryColumnProvider ? (DictionaryColumnProvider) p : null;
+    }
+
+    /**
+     * Primitive access to the values, when the field stores them that way
+     *
+     * @return the provider with primitive accessors, or null if values must be accessed as objects
+     */
+    public NumericProvider numericProvider() {
+        Provider p = materialized();
+        return p instanceof NumericProvider ? (NumericProvider) p : null;
+    }
+
+    /*
+     * Reordered numbers and codes are copied into their own column when primitive access is first wanted.
+     * The copy is kept apart from the provider, so the field never changes under other readers
+     */
+    private synchronized Provider materialized() {
+        if (!(provider instanceof ReorderedProvider)) return provider;
+        if (primitive == null) primitive = ((ReorderedProvider) provider).materialize();
+        return primitive;
+    }
+
     public String valueFormatted(int index) {
         return format(provider.value(index));
     }
@@ -18,8 +18,10 @@ package org.brunel.data;
 
 import org.brunel.data.values.ColumnProvider;
 import org.brunel.data.values.ConstantProvider;
+import org.brunel.data.values.Provider;
 import org.brunel.data.values.ReorderedProvider;
 import org.brunel.data.values.RowProvider;
+import org.brunel.data.values.RowSelection;
 
 /**
  * Utilities for manipulating fields
@@ -64,7 +66,7 @@ public class Fields {
      * @return constructed field
      */
     public static Field makeColumnField(String name, String label, Object[] data) {
-        return new Field(name, label, new ColumnProvider(data));
+        return new Field(name, label, ColumnProvider.make(data));
     }
 
     /**
@@ -76,14 +78,34 @@ public class Fields {
      * @return constructed field
      */
     public static Field permute(Field field, int[] order, boolean onlyOrderChanged) {
+        return reorder(field, RowSelection.make(order), onlyOrderChanged);
+    }
+
+    /**
+     * Create new fields that index into the original fields, all sharing the same order
+     *
+     * @param fields           fields to permute
+     * @param order            the new order
+     * @param onlyOrderChanged true if this is a true permutation (no duplicates or any left out)
+     * @return constructed fields
+     */
+    public static Field[] permuteAll(Field[] fields, int[] order, boolean onlyOrderChanged) {
+        RowSelection rows = RowSelection.make(order);
+        Field[] results = new Field[fields.length];
+        for (int i = 0; i < fields.length; i++) results[i] = reorder(fields[i], rows, onlyOrderChanged);
+        return results;
+    }
+
+    private static Field reorder(Field field, RowSelection rows, boolean onlyOrderChanged) {
         if (field.provider instanceof ConstantProvider) {
             // No ned for hard work here -- a permuted constant is still a constant
             if (onlyOrderChanged) return field;
-            else return makeConstantField(field.name, field.label, field.value(0), order.length);
+            else return makeConstantField(field.name, field.label, field.value(0), rows.count());
         }
-        if (onlyOrderChanged)
-            return new Field(field.name, field.label, new ReorderedProvider(field.provider, order), field);
-        Field f = new Field(field.name, field.label, new ReorderedProvider(field.provider, order));
+        // Values are not copied until they are used as primitives
+        Provider provider = ReorderedProvider.make(field.provider, rows);
+        if (onlyOrderChanged) return new Field(field.name, field.label, provider, field);
+        Field f = new Field(field.name, field.label, provider);
         copyBaseProperties(field, f);
         return f;
     }
@@ -20,7 +20,9 @@ import org.brunel.data.Data;
 import org.brunel.data.Field;
 import org.brunel.data.util.ItemsList;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Contains a number of static methods for automatic processing.
@@ -103,34 +105,33 @@ public class Auto {
 
 
         // Try conversion to a lists
-        Field asList = Data.toList(base);
-        if (goodLists(asList)) return asList;
-
-        int N = base.valid();
+        if (mayBeList(base)) {
+            Field asList = Data.toList(base);
+            if (goodLists(asList)) return asList;
+        }
 
-        // Create a random order
+        // Sample valid values in a random order, shuffling only as far as needed
         int[] order = new int[base.rowCount()];
         for (int i = 0; i < order.length; i++) order[i] = i;
-        for (int i = 0; i < order.length; i++) {
-            int j = (int) Math.floor(Math.random() * (order.length - i));
+        List<Object> sample = new ArrayList<>();
+        for (int i = 0; i < order.length && sample.size() < 50; i++) {
+            int j = i + (int) Math.floor(Math.random() * (order.length - i));
             int t = order[i];
             order[i] = order[j];
             order[j] = t;
+            Object o = base.value(order[i]);
+            if (o != null) sample.add(o);
         }
+        int n = sample.size();
 
         // Try conversion to numeric
         Field asNumeric;
         if (base.isNumeric()) {
             asNumeric = base;
         } else {
-            int n = 0, i = 0;
             int nNumeric = 0;
-            while (n < N && n < 50) {
-                Object o = base.value(order[i++]);
-                if (o == null) continue;
-                n++;
+            for (Object o : sample)
                 if (!(o instanceof Date) && Data.asNumeric(o) != null) nNumeric++;
-            }
             asNumeric = nNumeric > FRACTION_TO_CONVERT * n ? Data.toNumeric(base) : null;
         }
 
@@ -142,14 +143,9 @@ public class Auto {
         }
 
         // Try conversion to dates
-        int n = 0, i = 0;
         int nDate = 0;
-        while (n < N && n < 50) {
-            Object o = base.value(order[i++]);
-            if (o == null) continue;
-            n++;
+        for (Object o : sample)
             if (Data.asDate(o) != null) nDate++;
-        }
 
         if (nDate > FRACTION_TO_CONVERT * n)
             return Data.toDate(base);
@@ -157,6 +153,16 @@ public class Auto {
         return base;
     }
 
+    // Lists need a separator in some value, or a blank value (an empty list); otherwise all lists have one item
+    private static boolean mayBeList(Field f) {
+        for (Object o : f.categories()) {
+            String s = o.toString();
+            if (s.indexOf(',') >= 0 || s.indexOf(';') >= 0 || s.indexOf('|') >= 0 || s.trim().length() == 0)
+                return true;
+        }
+        return false;
+    }
+
     private static boolean goodLists(Field f) {
         int nValid = f.valid();
         if (nValid < 3) return false;                                   // Too few to autoconvert
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.diagram;
+
+import org.brunel.data.Field;
+import org.brunel.data.values.DictionaryColumnProvider;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Weighted links between nodes, numbered 0 ... N-1, stored in compressed sparse row (CSR) form.
+ * The links from node n are start(n) ... end(n)-1, ordered by target; links between the same pair of nodes are
+ * combined, adding their weights and keeping the last data row they came from.
+ * Memory is proportional to the number of distinct links, not N*N, and a dense matrix need only be made for
+ * the subset of nodes that will be drawn.
+ */
+public class Adjacency {
+
+    /**
+     * Build the adjacency from a list of links
+     *
+     * @param nodeCount number of nodes
+     * @param from      source node for each link
+     * @param to        target node for each link
+     * @param weight    weight for each link
+     * @param row       data row for each link
+     * @param count     number of links to use from the arrays
+     * @return the combined links
+     */
+    public static Adjacency make(int nodeCount, int[] from, int[] to, double[] weight, int[] row, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+
+        // Order links by target, then (stably) by source, so each node's links are sorted by target
+        int[] starts = new int[nodeCount + 1];
+        order = bucketSort(order, to, new int[nodeCount + 1]);
+        order = bucketSort(order, from, starts);
+
+        int[] offsets = new int[nodeCount + 1];
+        int[] targets = new int[count];
+        double[] weights = new double[count];
+        int[] rows = new int[count];
+        int n = 0;
+        for (int s = 0; s < nodeCount; s++) {
+            offsets[s] = n;
+            for (int j = starts[s]; j < starts[s + 1]; j++) {
+                int i = order[j];
+                if (n > offsets[s] && targets[n - 1] == to[i]) {
+                    // Same pair as the previous link; links for a pair are in the order given
+                    weights[n - 1] += weight[i];
+                    rows[n - 1] = row[i];
+                } else {
+                    targets[n] = to[i];
+                    weights[n] = weight[i];
+                    rows[n] = row[i];
+                    n++;
+                }
+            }
+        }
+        offsets[nodeCount] = n;
+        return new Adjacency(offsets, targets, weights, rows);
+    }
+
+    /**
+     * Find the node for each row of a field
+     *
+     * @param field the field
+     * @param nodes node index for each value
+     * @return the node for each row, or -1 if the value is missing or not a node
+     */
+    public static int[] nodesForRows(Field field, Map<Object, Integer> nodes) {
+        int n = field.rowCount();
+        int[] result = new int[n];
+        DictionaryColumnProvider dictionary = field.dictionaryProvider();
+        if (dictionary != null) {
+            // Look up each distinct value once
+            Object[] values = dictionary.dictionary();
+            int[] byCode = new int[values.length];
+            for (int c = 0; c < byCode.length; c++) byCode[c] = nodeFor(values[c], nodes);
+            for (int i = 0; i < n; i++) {
+                int code = dictionary.code(i);
+                result[i] = code < 0 ? -1 : byCode[code];
+            }
+        } else {
+            for (int i = 0; i < n; i++) result[i] = nodeFor(field.value(i), nodes);
+        }
+        return result;
+    }
+
+    private static int nodeFor(Object value, Map<Object, Integer> nodes) {
+        Integer node = value == null ? null : nodes.get(value);
+        return node == null ? -1 : node;
+    }
+
+    // A stable counting sort of the order by the key, which must lie in 0 ... starts.length-2
+    // starts is filled in with where each key starts in the result
+    private static int[] bucketSort(int[] order, int[] key, int[] starts) {
+        int nodeCount = starts.length - 1;
+        for (int i : order) starts[key[i] + 1]++;
+        for (int k = 0; k < nodeCount; k++) starts[k + 1] += starts[k];
+        int[] next = new int[nodeCount];
+        for (int k = 0; k < nodeCount; k++) next[k] = starts[k];
+        int[] result = new int[order.length];
+        for (int i : order) result[next[key[i]]++] = i;
+        return result;
+    }
+
+    private final int[] offsets;                            // Links for node n are offsets[n] ... offsets[n+1]-1
+    private final int[] targets;                            // Target node for each link
+    private final double[] weights;                         // Combined weight for each link
+    private final int[] rows;                               // Last data row for each link
+
+    private Adjacency(int[] offsets, int[] targets, double[] weights, int[] rows) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.rows = rows;
+    }
+
+    public int nodeCount() {
+        return offsets.length - 1;
+    }
+
+    public int linkCount() {
+        return offsets[offsets.length - 1];
+    }
+
+    public int start(int node) {
+        return offsets[node];
+    }
+
+    public int end(int node) {
+        return offsets[node + 1];
+    }
+
+    public int target(int link) {
+        return targets[link];
+    }
+
+    public double weight(int link) {
+        return weights[link];
+    }
+
+    public int row(int link) {
+        return rows[link];
+    }
+
+    /**
+     * Find the link between two nodes
+     *
+     * @param from source node
+     * @param to   target node
+     * @return the index of the link, or -1 if there is none
+     */
+    public int find(int from, int to) {
+        int p = offsets[from];
+        int q = offsets[from + 1] - 1;
+        while (p <= q) {
+            int t = (p + q) >> 1;
+            if (targets[t] < to) p = t + 1;
+            else if (targets[t] > to) q = t - 1;
+            else return t;
+        }
+        return -1;
+    }
+
+    /**
+     * The total weight of the links from a node
+     *
+     * @param node the node
+     * @return sum of its link weights
+     */
+    public double nodeWeight(int node) {
+        double sum = 0;
+        for (int k = offsets[node]; k < offsets[node + 1]; k++) sum += weights[k];
+        return sum;
+    }
+
+    /**
+     * The nodes with the largest total link weights
+     *
+     * @param count the most nodes to return
+     * @return node indices in ascending order; if weights tie, lower numbered nodes are preferred
+     */
+    public int[] heaviestNodes(int count) {
+        int n = nodeCount();
+        if (count >= n) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            return all;
+        }
+        if (count <= 0) return new int[0];
+
+        double[] nodeWeights = new double[n];
+        double[] sorted = new double[n];
+        for (int i = 0; i < n; i++) sorted[i] = nodeWeights[i] = nodeWeight(i);
+        Arrays.sort(sorted);
+        double threshold = sorted[n - count];               // The smallest weight we keep
+
+        // Keep everything heavier than the threshold, then fill up with nodes at the threshold
+        int above = 0;
+        for (int i = 0; i < n; i++) if (nodeWeights[i] > threshold) above++;
+        int atThreshold = count - above;
+        int[] result = new int[count];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (nodeWeights[i] > threshold) result[k++] = i;
+            else if (nodeWeights[i] == threshold && atThreshold > 0) {
+                result[k++] = i;
+                atThreshold--;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keep only some nodes, and the links between them
+     *
+     * @param nodes nodes to keep, in ascending order; they are renumbered 0, 1, ... in that order
+     * @return the adjacency for those nodes
+     */
+    public Adjacency restrict(int[] nodes) {
+        int[] newIndex = new int[nodeCount()];
+        for (int i = 0; i < newIndex.length; i++) newIndex[i] = -1;
+        for (int i = 0; i < nodes.length; i++) newIndex[nodes[i]] = i;
+
+        int count = 0;
+        for (int node : nodes)
+            for (int k = offsets[node]; k < offsets[node + 1]; k++)
+                if (newIndex[targets[k]] >= 0) count++;
+
+        int[] o = new int[nodes.length + 1];
+        int[] t = new int[count];
+        double[] w = new double[count];
+        int[] r = new int[count];
+        int n = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            o[i] = n;
+            for (int k = offsets[nodes[i]]; k < offsets[nodes[i] + 1]; k++) {
+                int target = newIndex[targets[k]];
+                if (target < 0) continue;
+                t[n] = target;
+                w[n] = weights[k];
+                r[n] = rows[k];
+                n++;
+            }
+        }
+        o[nodes.length] = n;
+        return new Adjacency(o, t, w, r);
+    }
+
+    /**
+     * A dense matrix of the link weights, as D3 layouts use. This takes N*N space, so should only be made
+     * for as many nodes as can be drawn
+     *
+     * @return matrix with [from][to] holding the weight of that link, zero if there is none
+     */
+    public double[][] matrix() {
+        int n = nodeCount();
+        double[][] result = new double[n][n];
+        for (int i = 0; i < n; i++)
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) result[i][targets[k]] = weights[k];
+        return result;
+    }
+}
@@ -21,9 +21,14 @@ import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.util.MapInt;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * A chord diagram shows sized links between two categorical fields.
- * This class takes the data in standard format and converts it into a form that D3 can use
+ * This class takes the data in standard format and converts it into a form that D3 can use.
+ * The links are held sparsely; the dense matrix D3 needs is only made when asked for, and can be
+ * limited to the heaviest groups using prune.
  */
 public class Chord {
 
@@ -31,9 +36,9 @@ public class Chord {
         return new Chord(data, fieldA, fieldB, fieldSize);
     }
 
-    private final double[][] mtx;
-    private final int[][] idx;
-    private final Object[] names;
+    private Adjacency sizes;                                // Symmetric link sizes between groups
+    private Object[] names;                                 // Group names
+    private double[][] mtx;                                 // Dense matrix, made when needed
 
     public Chord(Dataset data, String fieldA, String fieldB, String fieldSize) {
         Field a = data.field(fieldA);
@@ -45,41 +50,78 @@ public class Chord {
                 .index(a.categories())
                 .index(b.categories());
 
-        int N = indices.size();
-
         // Build names list
         names = indices.getIndexedKeys();
-
-        // Build matrix and index reference
-        mtx = new double[N][N];
-        idx = new int[N][N];
-
-        // Fill matrices and indices with values
-        for (int i = 0; i < a.rowCount(); i++) {
-            Double size = s == null ? 1 : Data.asNumeric(s.value(i));
-            if (size > 0) {
-                Integer i1 = indices.get(a.value(i));
-                Integer i2 = indices.get(b.value(i));
-                mtx[i1][i2] += size;
-                mtx[i2][i1] += size;
-                idx[i1][i2] = i;
-                idx[i2][i1] = i;
+        Map<Object, Integer> groups = new HashMap<>();
+        for (int i = 0; i < names.length; i++) groups.put(names[i], i);
+
+        // Each valid row links its two groups in both directions
+        int n = a.rowCount();
+        int[] ia = Adjacency.nodesForRows(a, groups);
+        int[] ib = Adjacency.nodesForRows(b, groups);
+        int[] from = new int[2 * n];
+        int[] to = new int[2 * n];
+        double[] weight = new double[2 * n];
+        int[] row = new int[2 * n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (ia[i] < 0 || ib[i] < 0) continue;
+            double size = 1;
+            if (s != null) {
+                // Checked before unboxing, as missing sizes are null
+                Double v = Data.asNumeric(s.value(i));
+                if (v == null || !(v > 0)) continue;
+                size = v;
             }
+            from[count] = ia[i];
+            to[count] = ib[i];
+            weight[count] = size;
+            row[count++] = i;
+            from[count] = ib[i];
+            to[count] = ia[i];
+            weight[count] = size;
+            row[count++] = i;
         }
+        sizes = Adjacency.make(names.length, from, to, weight, row, count);
+    }
+
+    /**
+     * Keep only the groups with the largest total link sizes, and the links between them
+     *
+     * @param maxGroups the most groups to keep
+     * @return this, for chaining
+     */
+    public Chord prune(int maxGroups) {
+        if (names.length <= maxGroups) return this;
+        int[] keep = sizes.heaviestNodes(maxGroups);
+        Object[] kept = new Object[keep.length];
+        for (int i = 0; i < keep.length; i++) kept[i] = names[keep[i]];
+        names = kept;
+        sizes = sizes.restrict(keep);
+        mtx = null;
+        return this;
     }
 
     public Object group(int i) {
         return names[i];
     }
 
+    public int groupCount() {
+        return names.length;
+    }
+
     public int index(int from, int to) {
-        return idx[from][to];
+        int link = sizes.find(from, to);
+        return link < 0 ? 0 : sizes.row(link);
+    }
+
+    public Adjacency adjacency() {
+        return sizes;
     }
 
     public double[][] matrix() {
+        if (mtx == null) mtx = sizes.matrix();
         return mtx;
     }
 
 }
-
-
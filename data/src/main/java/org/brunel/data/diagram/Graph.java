@@ -26,12 +26,17 @@ import java.util.Map;
 
 /**
  * A graph layout coordinates graphs and links
- * This class takes the data in standard format and converts it into a form that D3 can use
+ * This class takes the data in standard format and converts it into a form that D3 can use.
+ * Nodes are numbered by their position in the nodes array, and links refer to them by number until the
+ * Node and Edge objects are made, so large graphs can be pruned to the best connected nodes.
  */
 public class Graph {
 
-    public final Node[] nodes;
-    public final Edge[] links;
+    public Node[] nodes;
+    public Edge[] links;
+
+    private int[] sources, targets;                         // Node numbers for the ends of each link
+    private Adjacency adj;                                  // Link counts between nodes, made when needed
 
     public static Graph make(Dataset nodeData, String nodeID, Dataset edgeData, String fromField, String toField) {
         Field nodes = nodeData.field(nodeID);
@@ -43,31 +48,95 @@ public class Graph {
     public Graph(Field nd, Field a, Field b) {
 
         // Create the nodes
-        Map<Object, Node> nodeByID = new HashMap<>();
+        Map<Object, Integer> nodeByID = new HashMap<>();
         List<Node> nds = new ArrayList<>();
         for (int i = 0; i < nd.rowCount(); i++) {
             Object o = nd.value(i);
             if (o != null) {
                 Node n = new Node(i, 1, o.toString(), null);
                 n.key = o;
+                nodeByID.put(o, nds.size());
                 nds.add(n);
-                nodeByID.put(o, n);
             }
         }
+        nodes = nds.toArray(new Node[nds.size()]);
 
         // Create the edges only when validly defined
-        List<Edge> lks = new ArrayList<>();
-        for (int i = 0; i < a.rowCount(); i++) {
-            Node s = nodeByID.get(a.value(i));
-            Node t = nodeByID.get(b.value(i));
-            if (s != null && t != null) lks.add(new Edge(s, t, i));
+        int[] ia = Adjacency.nodesForRows(a, nodeByID);
+        int[] ib = Adjacency.nodesForRows(b, nodeByID);
+        int count = 0;
+        for (int i = 0; i < ia.length; i++) if (ia[i] >= 0 && ib[i] >= 0) count++;
+        sources = new int[count];
+        targets = new int[count];
+        links = new Edge[count];
+        int k = 0;
+        for (int i = 0; i < ia.length; i++) {
+            if (ia[i] < 0 || ib[i] < 0) continue;
+            sources[k] = ia[i];
+            targets[k] = ib[i];
+            links[k++] = new Edge(nodes[ia[i]], nodes[ib[i]], i);
         }
+    }
 
-        // Convert to arrays
-        nodes = nds.toArray(new Node[nds.size()]);
-        links = lks.toArray(new Edge[lks.size()]);
+    /**
+     * The links between nodes, counted in both directions, so a node's weight is its degree
+     *
+     * @return the adjacency
+     */
+    public Adjacency adjacency() {
+        if (adj == null) {
+            int m = links.length;
+            int[] from = new int[2 * m];
+            int[] to = new int[2 * m];
+            double[] weight = new double[2 * m];
+            int[] row = new int[2 * m];
+            for (int i = 0; i < m; i++) {
+                from[2 * i] = to[2 * i + 1] = sources[i];
+                to[2 * i] = from[2 * i + 1] = targets[i];
+                weight[2 * i] = weight[2 * i + 1] = 1;
+                row[2 * i] = row[2 * i + 1] = links[i].row;
+            }
+            adj = Adjacency.make(nodes.length, from, to, weight, row, 2 * m);
+        }
+        return adj;
     }
 
-}
+    /**
+     * Keep only the nodes with the most links, and the links between them
+     *
+     * @param maxNodes the most nodes to keep
+     * @return this, for chaining
+     */
+    public Graph prune(int maxNodes) {
+        if (nodes.length <= maxNodes) return this;
+        int[] keep = adjacency().heaviestNodes(maxNodes);
+        int[] newIndex = new int[nodes.length];
+        for (int i = 0; i < newIndex.length; i++) newIndex[i] = -1;
+        Node[] keptNodes = new Node[keep.length];
+        for (int i = 0; i < keep.length; i++) {
+            newIndex[keep[i]] = i;
+            keptNodes[i] = nodes[keep[i]];
+        }
+
+        int count = 0;
+        for (int i = 0; i < links.length; i++) if (newIndex[sources[i]] >= 0 && newIndex[targets[i]] >= 0) count++;
+        int[] s = new int[count];
+        int[] t = new int[count];
+        Edge[] keptLinks = new Edge[count];
+        int k = 0;
+        for (int i = 0; i < links.length; i++) {
+            if (newIndex[sources[i]] < 0 || newIndex[targets[i]] < 0) continue;
+            s[k] = newIndex[sources[i]];
+            t[k] = newIndex[targets[i]];
+            keptLinks[k++] = links[i];
+        }
 
+        adj = adj.restrict(keep);
+        nodes = keptNodes;
+        links = keptLinks;
+        sources = s;
+        targets = t;
+        return this;
+    }
 
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.io;
+
+import org.brunel.translator.JSTranslation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scans a region of a buffer as arrays of bytes. Buffers backed by an array are scanned in place;
+ * others (such as memory-mapped files) are copied a piece at a time.
+ */
+@JSTranslation(ignore = true)
+abstract class ByteScanner {
+
+    static final int CHUNK = 1 << 16;                   // Bytes copied at a time
+
+    private int offset;                                 // Add to an array index to get the buffer index
+
+    /**
+     * Process bytes
+     *
+     * @param data  bytes to process
+     * @param start first index to process
+     * @param end   index after the last one to process
+     * @return false to stop scanning
+     */
+    abstract boolean scan(byte[] data, int start, int end);
+
+    /* The buffer index of an index in the array being scanned */
+    int position(int index) {
+        return index + offset;
+    }
+
+    /**
+     * Scan bytes of a buffer
+     *
+     * @param source buffer to read (its position and limit are not changed)
+     * @param from   first buffer index
+     * @param to     buffer index after the last one to scan
+     * @return false if scanning was stopped
+     */
+    boolean scanRegion(ByteBuffer source, int from, int to) {
+        if (source.hasArray()) {
+            offset = -source.arrayOffset();
+            return scan(source.array(), from - offset, to - offset);
+        }
+
+        ByteBuffer region = source.duplicate();
+        region.limit(to);
+        region.position(from);
+        byte[] piece = new byte[Math.min(CHUNK, to - from)];
+        for (int p = from; p < to; p += piece.length) {
+            int n = Math.min(piece.length, to - p);
+            region.get(piece, 0, n);
+            offset = p;
+            if (!scan(piece, 0, n)) return false;
+        }
+        return true;
+    }
+}
@@ -111,7 +111,7 @@ public class CSV {
 
     }
 
-    private static char findSeparator(String data) {
+    static char findSeparator(String data) {
         char[] potential = new char[]{',', '\t', '|', ';'};
         char best = ',';
         int score = -100000;
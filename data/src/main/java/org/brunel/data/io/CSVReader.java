@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.io;
+
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.brunel.data.util.ForkJoinPools;
+import org.brunel.data.util.Parallel;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.translator.JSTranslation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads CSV data from a stream, channel or buffer in a single pass, writing values straight into columns.
+ * The rules are the same as for CSV.read, but the text is never held as a whole: bytes are scanned for
+ * separators, quotes and line ends (all ASCII, so UTF-8 text can be scanned without decoding it), and each
+ * column keeps integer codes for its distinct values rather than one reference per row.
+ * <p>
+ * A large buffer read inside a fork-join pool is divided into chunks that are parsed at the same time.
+ * A line end is only a record boundary if it is outside quotes, which depends on the number of quotes
+ * before it. So a first pass counts the quotes in each chunk, noting the first line end that would be a
+ * boundary for either parity at the chunk start; the counts then resolve the actual parity for every
+ * chunk, and the second pass parses from those boundaries.
+ */
+@JSTranslation(ignore = true)
+public class CSVReader extends ByteScanner {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int SEPARATOR_SAMPLE = 5000;   // Bytes used to guess the separator
+    private static final int PARALLEL_MIN = 1 << 20;    // Smaller buffers are always read serially
+
+    /**
+     * Read CSV data from a stream; the stream is read to the end but not closed
+     *
+     * @param in source of data, encoded in UTF-8
+     * @return fields, named using the header row
+     * @throws IOException if reading fails
+     */
+    public static Field[] read(InputStream in) throws IOException {
+        return read(Channels.newChannel(in));
+    }
+
+    /**
+     * Read CSV data from a channel
+     *
+     * @param channel source of data, encoded in UTF-8
+     * @return fields, named using the header row
+     * @throws IOException if reading fails
+     */
+    public static Field[] read(ReadableByteChannel channel) throws IOException {
+        byte[] chunk = new byte[CHUNK];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+
+        // Fill the first chunk far enough to find the separator
+        while (buffer.position() < SEPARATOR_SAMPLE && channel.read(buffer) >= 0) ;
+        int length = buffer.position();
+        CSVReader reader = new CSVReader(chooseSeparator(ByteBuffer.wrap(chunk, 0, length)), null);
+
+        while (length > 0) {
+            if (!reader.scan(chunk, 0, length)) return reader.finish();
+            buffer.clear();
+            int read = 0;
+            while (read == 0) read = channel.read(buffer);
+            length = Math.max(read, 0);
+        }
+        reader.scanEnd();
+        return reader.finish();
+    }
+
+    /**
+     * Read CSV data from a buffer, such as a memory-mapped file.
+     * If called from within a fork-join pool, large buffers are parsed in parallel
+     *
+     * @param data source of data, encoded in UTF-8; read from its position to its limit
+     * @return fields, named using the header row
+     */
+    public static Field[] read(ByteBuffer data) {
+        ByteBuffer source = data.duplicate();
+        int start = source.position(), end = source.limit();
+        byte separator = chooseSeparator(source);
+
+        int chunks = end - start < PARALLEL_MIN ? 1 : Parallel.chunkCount(end - start);
+        if (chunks > 1) return readChunks(source, separator, chunks);
+
+        CSVReader reader = new CSVReader(separator, null);
+        if (reader.scanRegion(source, start, end)) reader.scanEnd();
+        return reader.finish();
+    }
+
+    /**
+     * Read CSV data from a buffer using a number of threads
+     *
+     * @param data        source of data, encoded in UTF-8; read from its position to its limit
+     * @param parallelism number of threads to use; 1 to read serially. The results are identical
+     * @return fields, named using the header row
+     */
+    public static Field[] read(final ByteBuffer data, int parallelism) {
+        if (parallelism <= 1) return read(data);
+        try {
+            return ForkJoinPools.get(parallelism).invoke(new RecursiveTask<Field[]>() {
+                protected Field[] compute() {
+                    return read(data);
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            // The pool may rethrow a copy wrapping the original; report the original message
+            throw e.getCause() instanceof IllegalArgumentException ? (IllegalArgumentException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Read a CSV file by mapping it into memory
+     *
+     * @param file file to read, encoded in UTF-8
+     * @return fields, named using the header row
+     * @throws IOException if reading fails
+     */
+    public static Field[] read(File file) throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(file, "r"); FileChannel channel = f.getChannel()) {
+            // Buffers are limited to 2GB; stream anything larger
+            if (channel.size() > Integer.MAX_VALUE) return read(channel);
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static byte chooseSeparator(ByteBuffer source) {
+        ByteBuffer sample = source.duplicate();
+        byte[] bytes = new byte[Math.min(SEPARATOR_SAMPLE, sample.remaining())];
+        sample.get(bytes);
+        return (byte) CSV.findSeparator(new String(bytes, UTF8));
+    }
+
+    private static Field[] readChunks(final ByteBuffer source, final byte separator, int chunkCount) {
+        final int start = source.position(), end = source.limit();
+
+        // First pass: count quotes and find candidate boundaries in each chunk
+        final int[] bounds = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++) bounds[i] = start + Parallel.chunkStart(i, chunkCount, end - start);
+        final QuoteCounter[] counters = new QuoteCounter[chunkCount];
+        Runnable[] tasks = new Runnable[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            final QuoteCounter counter = new QuoteCounter();
+            final int from = bounds[i], to = bounds[i + 1];
+            counters[i] = counter;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    counter.scanRegion(source, from, to);
+                }
+            };
+        }
+        Parallel.runAll(tasks);
+
+        // The header is the first line; if it does not end in the first chunk the data is too odd to divide
+        int headerEnd = counters[0].firstBreak[0];
+        final CSVReader head = new CSVReader(separator, null);
+        if (headerEnd < 0) {
+            if (head.scanRegion(source, start, end)) head.scanEnd();
+            return head.finish();
+        }
+        head.scanRegion(source, start, headerEnd + 1);
+        if (head.header == null) return head.finish();
+
+        // Resolve the quote parity at each chunk start, and so where each part of the data starts
+        List<Integer> starts = new ArrayList<>();
+        starts.add(headerEnd + 1);
+        int parity = counters[0].quotes & 1;
+        for (int i = 1; i < chunkCount; i++) {
+            int boundary = counters[i].firstBreak[parity];
+            if (boundary >= 0) starts.add(boundary + 1);
+            parity = (parity + counters[i].quotes) & 1;
+        }
+
+        // Second pass: parse each part
+        int parts = starts.size();
+        CSVReader[] readers = new CSVReader[parts];
+        tasks = new Runnable[parts];
+        for (int i = 0; i < parts; i++) {
+            final int from = starts.get(i);
+            final int to = i == parts - 1 ? end : starts.get(i + 1);
+            final CSVReader reader = new CSVReader(separator, head.header);
+            reader.last = source.get(from - 1);
+            readers[i] = reader;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    if (reader.scanRegion(source, from, to) && to == end) reader.scanEnd();
+                }
+            };
+        }
+        Parallel.runAll(tasks);
+
+        // Validate in order, stopping at any empty line, then join the parts' columns
+        final List<CSVReader> used = new ArrayList<>();
+        int linesBefore = head.lines;
+        for (CSVReader reader : readers) {
+            reader.lineOffset = linesBefore;
+            reader.check();
+            used.add(reader);
+            linesBefore += reader.lines;
+            if (reader.ended) break;
+        }
+
+        final Field[] fields = new Field[head.header.length];
+        tasks = new Runnable[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            final int column = i;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    ColumnBuilder builder = used.get(0).columns[column];
+                    for (int j = 1; j < used.size(); j++) builder.append(used.get(j).columns[column]);
+                    fields[column] = makeField(head.header[column], builder);
+                }
+            };
+        }
+        Parallel.runAll(tasks);
+        return fields;
+    }
+
+    private static Field makeField(String header, ColumnBuilder builder) {
+        String name = header == null ? "" : header;
+        return builder.make(CSV.identifier(name), CSV.readable(name));
+    }
+
+    private final byte separator;
+    private byte[] cell = new byte[64];                 // Bytes of the cell being read
+    private int cellLength;                             // Bytes used in 'cell'
+    private boolean cellIsNull = true;                  // True until something (even quotes) is in the cell
+    private boolean inQuote, wasQuoted, pendingQuote;   // Quote state; pending is a quote that may be doubled
+    private int last = ' ';                             // Previous byte
+    private final List<String> line = new ArrayList<>();// Cells of the current line
+    private String[] header;                            // Names from the first line
+    private ColumnBuilder[] columns;                    // Data for each column
+    private int lines;                                  // Lines completed
+    private int lineOffset;                             // Lines in the data before those read here
+    private boolean ended;                              // True if an empty line ended the data
+    private int badLine, badEntries;                    // The first line with the wrong number of entries
+
+    private CSVReader(byte separator, String[] header) {
+        this.separator = separator;
+        if (header != null) setHeader(header);
+    }
+
+    /*
+     * Process bytes; returns false if parsing stopped, at an empty line or a line of the wrong length
+     */
+    boolean scan(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            int c = data[i];
+            if (pendingQuote) {
+                pendingQuote = false;
+                if (c == '\"') {
+                    // A double quote is treated as a single quote
+                    append(c);
+                    continue;
+                }
+                inQuote = false;
+            }
+            if (inQuote) {
+                if (c == '\"')
+                    pendingQuote = true;
+                else
+                    append(c);
+            } else if (c == '\n' || c == '\r') {
+                // Ignore the second of a \n\r
+                if (last != '\r' || c != '\n') {
+                    // An empty line means the end of parsing
+                    if (line.isEmpty() && cellIsBlank()) {
+                        ended = true;
+                        return false;
+                    }
+                    endCell();
+                    if (!endLine()) return false;
+                }
+            } else if (c == '\"') {
+                inQuote = true;
+                wasQuoted = true;
+                cellIsNull = false;
+            } else if (c == separator) {
+                endCell();
+            } else {
+                append(c);
+            }
+            last = c;
+        }
+        return true;
+    }
+
+    /* The end of the data acts as a final line end */
+    private void scanEnd() {
+        if (pendingQuote) {
+            pendingQuote = false;
+            inQuote = false;
+        }
+        scan(new byte[]{'\n'}, 0, 1);
+    }
+
+    private void append(int c) {
+        if (cellLength == cell.length) {
+            byte[] bigger = new byte[cell.length * 2];
+            System.arraycopy(cell, 0, bigger, 0, cellLength);
+            cell = bigger;
+        }
+        cell[cellLength++] = (byte) c;
+        cellIsNull = false;
+    }
+
+    private boolean cellIsBlank() {
+        if (cellIsNull) return true;
+        for (int i = 0; i < cellLength; i++) if ((cell[i] & 0xff) > ' ') return false;
+        return true;
+    }
+
+    private void endCell() {
+        String value = null;
+        if (!cellIsNull) {
+            int start = 0, end = cellLength;
+            if (!wasQuoted) {
+                // Same as String.trim(); UTF-8 bytes at or below a space are those characters
+                while (start < end && (cell[start] & 0xff) <= ' ') start++;
+                while (end > start && (cell[end - 1] & 0xff) <= ' ') end--;
+            }
+            value = new String(cell, start, end - start, UTF8);
+        }
+        line.add(value);
+        cellLength = 0;
+        cellIsNull = true;
+        wasQuoted = false;
+    }
+
+    private boolean endLine() {
+        lines++;
+        if (header == null) {
+            setHeader(line.toArray(new String[line.size()]));
+        } else {
+            if (line.size() != header.length) {
+                badLine = lines;
+                badEntries = line.size();
+                return false;
+            }
+            for (int i = 0; i < header.length; i++) columns[i].add(line.get(i));
+        }
+        line.clear();
+        return true;
+    }
+
+    private void setHeader(String[] names) {
+        header = names;
+        columns = new ColumnBuilder[header.length];
+        for (int i = 0; i < header.length; i++) columns[i] = new ColumnBuilder();
+    }
+
+    private void check() {
+        if (badLine > 0)
+            throw new IllegalArgumentException("Line " + (lineOffset + badLine) + " had " + badEntries + " entries; expected "
+                    + header.length);
+    }
+
+    private Field[] finish() {
+        check();
+        if (header == null) throw new IllegalArgumentException("No data found");
+        Field[] fields = new Field[header.length];
+        for (int i = 0; i < fields.length; i++) fields[i] = makeField(header[i], columns[i]);
+        return fields;
+    }
+
+    /*
+     * Accumulates a column as codes for its distinct values, in the order they were first seen
+     */
+    private static final class ColumnBuilder {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int[] codes = new int[1024];
+        private int count, valid;
+
+        void add(String s) {
+            ensureCapacity(count + 1);
+            int code = -1;
+            if (s != null) {
+                code = codeFor(s);
+                valid++;
+            }
+            codes[count++] = code;
+        }
+
+        /* Add the rows of another builder after these */
+        void append(ColumnBuilder other) {
+            int[] remap = new int[other.values.size()];
+            for (int i = 0; i < remap.length; i++) remap[i] = codeFor(other.values.get(i));
+            ensureCapacity(count + other.count);
+            for (int i = 0; i < other.count; i++) {
+                int code = other.codes[i];
+                codes[count++] = code < 0 ? -1 : remap[code];
+            }
+            valid += other.valid;
+        }
+
+        private int codeFor(String s) {
+            Integer existing = index.get(s);
+            if (existing != null) return existing;
+            int code = values.size();
+            index.put(s, code);
+            values.add(s);
+            return code;
+        }
+
+        private void ensureCapacity(int size) {
+            if (size <= codes.length) return;
+            int[] bigger = new int[Math.max(size, codes.length * 2)];
+            System.arraycopy(codes, 0, bigger, 0, count);
+            codes = bigger;
+        }
+
+        Field make(String name, String label) {
+            Object[] distinct = values.toArray(new Object[values.size()]);
+
+            // Use the dictionary only when values repeat, as ColumnProvider.make does
+            if (valid > 0 && distinct.length * 2 <= valid)
+                return new Field(name, label, DictionaryColumnProvider.fromCodes(distinct, codes, count));
+
+            Object[] column = new Object[count];
+            for (int i = 0; i < count; i++) column[i] = codes[i] < 0 ? null : distinct[codes[i]];
+            return Fields.makeColumnField(name, label, column);
+        }
+    }
+
+    /*
+     * Counts quotes in a chunk, and finds the first line end outside quotes for each parity at the chunk start
+     */
+    private static final class QuoteCounter extends ByteScanner {
+        int quotes;
+        final int[] firstBreak = new int[]{-1, -1};     // Indexed by the quote parity at the chunk start
+
+        boolean scan(byte[] data, int start, int end) {
+            for (int i = start; i < end; i++) {
+                byte c = data[i];
+                if (c == '\"') {
+                    quotes++;
+                } else if ((c == '\n' || c == '\r') && firstBreak[quotes & 1] < 0) {
+                    firstBreak[quotes & 1] = position(i);
+                }
+            }
+            return true;
+        }
+    }
+}
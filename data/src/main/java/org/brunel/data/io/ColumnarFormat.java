@@ -0,0 +1,697 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.io;
+
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.data.values.DoubleColumnProvider;
+import org.brunel.data.values.LongDateColumnProvider;
+import org.brunel.data.values.MappedNumericProvider;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.data.values.Provider;
+import org.brunel.translator.JSTranslation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Version 2 of dataset serialization: a columnar format that is streamed through channels.
+ * All numbers are little-endian. The layout is:
+ *
+ * header   -- VERSION byte, version byte (2), magic int, field count int, row count int
+ * columns  -- for each field: type byte, flags byte, name, label, row count int, then the values in pages
+ * footer   -- for each field: name and long offset of its column from the start; then the long offset
+ * of the footer and the magic int
+ *
+ * Strings are an int byte count (-1 for null) and UTF-8 bytes. The values of a column are written as pages,
+ * each an int uncompressed size, an int compressed size and the deflated bytes; a zero size ends the column.
+ * Within the pages are the bits of the valid rows (if any are missing) and then the values: ints, doubles or
+ * millisecond longs, or for strings a dictionary followed by a 1, 2 or 4 byte code for each row (-1 for missing).
+ * Columns not wanted are skipped without being decompressed.
+ *
+ * Numeric columns may instead be stored (with the STORED flag): a long byte count and then the same contents,
+ * uncompressed, so they can be used in place from a memory-mapped file.
+ */
+@JSTranslation(ignore = true)
+class ColumnarFormat {
+
+    static final int MAGIC = 0x4c4e5242;                // "BRNL" in little-endian order
+    private static final int PAGE_SIZE = 1 << 16;       // Uncompressed bytes in a full page
+    private static final int TRAILER_SIZE = 12;         // Footer offset and magic number
+
+    private static final byte INTEGERS = 1;
+    private static final byte NUMBERS = 2;
+    private static final byte DATES = 3;
+    private static final byte STRINGS = 4;
+
+    private static final byte HAS_MISSING = 1;          // Flag set when the valid bits are written
+    private static final byte STORED = 2;               // Flag set when the values are not paged
+
+    private static final Charset ENCODING = Charset.forName("utf-8");
+
+    /**
+     * Write a dataset
+     *
+     * @param data      data to write; special fields are not written, as they are recreated on reading
+     * @param channel   target for the bytes
+     * @param mappable  if true, numeric columns are stored uncompressed so they can be mapped
+     * @throws IOException if the channel fails
+     */
+    static void write(Dataset data, WritableByteChannel channel, boolean mappable) throws IOException {
+        data = data.removeSpecialFields();
+        Output out = new Output(channel);
+        try {
+            out.putByte(Serialize.VERSION);
+            out.putByte(Serialize.DATASET_VERSION_NUMBER);
+            out.putInt(MAGIC);
+            out.putInt(data.fields.length);
+            out.putInt(data.rowCount());
+
+            long[] offsets = new long[data.fields.length];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = out.position();
+                writeColumn(data.fields[i], out, mappable);
+            }
+
+            long footer = out.position();
+            for (int i = 0; i < offsets.length; i++) {
+                out.putString(data.fields[i].name);
+                out.putLong(offsets[i]);
+            }
+            out.putLong(footer);
+            out.putInt(MAGIC);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read a dataset from a stream. Data in version 1 format is also accepted
+     *
+     * @param channel source of the bytes, positioned at the start of the data
+     * @param names   the fields to read, or null to read all of them
+     * @return the data read
+     * @throws IOException if the channel fails or the data is not valid
+     */
+    static Dataset read(ReadableByteChannel channel, String[] names) throws IOException {
+        Input in = new Input(channel);
+        try {
+            int version = readVersion(in);
+            if (version != Serialize.DATASET_VERSION_NUMBER) {
+                // The older format is not columnar, so read it all and decode it in memory
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                bytes.write(Serialize.VERSION);
+                bytes.write(version);
+                in.readRemaining(bytes);
+                Dataset data = (Dataset) Serialize.deserialize(bytes.toByteArray());
+                if (names == null) return data;
+                return Dataset.make(select(data.removeSpecialFields().fields, names), false);
+            }
+
+            int fieldCount = readHeader(in);
+            Set<String> wanted = names == null ? null : new HashSet<>(Arrays.asList(names));
+            List<Field> fields = new ArrayList<>();
+            for (int i = 0; i < fieldCount; i++) {
+                Field field = readColumn(in, wanted, null);
+                if (field != null) fields.add(field);
+            }
+
+            // Read the footer to check all the data was written
+            for (int i = 0; i < fieldCount; i++) {
+                in.getString();
+                in.getLong();
+            }
+            in.getLong();
+            if (in.getInt() != MAGIC) throw new IOException("Dataset footer is not valid");
+            return Dataset.make(fields.toArray(new Field[fields.size()]), false);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read only some fields of a dataset, using the footer to go directly to their columns
+     *
+     * @param channel source of the bytes, positioned at the start of the data, which must end at the end of
+     *                the channel
+     * @param names   the fields to read
+     * @return the data read, with the fields in the order they were written
+     * @throws IOException if the channel fails or the data is not valid
+     */
+    static Dataset readColumns(SeekableByteChannel channel, String[] names) throws IOException {
+        Input in = new Input(channel);
+        try {
+            long start = channel.position();
+            if (readVersion(in) != Serialize.DATASET_VERSION_NUMBER)
+                throw new IOException("Columns can only be read from version " + Serialize.DATASET_VERSION_NUMBER);
+            int fieldCount = readHeader(in);
+
+            in.seek(channel, channel.size() - TRAILER_SIZE);
+            long footer = in.getLong();
+            if (in.getInt() != MAGIC) throw new IOException("Dataset footer is not valid");
+
+            in.seek(channel, start + footer);
+            Set<String> wanted = new HashSet<>(Arrays.asList(names));
+            List<Long> offsets = new ArrayList<>();
+            for (int i = 0; i < fieldCount; i++) {
+                String name = in.getString();
+                long offset = in.getLong();
+                if (wanted.contains(name)) offsets.add(offset);
+            }
+
+            Field[] fields = new Field[offsets.size()];
+            for (int i = 0; i < fields.length; i++) {
+                in.seek(channel, start + offsets.get(i));
+                fields[i] = readColumn(in, null, null);
+            }
+            return Dataset.make(fields, false);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a dataset from a file, mapping its stored columns into memory rather than reading them
+     *
+     * @param channel file holding the data, positioned at its start; the data must end at the end of the file.
+     *                It may be closed once this returns
+     * @return the data read
+     * @throws IOException if the file cannot be read or the data is not valid
+     */
+    static Dataset readMapped(FileChannel channel) throws IOException {
+        Input in = new Input(channel);
+        try {
+            long start = channel.position();
+            in.seek(channel, start);
+            if (readVersion(in) != Serialize.DATASET_VERSION_NUMBER)
+                throw new IOException("Only version " + Serialize.DATASET_VERSION_NUMBER + " data can be mapped");
+            int fieldCount = readHeader(in);
+
+            in.seek(channel, channel.size() - TRAILER_SIZE);
+            long footer = in.getLong();
+            if (in.getInt() != MAGIC) throw new IOException("Dataset footer is not valid");
+
+            in.seek(channel, start + footer);
+            long[] offsets = new long[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                in.getString();
+                offsets[i] = in.getLong();
+            }
+
+            Field[] fields = new Field[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                in.seek(channel, start + offsets[i]);
+                fields[i] = readColumn(in, null, channel);
+            }
+            return Dataset.make(fields, false);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int readVersion(Input in) throws IOException {
+        if (in.getByte() != Serialize.VERSION) throw new IOException("Data does not start with a version");
+        return in.getByte();
+    }
+
+    private static int readHeader(Input in) throws IOException {
+        if (in.getInt() != MAGIC) throw new IOException("Dataset header is not valid");
+        int fieldCount = in.getInt();
+        in.getInt();                                    // Row count; each column has its own
+        return fieldCount;
+    }
+
+    private static Field[] select(Field[] fields, String[] names) {
+        Set<String> wanted = new HashSet<>(Arrays.asList(names));
+        List<Field> result = new ArrayList<>();
+        for (Field f : fields) if (wanted.contains(f.name)) result.add(f);
+        return result.toArray(new Field[result.size()]);
+    }
+
+    private static void writeColumn(Field field, Output out, boolean mappable) throws IOException {
+        int n = field.rowCount();
+        NumericProvider numeric = field.numericProvider();
+
+        byte type;
+        if (field.isDate()) type = DATES;
+        else if (field.isNumeric()) type = isIntegral(field, numeric, n) ? INTEGERS : NUMBERS;
+        else type = STRINGS;
+
+        int[] validBits = type == STRINGS ? null : findValidBits(field, numeric, n);
+        boolean stored = mappable && type != STRINGS;
+        out.putByte(type);
+        out.putByte((validBits == null ? 0 : HAS_MISSING) | (stored ? STORED : 0));
+        out.putString(field.name);
+        out.putString(field.label);
+        out.putInt(n);
+
+        if (stored)
+            out.putLong((validBits == null ? 0 : 4L * validBits.length) + (long) n * valueSize(type));
+        else
+            out.startPages();
+        if (validBits != null) for (int bits : validBits) out.putInt(bits);
+        if (type == INTEGERS) {
+            for (int i = 0; i < n; i++) out.putInt((int) numericValue(field, numeric, i));
+        } else if (type == NUMBERS) {
+            for (int i = 0; i < n; i++) out.putDouble(numericValue(field, numeric, i));
+        } else if (type == DATES) {
+            for (int i = 0; i < n; i++) {
+                Date date = Data.asDate(field.value(i));
+                out.putLong(date == null ? 0 : date.getTime());
+            }
+        } else {
+            writeStrings(field, n, out);
+        }
+        if (!stored) out.endPages();
+    }
+
+    private static void writeStrings(Field field, int n, Output out) throws IOException {
+        // Use the dictionary if there is one, otherwise build one in the order values are found
+        Object[] values;
+        int[] codes = null;
+        DictionaryColumnProvider dictionary = field.dictionaryProvider();
+        if (dictionary != null) {
+            values = dictionary.dictionary();
+        } else {
+            codes = new int[n];
+            Map<Object, Integer> index = new HashMap<>();
+            List<Object> found = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                Object o = field.value(i);
+                Integer code = o == null ? Integer.valueOf(-1) : index.get(o);
+                if (code == null) {
+                    code = found.size();
+                    index.put(o, code);
+                    found.add(o);
+                }
+                codes[i] = code;
+            }
+            values = found.toArray();
+        }
+
+        out.putInt(values.length);
+        for (Object o : values) out.putString(o.toString());
+        int size = codeSize(values.length);
+        for (int i = 0; i < n; i++) {
+            int code = codes == null ? dictionary.code(i) : codes[i];
+            if (size == 1) out.putByte(code);
+            else if (size == 2) out.putShort(code);
+            else out.putInt(code);
+        }
+    }
+
+    /*
+     * Read a column, or skip it and return null if it is not one of those wanted (null means all).
+     * If a file is given, the values of stored columns are mapped from it instead of being read
+     */
+    private static Field readColumn(Input in, Set<String> wanted, FileChannel mapFrom) throws IOException {
+        byte type = in.getByte();
+        byte flags = in.getByte();
+        String name = in.getString();
+        String label = in.getString();
+        int n = in.getInt();
+        boolean stored = (flags & STORED) != 0;
+        long length = stored ? in.getLong() : 0;
+
+        if (wanted != null && !wanted.contains(name)) {
+            if (stored) in.skip(length);
+            else in.skipPages();
+            return null;
+        }
+
+        if (!stored) in.startPages();
+        int[] validBits = new int[(n + 31) >> 5];
+        if ((flags & HAS_MISSING) != 0)
+            for (int i = 0; i < validBits.length; i++) validBits[i] = in.getInt();
+        else
+            Arrays.fill(validBits, -1);
+
+        Provider provider;
+        if (stored && mapFrom != null) {
+            ByteBuffer values = mapFrom.map(MapMode.READ_ONLY, in.position(), (long) n * valueSize(type))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (type == INTEGERS) provider = MappedNumericProvider.ints(values, n, validBits);
+            else if (type == NUMBERS) provider = MappedNumericProvider.doubles(values, n, validBits);
+            else provider = MappedNumericProvider.dates(values, n, validBits);
+        } else if (type == INTEGERS) {
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) values[i] = in.getInt();
+            provider = DoubleColumnProvider.fromValidBits(values, validBits);
+        } else if (type == NUMBERS) {
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) values[i] = in.getDouble();
+            provider = DoubleColumnProvider.fromValidBits(values, validBits);
+        } else if (type == DATES) {
+            long[] millis = new long[n];
+            for (int i = 0; i < n; i++) millis[i] = in.getLong();
+            provider = LongDateColumnProvider.fromValidBits(millis, validBits);
+        } else if (type == STRINGS) {
+            Object[] values = new Object[in.getInt()];
+            for (int i = 0; i < values.length; i++) values[i] = in.getString();
+            int size = codeSize(values.length);
+            int[] codes = new int[n];
+            for (int i = 0; i < n; i++)
+                codes[i] = size == 1 ? in.getByte() : (size == 2 ? in.getShort() : in.getInt());
+            provider = DictionaryColumnProvider.fromCodes(values, codes, n);
+        } else {
+            throw new IOException("Unknown column type " + type);
+        }
+        if (!stored) in.endPages();
+
+        Field field = new Field(name, label, provider);
+        if (type != STRINGS) field.setNumeric();
+        if (type == DATES) field.set("date", true);
+        return field;
+    }
+
+    private static int valueSize(byte type) {
+        return type == INTEGERS ? 4 : 8;
+    }
+
+    private static int codeSize(int count) {
+        return count < 128 ? 1 : (count < 32768 ? 2 : 4);
+    }
+
+    private static boolean isIntegral(Field field, NumericProvider numeric, int n) {
+        for (int i = 0; i < n; i++) {
+            double v = numericValue(field, numeric, i);
+            if (Double.isNaN(v) && isMissing(field, numeric, i)) continue;
+            if (v != (int) v || v == 0 && 1 / v < 0) return false;      // Negative zero needs a double
+        }
+        return true;
+    }
+
+    /* Null if no rows are missing */
+    private static int[] findValidBits(Field field, NumericProvider numeric, int n) {
+        int[] bits = new int[(n + 31) >> 5];
+        boolean missing = false;
+        for (int i = 0; i < n; i++) {
+            if (isMissing(field, numeric, i)) missing = true;
+            else bits[i >> 5] |= 1 << (i & 31);
+        }
+        return missing ? bits : null;
+    }
+
+    private static boolean isMissing(Field field, NumericProvider numeric, int i) {
+        return numeric == null ? Data.asNumeric(field.value(i)) == null : numeric.isMissing(i);
+    }
+
+    /* NaN if missing */
+    private static double numericValue(Field field, NumericProvider numeric, int i) {
+        if (numeric != null) return numeric.doubleValue(i);
+        Double v = Data.asNumeric(field.value(i));
+        return v == null ? Double.NaN : v;
+    }
+
+    /**
+     * Buffers bytes written to a channel. Between startPages and endPages the bytes are collected
+     * into pages, which are compressed as they fill.
+     */
+    private static final class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] compressed = new byte[PAGE_SIZE];
+        private boolean paging;                         // True when writing into pages
+        private long written;                           // Bytes passed to the channel
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return written + buffer.position();
+        }
+
+        void putByte(int v) throws IOException {
+            room(1).put((byte) v);
+        }
+
+        void putShort(int v) throws IOException {
+            room(2).putShort((short) v);
+        }
+
+        void putInt(int v) throws IOException {
+            room(4).putInt(v);
+        }
+
+        void putLong(long v) throws IOException {
+            room(8).putLong(v);
+        }
+
+        void putDouble(double v) throws IOException {
+            room(8).putDouble(v);
+        }
+
+        void putString(String s) throws IOException {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(ENCODING);
+            putInt(bytes.length);
+            for (int at = 0; at < bytes.length; ) {
+                ByteBuffer target = room(1);
+                int len = Math.min(target.remaining(), bytes.length - at);
+                target.put(bytes, at, len);
+                at += len;
+            }
+        }
+
+        void startPages() {
+            paging = true;
+        }
+
+        void endPages() throws IOException {
+            if (page.position() > 0) writePage();
+            paging = false;
+            putInt(0);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            written += buffer.remaining();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        void close() {
+            deflater.end();
+        }
+
+        /* The buffer to put the next n bytes into, with room made for them */
+        private ByteBuffer room(int n) throws IOException {
+            if (paging) {
+                if (page.remaining() < n) writePage();
+                return page;
+            }
+            if (buffer.remaining() < n) flush();
+            return buffer;
+        }
+
+        private void writePage() throws IOException {
+            int size = page.position();
+            deflater.reset();
+            deflater.setInput(page.array(), 0, size);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) compressed = Arrays.copyOf(compressed, length * 2);
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            page.clear();
+
+            paging = false;
+            putInt(size);
+            putInt(length);
+            for (int at = 0; at < length; ) {
+                int len = Math.min(room(1).remaining(), length - at);
+                buffer.put(compressed, at, len);
+                at += len;
+            }
+            paging = true;
+        }
+    }
+
+    /**
+     * Buffers bytes read from a channel. Between startPages and endPages the bytes are read from pages,
+     * which are decompressed as they are needed.
+     */
+    private static final class Input {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final byte[] pageBytes = new byte[PAGE_SIZE];
+        private final Inflater inflater = new Inflater();
+        private byte[] compressed = new byte[PAGE_SIZE];
+        private ByteBuffer page;                        // The current page, or null if not reading pages
+        private long bufferEnd;                         // Position in the channel of the end of the buffer
+
+        Input(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();                              // Starts empty
+        }
+
+        byte getByte() throws IOException {
+            return source(1).get();
+        }
+
+        short getShort() throws IOException {
+            return source(2).getShort();
+        }
+
+        int getInt() throws IOException {
+            return source(4).getInt();
+        }
+
+        long getLong() throws IOException {
+            return source(8).getLong();
+        }
+
+        double getDouble() throws IOException {
+            return source(8).getDouble();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0) return null;
+            byte[] bytes = new byte[length];
+            getBytes(bytes, 0, length);
+            return new String(bytes, ENCODING);
+        }
+
+        void startPages() {
+            page = ByteBuffer.allocate(0);
+        }
+
+        void endPages() throws IOException {
+            page = null;
+            if (getInt() != 0) throw new IOException("Column has more data than expected");
+        }
+
+        void skipPages() throws IOException {
+            for (int size = getInt(); size != 0; size = getInt()) skip(getInt());
+        }
+
+        /* Move to a position in the channel, discarding anything buffered */
+        void seek(SeekableByteChannel seekable, long position) throws IOException {
+            seekable.position(position);
+            bufferEnd = position;
+            buffer.clear();
+            buffer.flip();
+        }
+
+        /* Position in the channel of the next byte, when not reading pages (relative to the last seek) */
+        long position() {
+            return bufferEnd - buffer.remaining();
+        }
+
+        void readRemaining(ByteArrayOutputStream out) throws IOException {
+            do {
+                out.write(buffer.array(), buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+            } while (fill());
+        }
+
+        void close() {
+            inflater.end();
+        }
+
+        /* The buffer to get the next n bytes from, with them read into it */
+        private ByteBuffer source(int n) throws IOException {
+            if (page != null) {
+                if (page.remaining() < n) readPage();
+                return page;
+            }
+            while (buffer.remaining() < n)
+                if (!fill()) throw new EOFException("Unexpected end of data");
+            return buffer;
+        }
+
+        /* Read more bytes into the buffer, keeping those not yet used; false if there are no more */
+        private boolean fill() throws IOException {
+            buffer.compact();
+            int count = channel.read(buffer);
+            buffer.flip();
+            if (count > 0) bufferEnd += count;
+            return count > 0 || count == 0 && buffer.hasRemaining();
+        }
+
+        private void getBytes(byte[] target, int offset, int length) throws IOException {
+            for (int at = 0; at < length; ) {
+                ByteBuffer from = source(1);
+                int len = Math.min(from.remaining(), length - at);
+                from.get(target, offset + at, len);
+                at += len;
+            }
+        }
+
+        void skip(long length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining() && !fill()) throw new EOFException("Unexpected end of data");
+                int len = (int) Math.min(buffer.remaining(), length);
+                buffer.position(buffer.position() + len);
+                length -= len;
+            }
+        }
+
+        private void readPage() throws IOException {
+            ByteBuffer current = page;
+            page = null;                                // Read the page header and contents directly
+            int size = getInt();
+            if (size == 0) throw new IOException("Column has less data than expected");
+            int length = getInt();
+            if (compressed.length < length) compressed = new byte[length];
+            getBytes(compressed, 0, length);
+
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+            try {
+                int done = 0;
+                while (done < size && !inflater.finished()) done += inflater.inflate(pageBytes, done, size - done);
+                if (done != size) throw new IOException("Page is shorter than expected");
+            } catch (DataFormatException e) {
+                throw new IOException("Page is not valid", e);
+            }
+            if (current.hasRemaining()) throw new IOException("Value crosses a page boundary");
+            page = ByteBuffer.wrap(pageBytes, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -19,7 +19,14 @@ package org.brunel.data.io;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
+import org.brunel.translator.JSTranslation;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -27,7 +34,10 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * This class serializes data items
+ * This class serializes data items.
+ * The byte array methods use the version 1 format, which is shared with the Javascript library.
+ * The channel methods use the columnar version 2 format (see ColumnarFormat), which is faster and smaller,
+ * and can read a subset of the fields; they read both versions.
  */
 public class Serialize {
 
@@ -38,7 +48,8 @@ public class Serialize {
     public static final int DATE = 5;
     public static final int VERSION=6;
 
-    public static final int DATASET_VERSION_NUMBER = 1;   //Must be incremented if serialization is changed in an incompatible way
+    public static final int DATASET_VERSION_NUMBER = 2;   //Must be incremented if serialization is changed in an incompatible way
+    public static final int BASIC_VERSION_NUMBER = 1;     //The byte array format, readable by all versions
 
 
     /**
@@ -52,7 +63,7 @@ public class Serialize {
         ByteOutput s = new ByteOutput();
 
         //Add versioning
-        s.addByte(VERSION).addNumber(DATASET_VERSION_NUMBER);
+        s.addByte(VERSION).addNumber(BASIC_VERSION_NUMBER);
 
         // Basics, then each field
         s.addByte(DATA_SET).addNumber(data.fields.length);
@@ -107,11 +118,91 @@ public class Serialize {
         for (int i = 0; i < N; i++) s.addNumber(items.get(field.value(i)));
     }
 
+    /**
+     * Write a dataset in the columnar format
+     *
+     * @param data    the dataset to write
+     * @param channel where to write it; it is not closed
+     * @throws IOException if the channel fails
+     */
+    @JSTranslation(ignore = true)
+    public static void writeDataset(Dataset data, WritableByteChannel channel) throws IOException {
+        ColumnarFormat.write(data, channel, false);
+    }
+
+    /**
+     * Write a dataset in the columnar format, with numeric columns left uncompressed so that
+     * readMappedDataset can use them directly from the file
+     *
+     * @param data    the dataset to write
+     * @param channel where to write it; it is not closed
+     * @throws IOException if the channel fails
+     */
+    @JSTranslation(ignore = true)
+    public static void writeMappableDataset(Dataset data, WritableByteChannel channel) throws IOException {
+        ColumnarFormat.write(data, channel, true);
+    }
+
+    /**
+     * Read a dataset written in the columnar format from a file, mapping the numeric columns into memory.
+     * Mapped columns stay in the operating system's file cache rather than the Java heap
+     *
+     * @param channel the file, positioned at the start of the data, which ends at the end of the file.
+     *                It may be closed once this returns
+     * @return the dataset
+     * @throws IOException if the file cannot be read or the data is not valid
+     */
+    @JSTranslation(ignore = true)
+    public static Dataset readMappedDataset(FileChannel channel) throws IOException {
+        return ColumnarFormat.readMapped(channel);
+    }
+
+    /**
+     * Read a dataset written in either format
+     *
+     * @param channel where to read from; it is not closed
+     * @param names   the fields wanted, or null for all of them
+     * @return the dataset
+     * @throws IOException if the channel fails or the data is not valid
+     */
+    @JSTranslation(ignore = true)
+    public static Dataset readDataset(ReadableByteChannel channel, String[] names) throws IOException {
+        return ColumnarFormat.read(channel, names);
+    }
+
+    /**
+     * Read some fields of a dataset written in the columnar format, without reading the data for the others
+     *
+     * @param channel where to read from, positioned at the start of the data, which ends at the end of the
+     *                channel; it is not closed
+     * @param names   the fields wanted
+     * @return the dataset
+     * @throws IOException if the channel fails or the data is not valid
+     */
+    @JSTranslation(ignore = true)
+    public static Dataset readDatasetColumns(SeekableByteChannel channel, String[] names) throws IOException {
+        return ColumnarFormat.readColumns(channel, names);
+    }
+
+    @JSTranslation(js = {
+            "var d = new V.io_ByteInput(data);",
+            "return V.io_Serialize.readFromByteInput(d);"
+    })
     public static Object deserialize(byte[] data) {
+        if (data.length > 1 && data[0] == VERSION && data[1] == DATASET_VERSION_NUMBER) return readColumnar(data);
         ByteInput d = new ByteInput(data);
         return readFromByteInput(d);
     }
 
+    @JSTranslation(ignore = true)
+    private static Object readColumnar(byte[] data) {
+        try {
+            return ColumnarFormat.read(Channels.newChannel(new java.io.ByteArrayInputStream(data)), null);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read serialized data", e);
+        }
+    }
+
     private static Object readFromByteInput(ByteInput d)  {
         byte b = d.readByte();
         if (b == FIELD) {
@@ -155,7 +246,7 @@ public class Serialize {
         }
         else if (b == VERSION) {
         	int versionNum = d.readNumber().intValue();
-        	if (versionNum != DATASET_VERSION_NUMBER ) {
+        	if (versionNum != BASIC_VERSION_NUMBER ) {
         		throw new IllegalStateException("Serialized version differs from current execution version");
         	}
         	return readFromByteInput(d);
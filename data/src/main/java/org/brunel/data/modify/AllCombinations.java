@@ -16,30 +16,31 @@
 
 package org.brunel.data.modify;
 
-import org.brunel.data.Data;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
+import org.brunel.data.values.ExpandedProvider;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Expands out a set of data so it has all combinations of the X and group fields.
  * This ensures that stacking liens and areas works, as they require that each one have
  * the full range of data.
+ * The result is a view: each combination is numbered in mixed radix (the last key changing fastest), and the rows
+ * of the result are held as an array giving either a row of the original data or a combination with no data.
+ * Values are only looked up when they are asked for.
  */
 public class AllCombinations {
     private final Field[] fields;               // All fields, in the order X, groups, other
     private final int xCount;                   // The number of 'x' fields (to be sorted ascending)
     private final int keyLength;                // The first 'keyLength' fields are keys
     private final Object[][] categories;        // The field categories in the order we want to use them
-    private final int[] index;                  // multi-dimensional index into the categories
 
     public AllCombinations(Field[] fields, int xCount, int groupCount) {
         this.fields = fields;
         this.xCount = xCount;
         this.keyLength = xCount + groupCount;           // These are used for the keys
-        this.index = new int[keyLength];                // The index of the current row we are considering
         this.categories = makeFieldCategories();
     }
 
@@ -65,72 +66,65 @@ public class AllCombinations {
      */
     Field[] make() {
         // Create the order in which the real data will be encountered
-        Integer[] rowOrder = Stack.makeStackDataOrder(fields, keyLength, xCount);
-
-        int dataIndex = 0;                                              // Which row of real data to use
-        List<Object[]> rows = new ArrayList<>();                // The resulting rows we will use
+        int[] rowOrder = Stack.makeStackDataOrder(fields, keyLength, xCount);
+
+        // The step in the combination index for each key
+        int[] stride = new int[keyLength];
+        int combinationCount = 1;
+        for (int i = keyLength - 1; i >= 0; i--) {
+            stride[i] = combinationCount;
+            combinationCount *= categories[i].length;
+        }
 
-        while (true) {
-            Object[] row = makeKeyRow();                                // Only key values in this
-            boolean matched = false;                                    // Did we match to real data?
-            while (matchesCurrent(row, rowOrder, dataIndex)) {          // .. test to see if we match
-                matched = true;                                         // .. and remember if we did
-                rows.add(makeRealRow(rowOrder[dataIndex++]));           // add the real row to the results
+        // The combination for each real row, in order
+        int[] combination = makeCombinations(rowOrder, stride);
+
+        // Step through all combinations, matching them to real rows; a combination with no real rows gets
+        // a row of its own (encoded as -1 - combination). The first pass counts, the second fills in the rows
+        int[] source = null;
+        for (int pass = 0; pass < 2; pass++) {
+            int dataIndex = 0;                                          // Which row of real data to use
+            int at = 0;                                                 // Rows of the result
+            for (int c = 0; c < combinationCount; c++) {
+                boolean matched = false;                                // Did we match to real data?
+                while (dataIndex < rowOrder.length && combination[dataIndex] == c) {
+                    matched = true;
+                    if (source != null) source[at] = rowOrder[dataIndex];
+                    dataIndex++;
+                    at++;
+                }
+                if (!matched) {
+                    if (source != null) source[at] = -1 - c;            // A 'key only' row
+                    at++;
+                }
             }
-            if (!matched) rows.add(row);                                // If we didn't match, add the 'key only' row
-            if (!nextIndex()) break;                                    // Done when no more generated combinations
+            if (source == null) source = new int[at];
         }
 
-        // Convert list of data to real rows
         Field[] built = new Field[fields.length];
         for (int i = 0; i < fields.length; i++) {
-            built[i] = Fields.makeColumnField(fields[i].name, fields[i].label, extractColumn(rows, i));
+            ExpandedProvider provider = i < keyLength
+                    ? new ExpandedProvider(fields[i], source, categories[i], stride[i])
+                    : new ExpandedProvider(fields[i], source, null, 0);
+            built[i] = new Field(fields[i].name, fields[i].label, provider);
             Fields.copyBaseProperties(fields[i], built[i]);
         }
         return built;
     }
 
-    private Object[] extractColumn(List<Object[]> rows, int index) {
-        Object[] result = new Object[rows.size()];
-        for (int i = 0; i < result.length; i++) result[i] = rows.get(i)[index];
-        return result;
-    }
-
-    // Generate a row only having values for the keys
-    private Object[] makeKeyRow() {
-        Object[] row = new Object[fields.length];
-        // Step through all the key values and set those values. All non-key values will be missing
+    // The index of the combination of key values in each row, or -1 if a value is not one of the categories
+    private int[] makeCombinations(int[] rowOrder, int[] stride) {
+        int[] result = new int[rowOrder.length];
         for (int i = 0; i < keyLength; i++) {
-            // The column at j has its value set to the category of the corresponding field with the current index
-            row[i] = categories[i][index[i]];
-        }
-        return row;
-    }
-
-    // Copy data from columns into the row
-    private Object[] makeRealRow(int index) {
-        int n = fields.length;
-        Object[] row = new Object[n];
-        for (int i = 0; i < fields.length; i++)
-            row[i] = fields[i].value(index);
-        return row;
-    }
-
-    private boolean matchesCurrent(Object[] row, Integer[] dataRowOrder, int dataIndex) {
-        if (dataIndex >= dataRowOrder.length) return false;             // Past the end -- no match
-        int dataRow = dataRowOrder[dataIndex];
-        for (int i = 0; i < keyLength; i++)
-            if (Data.compare(row[i], fields[i].value(dataRow)) != 0) return false;
-        return true;
-    }
-
-    // Increment the index, returning false if we are done
-    private boolean nextIndex() {
-        for (int p = index.length - 1; p >= 0; p--) {
-            if (++index[p] < categories[p].length) return true; // Done if we can increment and not overflow
-            index[p] = 0;                                       // Reset this dimension and try the next dim
+            Map<Object, Integer> index = new HashMap<>();
+            for (int j = 0; j < categories[i].length; j++) index.put(categories[i][j], j);
+            for (int r = 0; r < rowOrder.length; r++) {
+                if (result[r] < 0) continue;
+                Integer j = index.get(fields[i].value(rowOrder[r]));
+                result[r] = j == null ? -1 : result[r] + j * stride[i];
+            }
         }
-        return false;                                           // Ran out of dimensions -- must be done
+        return result;
     }
 
 }
@@ -19,9 +19,13 @@ package org.brunel.data.modify;
 import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
+import org.brunel.data.util.Parallel;
+import org.brunel.data.util.Selection;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.translator.JSTranslation;
 
 import java.util.ArrayList;
-import java.util.List;
 
 /**
  * This transform takes data and removes rows based on filter commands
@@ -34,6 +38,8 @@ import java.util.List;
  */
 public class Filter extends DataOperation {
 
+    private static final int SMALL_RANK = 256;          // Ranks up to this use a heap rather than selection
+
     /*
      * Commands are one of the following:
      *
@@ -81,6 +87,11 @@ public class Filter extends DataOperation {
 
     /* Get the object that are at the indicated positions for the field, by rank */
     private static Object[] getRankedObjects(Field field, double p1, double p2) {
+        DictionaryColumnProvider dictionary = field.dictionaryProvider();
+        if (dictionary != null) return getRankedCodes(dictionary, p1, p2);
+        NumericProvider numeric = field.numericProvider();
+        if (numeric != null) return getRankedNumerics(field, numeric, p1, p2);
+
         ArrayList<Object> data = new ArrayList<>();
         int n = field.rowCount();
         for (int i = 0; i < n; i++) {
@@ -88,14 +99,63 @@ public class Filter extends DataOperation {
             if (o != null) data.add(o);
         }
         Object[] d = data.toArray(new Object[data.size()]);
-        Data.sort(d);
 
         int N = d.length;
+        if (N == 0) return new Object[]{null, null};
+        int a = N - Math.min(Math.max(1, (int) p1), N);
+        int b = N - Math.min(Math.max(1, (int) p2), N);
+        int lo = Math.min(a, b), hi = Math.max(a, b);
+        Selection.selectObjects(d, 0, N, lo);
+        Selection.selectObjects(d, lo, N, hi);
+        return new Object[]{d[b], d[a]};
+    }
+
+    /* The dictionary is sorted, so count each code and walk down from the top */
+    private static Object[] getRankedCodes(DictionaryColumnProvider dictionary, double p1, double p2) {
+        int[] counts = dictionary.codeCounts();
+        int N = 0;
+        for (int c : counts) N += c;
+        if (N == 0) return new Object[]{null, null};
         int a = Math.min(Math.max(1, (int) p1), N);
         int b = Math.min(Math.max(1, (int) p2), N);
-        Object high = d[N - a];
-        Object low = d[N - b];
-        return new Object[]{low, high};
+        Object[] values = dictionary.dictionary();
+        return new Object[]{values[codeAtRank(counts, b)], values[codeAtRank(counts, a)]};
+    }
+
+    private static int codeAtRank(int[] counts, int rank) {
+        int seen = 0;
+        for (int c = counts.length - 1; c > 0; c--) {
+            seen += counts[c];
+            if (seen >= rank) return c;
+        }
+        return 0;
+    }
+
+    /* Use a small heap when the ranks are near the top, otherwise select on a copy of the values */
+    private static Object[] getRankedNumerics(Field field, NumericProvider numeric, double p1, double p2) {
+        int N = numeric.validCount();
+        if (N == 0) return new Object[]{null, null};
+        int a = Math.min(Math.max(1, (int) p1), N);
+        int b = Math.min(Math.max(1, (int) p2), N);
+
+        int k = Math.max(a, b);
+        if (k <= SMALL_RANK) {
+            int[] top = Selection.largestRows(numeric, k);
+            return new Object[]{field.value(top[b - 1]), field.value(top[a - 1])};
+        }
+
+        double[] keys = new double[N];
+        int[] rows = new int[N];
+        int n = field.rowCount(), m = 0;
+        for (int i = 0; i < n; i++) {
+            if (numeric.isMissing(i)) continue;
+            keys[m] = numeric.doubleValue(i);
+            rows[m++] = i;
+        }
+        int lo = Math.min(N - a, N - b), hi = Math.max(N - a, N - b);
+        Selection.select(keys, rows, 0, N, lo);
+        Selection.select(keys, rows, lo, N, hi);
+        return new Object[]{field.value(rows[N - b]), field.value(rows[N - a])};
     }
 
     private static int getType(String s) {
@@ -120,41 +180,55 @@ public class Filter extends DataOperation {
     }
 
     private static int[] makeRowsToKeep(Field[] field, int[] type, Object[][] params) {
-        List<Integer> rows = new ArrayList<>();
-        int n = field[0].rowCount();
-        for (int row = 0; row < n; row++) {
-            boolean bad = false;
-            for (int i = 0; i < field.length; i++) {
-                Object v = field[i].value(row);
-                if (v == null) {
-                    // Missing values always fail the test, no matter what
-                    bad = true;
-                    break;
-                }
-
-                int t = type[i];
-                Object[] pars = params[i];
-
-                if (t == 2 || t == -2)
-                    bad = !matchAny(v, pars);
-                else if (t == 3 || t == -3)
-                    bad = Data.compare(v, pars[0]) < 0 || Data.compare(v, pars[1]) > 0;
-
-                if (t < 0) bad = !bad;
+        FilterCondition[] conditions = new FilterCondition[field.length];
+        for (int i = 0; i < field.length; i++) conditions[i] = new FilterCondition(field[i], type[i], params[i]);
 
-                if (bad) break;             // Known to be bad
-            }
-            if (!bad) rows.add(row);
+        // A bitmap of rows to keep, 32 to a word, starting with all rows set
+        int n = field[0].rowCount();
+        int words = (n + 31) >> 5;
+        int[] bits = new int[words];
+        for (int w = 0; w < words; w++) bits[w] = -1;
+        if ((n & 31) != 0) bits[words - 1] = (1 << (n & 31)) - 1;
+
+        int chunks = Parallel.chunkCount(n);
+        if (chunks == 1)
+            testRows(conditions, bits, 0, words);
+        else
+            testRowsInParallel(conditions, bits, chunks);
+
+        int count = 0;
+        for (int w = 0; w < words; w++)
+            for (int word = bits[w]; word != 0; word &= word - 1) count++;
+        if (count == n) return null;                // No change needed
+        int[] keep = new int[count];
+        int k = 0;
+        for (int w = 0; w < words; w++) {
+            int word = bits[w];
+            if (word == 0) continue;
+            for (int j = 0; j < 32; j++)
+                if ((word & (1 << j)) != 0) keep[k++] = (w << 5) + j;
         }
-        if (rows.size() == n) return null;          // No change needed
-        int[] keep = new int[rows.size()];
-        for (int i = 0; i < keep.length; i++) keep[i] = rows.get(i);
         return keep;
     }
 
-    private static boolean matchAny(Object v, Object[] params) {
-        for (Object p : params) if (Data.compare(v, p) == 0) return true;
-        return false;
+    /* Applies each condition in turn to the words of the bitmap from 'start' up to 'end' */
+    private static void testRows(FilterCondition[] conditions, int[] bits, int start, int end) {
+        for (FilterCondition c : conditions) c.apply(bits, start, end);
+    }
+
+    @JSTranslation(ignore = true)
+    private static void testRowsInParallel(final FilterCondition[] conditions, final int[] bits, int chunks) {
+        Runnable[] tasks = new Runnable[chunks];
+        for (int c = 0; c < chunks; c++) {
+            final int start = Parallel.chunkStart(c, chunks, bits.length);
+            final int end = Parallel.chunkStart(c + 1, chunks, bits.length);
+            tasks[c] = new Runnable() {
+                public void run() {
+                    testRows(conditions, bits, start, end);
+                }
+            };
+        }
+        Parallel.runAll(tasks);
     }
 
 }
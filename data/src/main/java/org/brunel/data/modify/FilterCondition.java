@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.modify;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.data.values.NumericProvider;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * One filter command, prepared so it can test a column of rows at a time.
+ * Rows are held in a bitmap of 32-bit words; applying the condition clears the bits of rows that fail it.
+ * Dictionary encoded fields are tested once per distinct value, numeric fields are compared as primitives,
+ * and "is" lists of text are tested by hashing rather than comparing against each item.
+ */
+public class FilterCondition {
+
+    private final Field field;
+    private final int type;                             // Type of command, as in Filter (negative means negated)
+    private final Object[] params;
+    private final DictionaryColumnProvider dictionary;  // Set when the field is dictionary encoded
+    private final boolean[] failsByCode;                // Result of the test for each dictionary code
+    private final NumericProvider numeric;              // Set when the field can be tested as primitive values
+    private final double[] numericParams;               // Range for "in", sorted values for "is"
+    private final Set<Object> textParams;               // Hashed values for "is", when they are all text
+
+    public FilterCondition(Field field, int type, Object[] params) {
+        this.field = field;
+        this.type = type;
+        this.params = params;
+        textParams = isList(type) ? makeTextParams(params) : null;
+
+        dictionary = field.dictionaryProvider();
+        if (dictionary != null) {
+            Object[] values = dictionary.dictionary();
+            failsByCode = new boolean[values.length];
+            for (int c = 0; c < values.length; c++) failsByCode[c] = fails(values[c]);
+        } else {
+            failsByCode = null;
+        }
+
+        numericParams = dictionary == null && !field.isDate() ? makeNumericParams(type, params) : null;
+        numeric = numericParams == null ? null : field.numericProvider();
+    }
+
+    /**
+     * Clear the bits for rows which fail this condition
+     *
+     * @param bits      rows to test, 32 to a word; rows whose bits are already clear are not tested
+     * @param startWord first word to process
+     * @param endWord   word after the last one to process
+     */
+    public void apply(int[] bits, int startWord, int endWord) {
+        int n = field.rowCount();
+        for (int w = startWord; w < endWord; w++) {
+            int word = bits[w];
+            if (word == 0) continue;
+            int first = w << 5;
+            int count = Math.min(32, n - first);
+            int passed = 0;
+            if (dictionary != null) {
+                // Missing values (code -1) always fail the test
+                for (int j = 0; j < count; j++) {
+                    if ((word & (1 << j)) == 0) continue;
+                    int code = dictionary.code(first + j);
+                    if (code >= 0 && !failsByCode[code]) passed |= 1 << j;
+                }
+            } else if (numeric != null) {
+                for (int j = 0; j < count; j++) {
+                    if ((word & (1 << j)) == 0) continue;
+                    int row = first + j;
+                    if (!numeric.isMissing(row) && !failsNumeric(numeric.doubleValue(row))) passed |= 1 << j;
+                }
+            } else {
+                // Missing values always fail the test, no matter what
+                for (int j = 0; j < count; j++) {
+                    if ((word & (1 << j)) == 0) continue;
+                    Object v = field.value(first + j);
+                    if (v != null && !fails(v)) passed |= 1 << j;
+                }
+            }
+            bits[w] = passed;
+        }
+    }
+
+    /* True if the non-null value fails the test */
+    private boolean fails(Object v) {
+        boolean bad = false;
+        if (isList(type))
+            bad = !matchAny(v);
+        else if (isRange(type))
+            bad = Data.compare(v, params[0]) < 0 || Data.compare(v, params[1]) > 0;
+        return type < 0 ? !bad : bad;
+    }
+
+    /* As fails, comparing as Data.compare does, so NaN sorts above everything and -0.0 below 0.0 */
+    private boolean failsNumeric(double v) {
+        boolean bad = false;
+        if (isList(type))
+            bad = !contains(numericParams, v);
+        else if (isRange(type))
+            bad = Data.compareNumbers(v, numericParams[0]) < 0 || Data.compareNumbers(v, numericParams[1]) > 0;
+        return type < 0 ? !bad : bad;
+    }
+
+    private boolean matchAny(Object v) {
+        if (textParams != null && v instanceof String) return textParams.contains(v);
+        for (Object p : params) if (Data.compare(v, p) == 0) return true;
+        return false;
+    }
+
+    private static boolean isList(int t) {
+        return t == 2 || t == -2;
+    }
+
+    private static boolean isRange(int t) {
+        return t == 3 || t == -3;
+    }
+
+    /* The parameters as sorted numbers, or null if they are not all numbers */
+    private static double[] makeNumericParams(int type, Object[] params) {
+        double[] result = new double[params.length];
+        for (int i = 0; i < params.length; i++) {
+            if (!(params[i] instanceof Double)) return null;
+            result[i] = (Double) params[i];
+        }
+        if (isList(type)) {
+            // Insertion sort, as there are few values
+            for (int i = 1; i < result.length; i++) {
+                double v = result[i];
+                int j = i - 1;
+                while (j >= 0 && Data.compareNumbers(result[j], v) > 0) {
+                    result[j + 1] = result[j];
+                    j--;
+                }
+                result[j + 1] = v;
+            }
+        }
+        return result;
+    }
+
+    /* The parameters as a set, or null if they are not all text */
+    private static Set<Object> makeTextParams(Object[] params) {
+        Set<Object> result = new HashSet<>();
+        for (Object p : params) {
+            if (!(p instanceof String)) return null;
+            result.add(p);
+        }
+        return result;
+    }
+
+    private static boolean contains(double[] sorted, double v) {
+        int low = 0, high = sorted.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >> 1;
+            int c = Data.compareNumbers(sorted[mid], v);
+            if (c < 0) low = mid + 1;
+            else if (c > 0) high = mid - 1;
+            else return true;
+        }
+        return false;
+    }
+}
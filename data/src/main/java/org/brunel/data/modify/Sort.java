@@ -53,10 +53,9 @@ public class Sort extends DataOperation {
             if (f.isBinned() && f.preferCategorical()) rowOrder = moveCatchAllToEnd(rowOrder, f);
         }
 
-        Field[] fields = new Field[base.fields.length];
+        Field[] fields = Fields.permuteAll(base.fields, rowOrder, true);
         for (int i = 0; i < fields.length; i++) {
             Field field = base.fields[i];
-            fields[i] = Fields.permute(field, rowOrder, true);
             if (!field.ordered() && sortCategories) {
                 Object[] newCategoryOrder = makeOrder(field, dimensions, ascending);
                 fields[i].setCategories(newCategoryOrder);
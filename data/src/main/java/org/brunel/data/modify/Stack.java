@@ -21,10 +21,11 @@ import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.summary.FieldRowComparison;
 import org.brunel.data.Fields;
+import org.brunel.data.values.DoubleColumnProvider;
+import org.brunel.data.values.NumericProvider;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -94,20 +95,29 @@ public class Stack extends DataOperation {
 
     private static Field[] makeStackedValues(Field[] allFields, Field y, Field[] x, boolean full) {
         int N = y.rowCount();
-        // The lower and upper values for each y field
-        Object[][] bounds = new Object[2][N];
+        // The lower and upper values for each y field; rows without a value are not valid
+        double[] lower = new double[N];
+        double[] upper = new double[N];
+        int[] validBits = NumericProvider.makeValidBits(N);
+        NumericProvider numeric = y.numericProvider();
 
         // Running positive and negative stacks for the current X value
         double lastPositive = 0;
         double lastNegative = 0;
         FieldRowComparison rowComparison = new FieldRowComparison(x, null, false);
         for (int i = 0; i < N; i++) {
-            Double v = Data.asNumeric(y.value(i));
-            if (v == null) {
-                // For full data we change missing values to zeroes, so stacking works on the complete data
-                // If we do not need full data, we can just skip it
-                if (full) v = 0.0;
-                else continue;
+            double v;
+            if (numeric != null && !numeric.isMissing(i)) {
+                v = numeric.doubleValue(i);
+            } else {
+                Double d = numeric == null ? Data.asNumeric(y.value(i)) : null;
+                if (d == null) {
+                    // For full data we change missing values to zeroes, so stacking works on the complete data
+                    // If we do not need full data, we can just skip it
+                    if (full) d = 0.0;
+                    else continue;
+                }
+                v = d;
             }
 
             // The data is sorted, so just need to reset the stacks when we move to a new x value
@@ -116,22 +126,23 @@ public class Stack extends DataOperation {
                 lastNegative = 0;
             }
 
+            NumericProvider.setValid(validBits, i, true);
             if (v < 0) {
-                bounds[0][i] = lastNegative;
+                lower[i] = lastNegative;
                 lastNegative += v;
-                bounds[1][i] = lastNegative;
+                upper[i] = lastNegative;
             } else {
-                bounds[0][i] = lastPositive;
+                lower[i] = lastPositive;
                 lastPositive += v;
-                bounds[1][i] = lastPositive;
+                upper[i] = lastPositive;
             }
         }
 
         int n = allFields.length;
         Field[] fields = new Field[n + 2];
         for (int i = 0; i < n; i++) fields[i] = allFields[i];
-        fields[n] = Fields.makeColumnField(y.name + "$lower", y.label, bounds[0]);
-        fields[n + 1] = Fields.makeColumnField(y.name + "$upper", y.label, bounds[1]);
+        fields[n] = new Field(y.name + "$lower", y.label, DoubleColumnProvider.fromValidBits(lower, validBits));
+        fields[n + 1] = new Field(y.name + "$upper", y.label, DoubleColumnProvider.fromValidBits(upper, validBits));
         Fields.copyBaseProperties(y, fields[n]);
         Fields.copyBaseProperties(y, fields[n + 1]);
         Arrays.sort(fields);
@@ -150,29 +161,36 @@ public class Stack extends DataOperation {
      */
     private static Field[] makeStackOrderedFields(Dataset base, Field[] keyFields, int xFieldCount) {
         Field[] baseFields = orderFields(base, keyFields);
-        Integer[] rowOrder = makeStackDataOrder(baseFields, keyFields.length, xFieldCount);
-        Field[] fields = new Field[baseFields.length];
-        for (int i = 0; i < baseFields.length; i++)
-            fields[i] = Fields.permute(baseFields[i], Data.toPrimitive(rowOrder), true);
-        return fields;
+        int[] rowOrder = makeStackDataOrder(baseFields, keyFields.length, xFieldCount);
+
+        // If no rows were dropped or moved, the fields can be used as they are
+        boolean unchanged = rowOrder.length == base.rowCount();
+        for (int i = 0; i < rowOrder.length && unchanged; i++) unchanged = rowOrder[i] == i;
+        return unchanged ? baseFields : Fields.permuteAll(baseFields, rowOrder, true);
     }
 
-    public static Integer[] makeStackDataOrder(Field[] fields, int keyFieldCount, int xFieldCount) {
-        List<Integer> items = new ArrayList<>();
+    public static int[] makeStackDataOrder(Field[] fields, int keyFieldCount, int xFieldCount) {
         int n = fields[0].rowCount();
+        boolean[] valid = new boolean[n];
+        int count = 0;
         for (int i = 0; i < n; i++) {
-            boolean valid = true;
+            valid[i] = true;
             for (int j = 0; j < keyFieldCount; j++)
-                if (fields[j].value(i) == null) valid = false;
-            if (valid) items.add(i);
+                if (fields[j].value(i) == null) valid[i] = false;
+            if (valid[i]) count++;
         }
+        int[] items = new int[count];
+        for (int i = 0, at = 0; i < n; i++) if (valid[i]) items[at++] = i;
 
         // We need descending order so stacking works bottom-up
         boolean[] ascending = new boolean[keyFieldCount];
         for (int i = 0; i < ascending.length; i++) ascending[i] = i < xFieldCount;
         FieldRowComparison comparison = new FieldRowComparison(fields, ascending, true);
-        Collections.sort(items, comparison);
-        return items.toArray(new Integer[items.size()]);
+
+        // Data is often in order already (as after summarizing) and then need not be sorted
+        boolean ordered = true;
+        for (int i = 1; i < count && ordered; i++) ordered = comparison.compare(items[i - 1], items[i]) < 0;
+        return ordered ? items : comparison.sortRows(items);
     }
 
     private static Field[] orderFields(Dataset base, Field[] keyFields) {
@@ -20,10 +20,13 @@ import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
+import org.brunel.data.summary.Accumulator;
 import org.brunel.data.summary.DimensionField;
 import org.brunel.data.summary.FieldRowComparison;
+import org.brunel.data.summary.Grouping;
 import org.brunel.data.summary.MeasureField;
 import org.brunel.data.summary.SummaryValues;
+import org.brunel.data.values.NumericProvider;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -38,6 +41,8 @@ import java.util.List;
  *
  * 'transform' is a statistical summary; one of sum, count, mode, median, mean, q1, q3, range, variance,
  * stddev, list (concatenates names together), iqr(interquartile range), range.
+ * The median, q1, q3 and iqr summaries accept an option 'approximate' (FIELD_NAME : median : approximate)
+ * which allows very large groups to be estimated rather than calculated exactly.
  *
  * Note that an empty field is legal for the count transform
  */
@@ -102,6 +107,7 @@ public class Summarize extends DataOperation {
     private final List<DimensionField> dimensions;
     private final List<Field> percentBase;
     private final boolean percentNeeded;
+    private final boolean fitNeeded;
     private final int rowCount;
 
     public Summarize(List<MeasureField> measures, List<DimensionField> dimensions, List<Field> percentBase, int rowCount) {
@@ -113,6 +119,10 @@ public class Summarize extends DataOperation {
         boolean percentNeeded = false;
         for (MeasureField m : measures) if (m.isPercent()) percentNeeded = true;
         this.percentNeeded = percentNeeded;
+
+        boolean fitNeeded = false;
+        for (MeasureField m : measures) if (m.method.equals("fit") || m.method.equals("smooth")) fitNeeded = true;
+        this.fitNeeded = fitNeeded;
     }
 
     private Field[] make() {
@@ -128,36 +138,68 @@ public class Summarize extends DataOperation {
 
         // group[row] gives the index of the summary group for row 'row'; 'groupCount' is the number of groups
         int[] group = new int[rowCount];
-        int groupCount = buildGroups(group, dimComparison);
+        int groupCount = Grouping.assignGroups(dimComparison, dimensionFields, group);
 
         // These are just like the summary groups, but only for the percent bases
         // The percent groups nest within each base group: rows with the same group have the same summary group also
         // we do not create these if they are not needed, for efficiency
         int[] percentGroup = percentNeeded ? new int[rowCount] : null;
-        int percentGroupCount = percentNeeded ? buildGroups(percentGroup, percentBaseComparison) : 0;
+        int percentGroupCount = percentNeeded ? Grouping.assignGroups(percentBaseComparison, percentBaseFields, percentGroup) : 0;
+
+        // The rows for each group, stored contiguously: group g has rows[offsets[g]] ... rows[offsets[g+1]-1]
+        int[] offsets = new int[groupCount + 1];
+        int[] groupRows = Grouping.makeGroupRows(group, groupCount, offsets);
+
+        // Fits and smooths are made for each group of rows sharing the dimensions that are not percent bases
+        // fitGroup[row] gives that group for a row, and the rows for each are stored like the summary groups
+        int[] fitGroup = fitNeeded ? new int[rowCount] : null;
+        int[] fitOffsets = null;
+        int[] fitRows = null;
+        if (fitNeeded) {
+            Field[] fitFields = getFitFields(dimensionFields, percentBaseFields);
+            FieldRowComparison fitComparison = new FieldRowComparison(fitFields, null, false);
+            int fitGroupCount = Grouping.assignGroups(fitComparison, fitFields, fitGroup);
+            fitOffsets = new int[fitGroupCount + 1];
+            fitRows = Grouping.makeGroupRows(fitGroup, fitGroupCount, fitOffsets);
+        }
 
         // Create the summary values for each group, and percentage sums
         SummaryValues[] summaries = new SummaryValues[groupCount];
         for (int i = 0; i < summaries.length; i++)
-            summaries[i] = new SummaryValues(measureFields, percentBaseFields, dimensionFields);
+            summaries[i] = new SummaryValues(measureFields, percentBaseFields, groupRows, offsets[i], offsets[i + 1],
+                    fitNeeded ? fitGroup[groupRows[offsets[i]]] : 0, fitRows, fitOffsets);
         double[][] percentSums = new double[percentGroupCount][measureFields.length];
 
         // Perform the Aggregation
-        for (int row = 0; row < rowCount; row++) {
-            SummaryValues value = summaries[group[row]];
-            if (percentNeeded) {
+        if (percentNeeded) {
+            // Primitive access to the percent measures, found once rather than for each row
+            NumericProvider[] numerics = new NumericProvider[measureFields.length];
+            for (int i = 0; i < measureFields.length; i++)
+                if (measures.get(i).isPercent()) numerics[i] = measureFields[i].numericProvider();
+            for (int row = 0; row < rowCount; row++) {
+                SummaryValues value = summaries[group[row]];
                 // If the group has not had percent sums set yet, then set it
                 if (value.percentSums == null) value.percentSums = percentSums[percentGroup[row]];
                 // Then add the values to the percentage count
                 for (int i = 0; i < measureFields.length; i++) {
                     if (measures.get(i).isPercent()) {
-                        Double v = Data.asNumeric(measureFields[i].value(row));
-                        if (v != null) value.percentSums[i] += v;
+                        NumericProvider numeric = numerics[i];
+                        if (numeric != null) {
+                            if (!numeric.isMissing(row)) value.percentSums[i] += numeric.doubleValue(row);
+                        } else {
+                            Double v = Data.asNumeric(measureFields[i].value(row));
+                            if (v != null) value.percentSums[i] += v;
+                        }
                     }
                 }
             }
-            // Add the current row to that group, with the relevant 'sums' for percentages
-            value.rows.add(row);
+        }
+
+        // Measures that can be calculated incrementally are done in one pass, without making per-group fields
+        Accumulator[] accumulators = new Accumulator[measures.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = Accumulator.make(measures.get(i), groupCount);
+            if (accumulators[i] != null) accumulators[i].accumulate(groupRows, offsets);
         }
 
         Object[][] dimData = new Object[dimensions.size()][groupCount];
@@ -171,8 +213,11 @@ public class Summarize extends DataOperation {
                 dimData[i][g] = dimensionFields[i].value(originalRow);
             // Set the measure values
             for (int i = 0; i < measures.size(); i++) {
-                MeasureField m = measures.get(i);
-                measureData[i][g] = values.get(i, m);
+                Accumulator a = accumulators[i];
+                if (a != null && a.handles(g))
+                    measureData[i][g] = a.get(g, values.percentSums == null ? 0 : values.percentSums[i]);
+                else
+                    measureData[i][g] = values.get(i, measures.get(i));
             }
         }
 
@@ -209,23 +254,21 @@ public class Summarize extends DataOperation {
             Fields.copyBaseProperties(src, to);
     }
 
+    // The dimensions that are not percent bases
+    private Field[] getFitFields(Field[] dimensionFields, Field[] percentBaseFields) {
+        List<Field> result = new ArrayList<>();
+        for (Field f : dimensionFields) {
+            boolean isGroup = true;
+            for (Field x : percentBaseFields) if (x == f) isGroup = false;
+            if (isGroup) result.add(f);
+        }
+        return result.toArray(new Field[result.size()]);
+    }
+
     private Field[] getFields(List<? extends DimensionField> list) {
         Field[] result = new Field[list.size()];
         for (int i = 0; i < result.length; i++) result[i] = list.get(i).field;
         return result;
     }
 
-    private int buildGroups(int[] group, FieldRowComparison dimComparison) {
-        if (dimComparison.isEmpty()) return 1;
-        int[] order = dimComparison.makeSortedOrder();
-        int currentGroup = 0;
-        for (int i = 0; i < group.length; i++) {
-            // If the comparison indicates the dimensions are different, move to a new group
-            if (i > 0 && dimComparison.compare(order[i], order[i - 1]) != 0)
-                currentGroup++;
-            group[order[i]] = currentGroup;
-        }
-        return currentGroup + 1;
-    }
-
 }
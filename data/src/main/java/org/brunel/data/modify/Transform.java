@@ -24,7 +24,10 @@ import org.brunel.data.auto.NumericScale;
 import org.brunel.data.summary.FieldRowComparison;
 import org.brunel.data.util.DateFormat;
 import org.brunel.data.Fields;
+import org.brunel.data.util.Parallel;
 import org.brunel.data.util.Range;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.translator.JSTranslation;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -174,13 +177,47 @@ public class Transform extends DataOperation {
 
     private static Object[] binData(Field f, Double[] divisions, Range[] ranges) {
         Object[] data = new Object[f.rowCount()];
-        for (int i = 0; i < data.length; i++) {
-            Double d = Data.asNumeric(f.value(i));
-            if (d == null) continue;
+        int chunks = Parallel.chunkCount(data.length);
+        if (chunks == 1)
+            binRows(f, divisions, ranges, data, 0, data.length);
+        else
+            binRowsInParallel(f, divisions, ranges, data, chunks);
+        return data;
+    }
+
+    /* Sets the bins for the rows from 'start' up to 'end' */
+    private static void binRows(Field f, Double[] divisions, Range[] ranges, Object[] data, int start, int end) {
+        NumericProvider numeric = f.numericProvider();
+        for (int i = start; i < end; i++) {
+            double d;
+            if (numeric != null) {
+                // Primitive access; no need to create an object per row
+                if (numeric.isMissing(i)) continue;
+                d = numeric.doubleValue(i);
+            } else {
+                Double v = Data.asNumeric(f.value(i));
+                if (v == null) continue;
+                d = v;
+            }
             int n = Data.indexOf(d, divisions);
             data[i] = ranges[Math.min(n, ranges.length - 1)];
         }
-        return data;
+    }
+
+    @JSTranslation(ignore = true)
+    private static void binRowsInParallel(final Field f, final Double[] divisions, final Range[] ranges,
+                                          final Object[] data, int chunks) {
+        Runnable[] tasks = new Runnable[chunks];
+        for (int c = 0; c < chunks; c++) {
+            final int start = Parallel.chunkStart(c, chunks, data.length);
+            final int end = Parallel.chunkStart(c + 1, chunks, data.length);
+            tasks[c] = new Runnable() {
+                public void run() {
+                    binRows(f, divisions, ranges, data, start, end);
+                }
+            };
+        }
+        Parallel.runAll(tasks);
     }
 
 }
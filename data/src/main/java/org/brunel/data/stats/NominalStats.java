@@ -18,10 +18,17 @@ package org.brunel.data.stats;
 
 import org.brunel.data.Field;
 import org.brunel.data.util.MapInt;
+import org.brunel.data.values.DictionaryColumnProvider;
 
 public class NominalStats {
 
     public static void populate(Field f) {
+        DictionaryColumnProvider dictionary = f.dictionaryProvider();
+        if (dictionary != null && !f.name.equals("#selection")) {
+            populateFromCodes(f, dictionary);
+            return;
+        }
+
         MapInt counts = new MapInt();
         int N = f.rowCount();
 
@@ -51,6 +58,50 @@ public class NominalStats {
         f.set("categoryCounts", counts.getCounts(naturalOrder));
     }
 
+    // Counts by code; the dictionary is sorted, so the results come out in category order with no hashing
+    private static void populateFromCodes(Field f, DictionaryColumnProvider dictionary) {
+        int N = f.rowCount();
+        int[] codeCounts = dictionary.codeCounts();
+        Object[] values = dictionary.dictionary();
+
+        int valid = 0, unique = 0, maxCount = 0;
+        for (int c : codeCounts) {
+            valid += c;
+            if (c > 0) unique++;
+            maxCount = Math.max(maxCount, c);
+        }
+
+        // Present values in sorted order, and the modes in sorted order
+        Object[] present = new Object[unique];
+        int[] presentCounts = new int[unique];
+        int[] modes = new int[unique];
+        int nModes = 0;
+        for (int i = 0, j = 0; i < codeCounts.length; i++) {
+            if (codeCounts[i] == 0) continue;
+            if (codeCounts[i] == maxCount) modes[nModes++] = i;
+            presentCounts[j] = codeCounts[i];
+            present[j++] = values[i];
+        }
+
+        f.set("n", N);
+        f.set("unique", unique);
+        f.set("valid", valid);
+        f.set("mode", nModes == 0 ? null : values[modes[(int) ((nModes - 1) / 2)]]);     // Explicit cast needed for Javascript
+
+        if (f.isProperty("categoriesOrdered")) {
+            Object[] naturalOrder = f.categories();
+            int[] counts = new int[naturalOrder.length];
+            for (int i = 0; i < counts.length; i++) {
+                int code = dictionary.codeOf(naturalOrder[i]);
+                counts[i] = code < 0 ? 0 : codeCounts[code];
+            }
+            f.set("categoryCounts", counts);
+        } else {
+            f.set("categories", present);
+            f.set("categoryCounts", presentCounts);
+        }
+    }
+
     public static boolean creates(String key) {
         return "n".equals(key) || "mode".equals(key) || "unique".equals(key) || "valid".equals(key)
                 || "categories".equals(key) || "categoryCounts".equals(key);
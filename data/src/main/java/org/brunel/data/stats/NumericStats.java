@@ -19,6 +19,7 @@ package org.brunel.data.stats;
 import org.brunel.data.Data;
 import org.brunel.data.Field;
 import org.brunel.data.util.Range;
+import org.brunel.data.values.NumericProvider;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,27 +28,9 @@ import java.util.List;
 public class NumericStats {
 
     public static void populate(Field f) {
-        int n = f.rowCount();
-
-        // Extract valid numeric data
-        List<Double> valid = new ArrayList<>();
-        for (int i = 0; i < n; i++) {
-            Object item = f.value(i);
-            if (item != null) {
-                if (item instanceof Range) {
-                    Object low = ((Range) item).low;
-                    Object high = ((Range) item).high;
-                    valid.add(Data.asNumeric(low));
-                    valid.add(Data.asNumeric(high));
-                } else {
-                    Double d = Data.asNumeric(item);
-                    if (d != null) valid.add(d);
-                }
-            }
-        }
-        Double[] data = valid.toArray(new Double[valid.size()]);
+        double[] data = validValues(f);
 
-        n = data.length;
+        int n = data.length;
         f.set("validNumeric", n);
 
         // No numeric data -- give up and go home
@@ -97,18 +80,54 @@ public class NumericStats {
      * p is the power to raise to,
      * N is the total weight (the amount to divide by)
      */
-    private static double moment(Double[] data, double c, int p, double N) {
+    private static double moment(double[] data, double c, int p, double N) {
         if (N <= 0) return Double.NaN;
         double sum = 0.0;
-        for (Double element : data)
+        for (double element : data)
             sum += Math.pow(element - c, p);
         return sum / N;
     }
 
-    private static double av(Double[] v, double index) {
+    private static double av(double[] v, double index) {
         return (v[(int) Math.floor(index)] + v[(int) Math.ceil(index)]) / 2.0;
     }
 
+    /*
+     * Extract the valid numeric data; ranges contribute both their low and high values.
+     * Fields with primitive storage are read directly without creating objects
+     */
+    private static double[] validValues(Field f) {
+        int n = f.rowCount();
+
+        NumericProvider numeric = f.numericProvider();
+        if (numeric != null) {
+            double[] data = new double[numeric.validCount()];
+            int at = 0;
+            for (int i = 0; i < n; i++)
+                if (!numeric.isMissing(i)) data[at++] = numeric.doubleValue(i);
+            return data;
+        }
+
+        List<Double> valid = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Object item = f.value(i);
+            if (item != null) {
+                if (item instanceof Range) {
+                    Object low = ((Range) item).low;
+                    Object high = ((Range) item).high;
+                    valid.add(Data.asNumeric(low));
+                    valid.add(Data.asNumeric(high));
+                } else {
+                    Double d = Data.asNumeric(item);
+                    if (d != null) valid.add(d);
+                }
+            }
+        }
+        double[] data = new double[valid.size()];
+        for (int i = 0; i < data.length; i++) data[i] = valid.get(i);
+        return data;
+    }
+
     public static boolean creates(String key) {
         return "validNumeric".equals(key) || "mean".equals(key)
                 || "stddev".equals(key) || "variance".equals(key)
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.stats;
+
+/**
+ * Calculates order statistics without sorting, by partial partitioning (introselect).
+ * Values are added to a scratch buffer which can be cleared and reused, so calculating statistics for
+ * many groups in turn needs no further allocation once the buffer has grown to the largest group.
+ * The hinges are found together: each partition step divides the wanted positions between its two halves.
+ */
+public class Quantiles {
+
+    private static final int SMALL = 16;                // Ranges this small are insertion sorted
+
+    private double[] buffer = new double[SMALL];
+    private int size;
+    private int nanCount;
+
+    public void add(double v) {
+        if (size == buffer.length) {
+            double[] bigger = new double[size * 2];
+            for (int i = 0; i < size; i++) bigger[i] = buffer[i];
+            buffer = bigger;
+        }
+        buffer[size++] = v;
+        if (Double.isNaN(v)) nanCount++;
+    }
+
+    public void clear() {
+        size = 0;
+        nanCount = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The Tukey hinges of the values added, defined as for NumericStats
+     *
+     * @return array of q1, median, q3 (or null if there is no data)
+     */
+    public double[] tukeyHinges() {
+        int n = size;
+        if (n == 0) return null;
+
+        // The positions needed; each statistic is the mean of the values at a floor and ceiling index
+        double[] at = new double[3];
+        at[1] = (n - 1) * 0.5;
+        if (n % 2 == 0) {
+            at[0] = (n / 2 - 1) * 0.5;
+            at[2] = n / 2 + (n / 2 - 1) * 0.5;
+        } else {
+            at[0] = (n - 1) * 0.25;
+            at[2] = (n - 1) / 2 + (n - 1) * 0.25;
+        }
+        int[] k = new int[6];
+        for (int i = 0; i < 3; i++) {
+            k[2 * i] = (int) Math.floor(at[i]);
+            k[2 * i + 1] = (int) Math.ceil(at[i]);
+        }
+
+        select(k);
+        double[] result = new double[3];
+        for (int i = 0; i < 3; i++) result[i] = (buffer[k[2 * i]] + buffer[k[2 * i + 1]]) / 2.0;
+        return result;
+    }
+
+    /**
+     * Rearranges the buffer so the given positions hold the values they would hold if it were sorted
+     *
+     * @param k positions, in ascending order
+     */
+    public void select(int[] k) {
+        // NaN cannot be partitioned by comparison; it sorts highest, so move it to the end first
+        int n = size;
+        if (nanCount > 0) {
+            int j = 0;
+            for (int i = 0; i < n; i++) if (!Double.isNaN(buffer[i])) buffer[j++] = buffer[i];
+            for (int i = j; i < n; i++) buffer[i] = Double.NaN;
+            n = j;
+        }
+
+        // The recursion depth limit at which we give up on partitioning and sort instead
+        int depth = 2;
+        for (int m = n; m > 1; m >>= 1) depth += 2;
+
+        // Positions in the NaN region are already correct
+        int last = k.length;
+        while (last > 0 && k[last - 1] >= n) last--;
+        if (last > 0) select(0, n - 1, k, 0, last - 1, depth);
+    }
+
+    // Partition buffer[lo..hi] until all the positions k[kLo..kHi] (which lie within it) are in place
+    private void select(int lo, int hi, int[] k, int kLo, int kHi, int depth) {
+        while (hi - lo >= SMALL) {
+            if (depth-- == 0) {
+                heapSort(lo, hi);
+                return;
+            }
+
+            // Partition around the median of three, Hoare style
+            double pivot = medianOfThree(lo, (lo + hi) >>> 1, hi);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (buffer[i] < pivot) i++;
+                while (buffer[j] > pivot) j--;
+                if (i <= j) swap(i++, j--);
+            }
+
+            // Now buffer[lo..j] <= pivot <= buffer[i..hi], and everything between equals the pivot
+            int leftEnd = kLo;
+            while (leftEnd <= kHi && k[leftEnd] <= j) leftEnd++;
+            int rightStart = leftEnd;
+            while (rightStart <= kHi && k[rightStart] < i) rightStart++;
+
+            // Recurse into the side with fewer positions; loop on the other
+            if (leftEnd > kLo && rightStart <= kHi) {
+                if (leftEnd - kLo < kHi - rightStart + 1) {
+                    select(lo, j, k, kLo, leftEnd - 1, depth);
+                    lo = i;
+                    kLo = rightStart;
+                } else {
+                    select(i, hi, k, rightStart, kHi, depth);
+                    hi = j;
+                    kHi = leftEnd - 1;
+                }
+            } else if (leftEnd > kLo) {
+                hi = j;
+                kHi = leftEnd - 1;
+            } else if (rightStart <= kHi) {
+                lo = i;
+                kLo = rightStart;
+            } else {
+                return;
+            }
+        }
+        insertionSort(lo, hi);
+    }
+
+    private double medianOfThree(int a, int b, int c) {
+        if (buffer[b] < buffer[a]) swap(a, b);
+        if (buffer[c] < buffer[b]) {
+            swap(b, c);
+            if (buffer[b] < buffer[a]) swap(a, b);
+        }
+        return buffer[b];
+    }
+
+    private void insertionSort(int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            double v = buffer[i];
+            int j = i - 1;
+            while (j >= lo && buffer[j] > v) {
+                buffer[j + 1] = buffer[j];
+                j--;
+            }
+            buffer[j + 1] = v;
+        }
+    }
+
+    private void heapSort(int lo, int hi) {
+        int n = hi - lo + 1;
+        for (int i = (int) (n / 2) - 1; i >= 0; i--) siftDown(lo, i, n);      // Explicit cast needed for Javascript
+        for (int end = n - 1; end > 0; end--) {
+            swap(lo, lo + end);
+            siftDown(lo, 0, end);
+        }
+    }
+
+    private void siftDown(int base, int i, int n) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) return;
+            if (child + 1 < n && buffer[base + child + 1] > buffer[base + child]) child++;
+            if (buffer[base + i] >= buffer[base + child]) return;
+            swap(base + i, base + child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        double t = buffer[a];
+        buffer[a] = buffer[b];
+        buffer[b] = t;
+    }
+}
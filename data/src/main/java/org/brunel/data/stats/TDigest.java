@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.stats;
+
+import java.util.Arrays;
+
+/**
+ * A merging t-digest: an approximate summary of a distribution for estimating quantiles in bounded memory.
+ * Values are buffered and periodically merged into a sorted list of weighted centroids. Centroids are kept
+ * small near the tails, so extreme quantiles are more accurate than central ones.
+ * See Dunning and Ertl, "Computing Extremely Accurate Quantiles Using t-Digests"
+ */
+public class TDigest {
+
+    private final double compression;           // Controls the number of centroids (about this many)
+    private double[] means;                     // Centroid means, sorted
+    private double[] weights;                   // Centroid weights
+    private int centroids;                      // Number of centroids in use
+    private final double[] buffer;              // Values not yet merged
+    private int buffered;                       // Number of values in the buffer
+    private double total;                       // Total weight merged
+    private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+    public TDigest(double compression) {
+        this.compression = compression;
+        int size = (int) Math.ceil(compression) * 2 + 10;
+        this.means = new double[size];
+        this.weights = new double[size];
+        this.buffer = new double[size * 5];
+    }
+
+    public void add(double x) {
+        if (Double.isNaN(x)) return;
+        if (buffered == buffer.length) merge();
+        buffer[buffered++] = x;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+    }
+
+    public double count() {
+        return total + buffered;
+    }
+
+    /**
+     * Estimate a quantile
+     *
+     * @param q fraction in [0,1]
+     * @return estimated value at the quantile, or NaN if there is no data
+     */
+    public double quantile(double q) {
+        merge();
+        if (centroids == 0) return Double.NaN;
+        if (centroids == 1) return means[0];
+
+        // Each centroid's weight is centered on its mean; interpolate between neighboring centers
+        double index = q * total;
+        if (index <= weights[0] / 2) return min + (means[0] - min) * index / (weights[0] / 2);
+        double soFar = weights[0] / 2;
+        for (int i = 0; i < centroids - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (soFar + step >= index) {
+                double f = (index - soFar) / step;
+                return means[i] + f * (means[i + 1] - means[i]);
+            }
+            soFar += step;
+        }
+        double lastHalf = weights[centroids - 1] / 2;
+        double f = lastHalf == 0 ? 1 : Math.min(1, (index - soFar) / lastHalf);
+        return means[centroids - 1] + f * (max - means[centroids - 1]);
+    }
+
+    // Merge the buffered values into the centroids
+    private void merge() {
+        if (buffered == 0) return;
+        double[] incoming = new double[buffered];
+        for (int i = 0; i < buffered; i++) incoming[i] = buffer[i];
+        Arrays.sort(incoming);
+
+        // Walk the existing centroids and the sorted values together, in order of mean
+        int n = centroids + incoming.length;
+        double[] allMeans = new double[n];
+        double[] allWeights = new double[n];
+        int a = 0, b = 0;
+        for (int i = 0; i < n; i++) {
+            if (b >= incoming.length || (a < centroids && means[a] <= incoming[b])) {
+                allMeans[i] = means[a];
+                allWeights[i] = weights[a++];
+            } else {
+                allMeans[i] = incoming[b++];
+                allWeights[i] = 1;
+            }
+        }
+        total += buffered;
+        buffered = 0;
+
+        // Combine neighbors while the combined centroid stays within the size limit for its position
+        centroids = 0;
+        double soFar = 0;
+        double limit = total * qLimit(0);
+        means[0] = allMeans[0];
+        weights[0] = allWeights[0];
+        for (int i = 1; i < n; i++) {
+            double w = allWeights[i];
+            if (soFar + weights[centroids] + w <= limit) {
+                weights[centroids] += w;
+                means[centroids] += (allMeans[i] - means[centroids]) * w / weights[centroids];
+            } else {
+                soFar += weights[centroids];
+                limit = total * qLimit(soFar / total);
+                ensureCapacity(centroids + 2);
+                centroids++;
+                means[centroids] = allMeans[i];
+                weights[centroids] = w;
+            }
+        }
+        centroids++;
+    }
+
+    // The upper quantile for a centroid starting at q, using the scale function k = d/(2 pi) asin(2q - 1)
+    private double qLimit(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * q - 1) + 1;
+        if (k >= compression / 4) return 1;
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= means.length) return;
+        double[] m = new double[size * 2];
+        double[] w = new double[size * 2];
+        for (int i = 0; i < centroids + 1; i++) {
+            m[i] = means[i];
+            w[i] = weights[i];
+        }
+        means = m;
+        weights = w;
+    }
+}
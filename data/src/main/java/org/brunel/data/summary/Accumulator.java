@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.stats.Quantiles;
+import org.brunel.data.stats.TDigest;
+import org.brunel.data.util.Parallel;
+import org.brunel.data.util.Range;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.translator.JSTranslation;
+
+/**
+ * Calculates a summary for every group in a single pass over the rows, without building a field for each group.
+ * Summaries that need all the values of a group as a field (mode, list, fits) still use SummaryValues.
+ * Variance uses Welford's update so it needs no second pass. Quartiles and medians are found by selection
+ * on a buffer reused for each group, or, for large groups when the measure option is "approximate",
+ * estimated from a t-digest.
+ */
+public class Accumulator {
+
+    private static final int APPROXIMATE_SIZE = 100000;         // Groups larger than this may be approximated
+    private static final double DIGEST_COMPRESSION = 200;       // Accuracy of approximations
+
+    /**
+     * Create an accumulator for the measure, if it can be calculated incrementally
+     *
+     * @param m          measure to calculate
+     * @param groupCount number of groups
+     * @return the accumulator, or null if the measure needs the full set of values for each group
+     */
+    public static Accumulator make(MeasureField m, int groupCount) {
+        if (m.field == null) return null;
+        String s = m.method;
+        if (s.equals("unique"))
+            return m.field.dictionaryProvider() == null ? null : new Accumulator(m, groupCount);
+        if (s.equals("sum") || s.equals("mean") || s.equals("min") || s.equals("max") || s.equals("range")
+                || s.equals("variance") || s.equals("stddev") || s.equals("valid") || s.equals("percent")
+                || isQuantile(s))
+            return new Accumulator(m, groupCount);
+        return null;
+    }
+
+    private static boolean isQuantile(String s) {
+        return s.equals("median") || s.equals("q1") || s.equals("q3") || s.equals("iqr");
+    }
+
+    private final MeasureField measure;
+    private final Field field;
+    private final NumericProvider numeric;              // Primitive access, if the field has it
+    private final DictionaryColumnProvider coded;      // Code access, if the field has it
+
+    private final int[] valid;                          // Non-null values
+    private final int[] n;                              // Numeric values
+    private final double[] sum, mean, m2, min, max;     // Running statistics on the numeric values
+    private final int[] unique;                         // Distinct codes
+    private final boolean[] fallback;                   // True if the group has values we cannot accumulate
+    private final double[][] hinges;                    // q1, median, q3 for each group (null if not needed)
+
+    private Accumulator(MeasureField measure, int groupCount) {
+        this.measure = measure;
+        this.field = measure.field;
+        this.numeric = field.numericProvider();
+        this.coded = field.dictionaryProvider();
+        this.valid = new int[groupCount];
+        this.n = new int[groupCount];
+        this.sum = new double[groupCount];
+        this.mean = new double[groupCount];
+        this.m2 = new double[groupCount];
+        this.min = new double[groupCount];
+        this.max = new double[groupCount];
+        this.unique = new int[groupCount];
+        this.fallback = new boolean[groupCount];
+        this.hinges = isQuantile(measure.method) ? new double[groupCount][] : null;
+    }
+
+    /**
+     * Add all the rows into their groups.
+     * Groups are independent, so for large data they are divided into chunks that may run in parallel
+     *
+     * @param rows    the rows, ordered by group
+     * @param offsets group g has rows[offsets[g]] ... rows[offsets[g+1]-1]
+     */
+    public void accumulate(int[] rows, int[] offsets) {
+        int groupCount = valid.length;
+        int chunks = Math.min(Parallel.chunkCount(rows.length), groupCount);
+        if (chunks <= 1)
+            accumulateGroups(rows, offsets, 0, groupCount);
+        else
+            accumulateInParallel(rows, offsets, chunks);
+    }
+
+    /* Accumulate groups from 'start' up to 'end' */
+    private void accumulateGroups(int[] rows, int[] offsets, int start, int end) {
+        Quantiles scratch = hinges == null ? null : new Quantiles();
+        if (coded != null) {
+            // Convert each dictionary entry once; codes are counted as unique once per group,
+            // marking them with the last group they were seen in
+            Object[] dictionary = coded.dictionary();
+            Double[] values = new Double[dictionary.length];
+            for (int c = 0; c < values.length; c++) values[c] = Data.asNumeric(dictionary[c]);
+            int[] seenIn = new int[dictionary.length];
+            for (int g = start; g < end; g++) {
+                TDigest digest = startGroup(offsets[g + 1] - offsets[g], scratch);
+                for (int i = offsets[g]; i < offsets[g + 1]; i++) {
+                    int c = coded.code(rows[i]);
+                    if (c < 0) continue;
+                    valid[g]++;
+                    if (values[c] != null) add(g, values[c], scratch, digest);
+                    if (seenIn[c] != g + 1) {
+                        seenIn[c] = g + 1;
+                        unique[g]++;
+                    }
+                }
+                endGroup(g, scratch, digest);
+            }
+            return;
+        }
+
+        for (int g = start; g < end; g++) {
+            TDigest digest = startGroup(offsets[g + 1] - offsets[g], scratch);
+            for (int i = offsets[g]; i < offsets[g + 1]; i++) {
+                int row = rows[i];
+                if (numeric != null) {
+                    if (numeric.isMissing(row)) continue;
+                    valid[g]++;
+                    add(g, numeric.doubleValue(row), scratch, digest);
+                } else {
+                    Object v = field.value(row);
+                    if (v == null) continue;
+                    valid[g]++;
+                    if (v instanceof Range) {
+                        // Ranges contribute two values to the statistics; leave them to the full calculation
+                        fallback[g] = true;
+                        continue;
+                    }
+                    Double d = Data.asNumeric(v);
+                    if (d != null) add(g, d, scratch, digest);
+                }
+            }
+            endGroup(g, scratch, digest);
+        }
+    }
+
+    @JSTranslation(ignore = true)
+    private void accumulateInParallel(final int[] rows, final int[] offsets, int chunks) {
+        // Divide the groups so each chunk has about the same number of rows
+        int groupCount = valid.length;
+        int[] firstGroup = new int[chunks + 1];
+        int g = 0;
+        for (int c = 1; c < chunks; c++) {
+            int target = Parallel.chunkStart(c, chunks, rows.length);
+            while (g < groupCount && offsets[g] < target) g++;
+            firstGroup[c] = g;
+        }
+        firstGroup[chunks] = groupCount;
+
+        Runnable[] tasks = new Runnable[chunks];
+        for (int c = 0; c < chunks; c++) {
+            final int start = firstGroup[c];
+            final int end = Math.max(start, firstGroup[c + 1]);
+            tasks[c] = new Runnable() {
+                public void run() {
+                    accumulateGroups(rows, offsets, start, end);
+                }
+            };
+        }
+        Parallel.runAll(tasks);
+    }
+
+    /**
+     * Whether the group could be calculated incrementally
+     *
+     * @param group group index
+     * @return true if get() can be called for this group
+     */
+    public boolean handles(int group) {
+        return !fallback[group];
+    }
+
+    /**
+     * The summary value for a group
+     *
+     * @param group      group index
+     * @param percentSum total for the percentage base the group belongs in (only used for percents)
+     * @return the summary value
+     */
+    public Object get(int group, double percentSum) {
+        String summary = measure.method;
+        if (summary.equals("valid")) return valid[group];
+        if (summary.equals("unique")) return unique[group];
+
+        // All others need some numeric data
+        int count = n[group];
+        if (count == 0) return null;
+        double average = sum[group] / count;
+
+        if (summary.equals("sum")) return average * valid[group];
+        if (summary.equals("mean")) return average;
+        if (summary.equals("min")) return min[group];
+        if (summary.equals("max")) return max[group];
+        if (summary.equals("range")) return Range.make(min[group], max[group], measure.getDateFormat());
+
+        if (hinges != null) {
+            double[] h = hinges[group];
+            if (summary.equals("q1")) return h[0];
+            if (summary.equals("median")) return h[1];
+            if (summary.equals("q3")) return h[2];
+            return Range.make(h[0], h[2], measure.getDateFormat());
+        }
+
+        if (summary.equals("percent")) {
+            double total;
+            if ("overall".equals(measure.option))
+                total = field.valid() * field.numProperty("mean");
+            else
+                total = percentSum;
+            return total > 0 ? 100 * average * valid[group] / total : null;
+        }
+
+        double variance = count > 1 ? m2[group] / (count - 1) : Double.NaN;
+        if (summary.equals("variance")) return variance;
+        return Math.sqrt(variance);
+    }
+
+    // Prepare for a group's order statistics, returning a digest if it is to be approximated
+    private TDigest startGroup(int rowCount, Quantiles scratch) {
+        if (scratch == null) return null;
+        scratch.clear();
+        boolean approximate = rowCount > APPROXIMATE_SIZE && "approximate".equals(measure.option);
+        return approximate ? new TDigest(DIGEST_COMPRESSION) : null;
+    }
+
+    private void endGroup(int g, Quantiles scratch, TDigest digest) {
+        if (scratch == null || n[g] == 0) return;
+        if (digest != null)
+            hinges[g] = new double[]{digest.quantile(0.25), digest.quantile(0.5), digest.quantile(0.75)};
+        else
+            hinges[g] = scratch.tukeyHinges();
+    }
+
+    private void add(int g, double x, Quantiles scratch, TDigest digest) {
+        if (digest != null) digest.add(x);
+        else if (scratch != null) scratch.add(x);
+        int count = ++n[g];
+        sum[g] += x;
+        if (count == 1) {
+            min[g] = x;
+            max[g] = x;
+        } else {
+            min[g] = Math.min(min[g], x);
+            max[g] = Math.max(max[g], x);
+        }
+        // Welford's update for the mean and sum of squared differences from it
+        double delta = x - mean[g];
+        mean[g] += delta / count;
+        m2[g] += delta * (x - mean[g]);
+    }
+
+}
@@ -18,8 +18,9 @@ package org.brunel.data.summary;
 
 import org.brunel.data.Data;
 import org.brunel.data.Field;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.translator.JSTranslation;
 
-import java.util.Arrays;
 import java.util.Comparator;
 
 /**
@@ -31,16 +32,21 @@ public class FieldRowComparison implements Comparator<Integer> {
     private final int n;
     private final Field[] fields;
 
+    private final NumericProvider[] numeric;     // Primitive access for fields sorted by value (null if not)
+
     public FieldRowComparison(Field[] fields, boolean[] ascending, boolean rowsBreakTies) {
         this.fields = fields;
         this.ascending = ascending;
         this.rowsBreakTies = rowsBreakTies;
         this.n = ascending == null ? fields.length : ascending.length;
+        this.numeric = new NumericProvider[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            if (!fields[i].preferCategorical()) numeric[i] = fields[i].numericProvider();
     }
 
     public int compare(Integer a, Integer b) {
         for (int i = 0; i < n; i++) {
-            int n = fields[i].compareRows(a, b);
+            int n = numeric[i] != null ? numeric[i].compareRows(a, b, null) : fields[i].compareRows(a, b);
             // If descending, change sort order
             if (n != 0) return ascending != null && !ascending[i] ? -n : n;
         }
@@ -53,9 +59,40 @@ public class FieldRowComparison implements Comparator<Integer> {
 
     public int[] makeSortedOrder() {
         int n = fields[0].rowCount();
-        Integer[] items = new Integer[n];
-        for (int i = 0; i < n; i++) items[i] = i;
-        Arrays.sort(items, this);
-        return Data.toPrimitive(items);
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) rows[i] = i;
+        return sortRows(rows);
+    }
+
+    /**
+     * Sort rows into this comparison's order. Rows that compare equal stay in the order given
+     *
+     * @param rows rows to sort, in ascending order; the array may be changed
+     * @return the sorted rows
+     */
+    @JSTranslation(js = {
+            "var self = this;",
+            "rows.sort(function(a, b) { return self.compare(a, b) || a - b; });",
+            "return rows;"
+    })
+    public int[] sortRows(int[] rows) {
+        // Keys are made for every row, so only worth making if we sort a good fraction of them
+        long[][] keys = new long[n][];
+        boolean useKeys = n > 0 && rows.length >= fields[0].rowCount() / 16;
+        for (int i = 0; i < n && useKeys; i++) {
+            keys[i] = numeric[i] != null ? RowSorter.numericKeys(numeric[i], fields[i].rowCount())
+                    : RowSorter.fieldKeys(fields[i]);
+            if (keys[i] == null) useKeys = false;
+            else if (ascending != null && !ascending[i]) RowSorter.reverse(keys[i]);
+        }
+        if (useKeys) return RowSorter.sort(rows, keys);
+
+        // Compare the rows directly
+        final FieldRowComparison comparison = this;
+        return RowSorter.mergeSort(rows, new RowSorter.RowComparator() {
+            public int compare(int a, int b) {
+                return comparison.compare(a, b);
+            }
+        });
     }
 }
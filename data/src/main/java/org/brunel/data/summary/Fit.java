@@ -18,10 +18,9 @@ package org.brunel.data.summary;
 
 import org.brunel.data.Data;
 import org.brunel.data.Field;
+import org.brunel.translator.JSTranslation;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -35,30 +34,33 @@ public abstract class Fit {
     protected final double mx, my;                          // mean values
 
 
-    public Fit(Field fy, Field fx, List<Integer> rows) {
+    public Fit(Field fy, Field fx, int[] rows, int start, int end) {
         this.fx = fx;
         this.fy = fy;
 
         xCatMap = makeCatMap(fx);
         yCatMap = makeCatMap(fy);
-        List<Double> xList = new ArrayList<>();
-        List<Double> yList = new ArrayList<>();
-        for (int i : rows) {
-            Double xv = vx(fx.value(i));
-            Double yv = vy(fy.value(i));
+
+        // Read the valid pairs, then order them by x
+        double[] xs = new double[end - start];
+        double[] ys = new double[end - start];
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            Double xv = vx(fx.value(rows[i]));
+            Double yv = vy(fy.value(rows[i]));
             if (xv != null && yv != null) {
-                xList.add(xv);
-                yList.add(yv);
+                xs[n] = xv;
+                ys[n] = yv;
+                n++;
             }
         }
 
-        int n = xList.size();
-        Integer[] order = Data.order(xList.toArray(new Double[n]), true);
+        int[] order = order(xs, n);
         this.x = new double[n];
         this.y = new double[n];
         for (int i = 0; i < n; i++) {
-            this.x[i] = xList.get(order[i]);
-            this.y[i] = yList.get(order[i]);
+            this.x[i] = xs[order[i]];
+            this.y[i] = ys[order[i]];
         }
 
         this.my = mean(y);
@@ -66,6 +68,19 @@ public abstract class Fit {
 
     }
 
+    // The indices of the first n values, in ascending order of value (stable)
+    @JSTranslation(js = {
+            "var order = [];",
+            "for (var i = 0; i < n; i++) order.push(i);",
+            "order.sort(function(a, b) { return values[a] - values[b] || a - b; });",
+            "return order;"
+    })
+    private static int[] order(double[] values, int n) {
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) rows[i] = i;
+        return RowSorter.sort(rows, new long[][]{RowSorter.doubleKeys(values, n)});
+    }
+
     // Maps fields to their ordered numbers
     private Map<Object, Double> makeCatMap(Field f) {
         if (f.isNumeric()) return null;
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Field;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.translator.JSTranslation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns rows to groups defined by the values of a set of fields.
+ * Groups are numbered in the sorted order of their values, whichever way they are found:
+ * hashing the keys takes a single pass, and is used when rows collapse into relatively few groups;
+ * when keys are nearly unique a sort of the rows is just as fast and needs no hash tables.
+ */
+public class Grouping {
+
+    /**
+     * Assign each row to a group
+     *
+     * @param comparison defines the fields and the order of the groups
+     * @param fields     the fields to group by (the same as the comparison uses)
+     * @param group      filled in with the group index for each row
+     * @return the number of groups
+     */
+    public static int assignGroups(FieldRowComparison comparison, Field[] fields, int[] group) {
+        if (comparison.isEmpty()) return 1;
+        int n = group.length;
+
+        // Combine the fields one at a time; each step leaves 'key' holding compact ids for the groups so far
+        int[] key = new int[n];
+        int keyCount = 1;
+        for (Field f : fields) {
+            int[] ids = new int[n];
+            int idCount = makeValueIds(f, ids);
+            // When values are this close to unique, hashing saves little over sorting
+            if (idCount > n / 2) return groupBySorting(comparison, group);
+            keyCount = combine(key, keyCount, ids, idCount);
+        }
+        return orderGroups(comparison, key, keyCount, group);
+    }
+
+    /**
+     * Create a compressed (CSR) index of the rows in each group.
+     * The rows for group g are rows[offsets[g]] ... rows[offsets[g+1]-1], in ascending row order
+     *
+     * @param group      group index for each row
+     * @param groupCount number of groups
+     * @param offsets    array of size groupCount+1, filled in with the start of each group
+     * @return the rows, ordered by group
+     */
+    public static int[] makeGroupRows(int[] group, int groupCount, int[] offsets) {
+        for (int g : group) offsets[g + 1]++;
+        for (int g = 0; g < groupCount; g++) offsets[g + 1] += offsets[g];
+        int[] next = new int[groupCount];
+        for (int g = 0; g < groupCount; g++) next[g] = offsets[g];
+        int[] rows = new int[group.length];
+        for (int i = 0; i < group.length; i++) rows[next[group[i]]++] = i;
+        return rows;
+    }
+
+    // Number the distinct values in a field; missing values get an id of their own
+    private static int makeValueIds(Field f, int[] ids) {
+        DictionaryColumnProvider dictionary = f.dictionaryProvider();
+        if (dictionary != null) {
+            // Codes are already ids
+            int missing = dictionary.dictionary().length;
+            for (int i = 0; i < ids.length; i++) {
+                int code = dictionary.code(i);
+                ids[i] = code < 0 ? missing : code;
+            }
+            return missing + 1;
+        }
+
+        Map<Object, Integer> index = new HashMap<>();
+        boolean hasMissing = false;
+        for (int i = 0; i < ids.length; i++) {
+            Object v = groupKey(f.value(i));
+            if (v == null) {
+                hasMissing = true;
+                ids[i] = -1;
+                continue;
+            }
+            Integer id = index.get(v);
+            if (id == null) {
+                id = index.size();
+                index.put(v, id);
+            }
+            ids[i] = id;
+        }
+
+        // Missing values go after all the others
+        int count = index.size();
+        if (!hasMissing) return count;
+        for (int i = 0; i < ids.length; i++) if (ids[i] < 0) ids[i] = count;
+        return count + 1;
+    }
+
+    // Numbers that Data.compare finds equal, such as Integer 1 and Double 1.0, must hash to the same key
+    @JSTranslation(js = "return v;")
+    private static Object groupKey(Object v) {
+        if (v instanceof Number && !(v instanceof Double)) return ((Number) v).doubleValue();
+        return v;
+    }
+
+    // Replaces the key with compact ids for the (key, id) pairs, returning how many distinct pairs there are
+    private static int combine(int[] key, int keyCount, int[] ids, int idCount) {
+        int n = key.length;
+        if ((double) keyCount * idCount <= 2 * n + 1024) {
+            // Few enough combinations to use a direct lookup table
+            int[] table = new int[keyCount * idCount];
+            Arrays.fill(table, -1);
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                int slot = key[i] * idCount + ids[i];
+                if (table[slot] < 0) table[slot] = count++;
+                key[i] = table[slot];
+            }
+            return count;
+        }
+
+        // Open addressing on the pairs; capacity is a power of two at least twice the rows
+        int capacity = 16;
+        while (capacity < 2 * n) capacity *= 2;
+        int mask = capacity - 1;
+        int[] firstKey = new int[capacity];
+        int[] secondKey = new int[capacity];
+        int[] value = new int[capacity];
+        Arrays.fill(value, -1);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int a = key[i], b = ids[i];
+            int h = a * 31 + b;
+            h = (h ^ (h >>> 16)) & mask;
+            while (value[h] >= 0 && (firstKey[h] != a || secondKey[h] != b)) h = (h + 1) & mask;
+            if (value[h] < 0) {
+                firstKey[h] = a;
+                secondKey[h] = b;
+                value[h] = count++;
+            }
+            key[i] = value[h];
+        }
+        return count;
+    }
+
+    // Renumbers hashed groups so they follow the sorted order, sorting only one row per group
+    private static int orderGroups(FieldRowComparison comparison, int[] key, int keyCount, int[] group) {
+        // The first row of each group represents it
+        // Keys are numbered in order of first appearance, so these rows are in ascending order
+        int[] firstRows = new int[keyCount];
+        for (int i = key.length - 1; i >= 0; i--) firstRows[key[i]] = i;
+        firstRows = comparison.sortRows(firstRows);
+        int[] rank = new int[keyCount];
+        for (int k = 0; k < keyCount; k++) rank[key[firstRows[k]]] = k;
+        for (int i = 0; i < key.length; i++) group[i] = rank[key[i]];
+        return keyCount;
+    }
+
+    // The original approach: sort the rows and start a new group whenever the values change
+    private static int groupBySorting(FieldRowComparison comparison, int[] group) {
+        int[] order = comparison.makeSortedOrder();
+        int currentGroup = 0;
+        for (int i = 0; i < group.length; i++) {
+            // If the comparison indicates the dimensions are different, move to a new group
+            if (i > 0 && comparison.compare(order[i], order[i - 1]) != 0)
+                currentGroup++;
+            group[order[i]] = currentGroup;
+        }
+        return currentGroup + 1;
+    }
+
+}
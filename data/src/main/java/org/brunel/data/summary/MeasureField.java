@@ -17,18 +17,13 @@
 package org.brunel.data.summary;
 
 import org.brunel.data.Field;
-import org.brunel.data.modify.Transform;
 import org.brunel.translator.JSTranslation;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-
 public class MeasureField extends DimensionField {
 
     public final String method;                                // Defines the function
     public String option;                                               // Option for it
-    public final Map<String, Fit> fits = new HashMap<>();    // Per-group fits
+    private Fit[] fits = new Fit[0];                                   // Per-group fits, by group index
 
     public MeasureField(Field field, String rename, String measureFunction) {
         super(field, rename == null && field == null ? measureFunction : rename);
@@ -43,23 +38,26 @@ public class MeasureField extends DimensionField {
     /**
      * Find the fit function for the given group
      *
-     * @param groupFields fields used to define g
-     * @param index       the row to find the group fit for
+     * @param group the index of the group, as assigned by the summary grouping
      * @return defined fit (or null if none yet created)
      */
-    public Fit getFit(ArrayList<Field> groupFields, int index) {
-        return this.fits.get(Transform.makeKey(groupFields, index));
+    public Fit getFit(int group) {
+        return group < fits.length ? fits[group] : null;
     }
 
     /**
      * Define the fit function for the given group
      *
-     * @param groupFields fields used to define g
-     * @param index       the row to find the group fit for
-     * @param fit         the fit to use for this group
+     * @param group the index of the group, as assigned by the summary grouping
+     * @param fit   the fit to use for this group
      */
-    public void setFit(ArrayList<Field> groupFields, int index, Fit fit) {
-        this.fits.put(Transform.makeKey(groupFields, index), fit);
+    public void setFit(int group, Fit fit) {
+        if (group >= fits.length) {
+            Fit[] larger = new Fit[Math.max(group + 1, fits.length * 2)];
+            for (int i = 0; i < fits.length; i++) larger[i] = fits[i];
+            fits = larger;
+        }
+        fits[group] = fit;
     }
 
     public boolean isPercent() {
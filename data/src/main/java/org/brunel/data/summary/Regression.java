@@ -18,16 +18,14 @@ package org.brunel.data.summary;
 
 import org.brunel.data.Field;
 
-import java.util.List;
-
 /**
  * Calculates a regression function
  */
 public class Regression extends Fit {
     private final Double m, b;                             // Slope and intercept
 
-    public Regression(Field fy, Field fx, List<Integer> rows) {
-        super(fy, fx, rows);
+    public Regression(Field fy, Field fx, int[] rows, int start, int end) {
+        super(fy, fx, rows, start, end);
         int n = x.length;
         double sxy = 0, sxx = 0;                           // sum of XY and XX values
         for (int i = 0; i < n; i++) {
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Field;
+import org.brunel.data.util.MapInt;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.translator.JSTranslation;
+
+import java.util.Arrays;
+
+/**
+ * Sorts rows, as int indices, without boxing them or calling a comparator for each pair when it can be avoided.
+ * Each field is first turned into a long key per row that orders the rows as the field compares them: numbers
+ * as their sortable bit patterns, categories as their rank in the category order, and missing values last.
+ * A single key is sorted by an LSD radix sort on only as many bits as the keys span; several keys, or fields
+ * that have no simple key, use a stable merge sort. Both are stable, so equal rows keep their given order.
+ */
+@JSTranslation(ignore = true)
+public class RowSorter {
+
+    private static final long MISSING = Long.MAX_VALUE;         // Missing values sort after all others
+    private static final int RADIX_BITS = 11;
+    private static final int SMALL = 32;                        // Runs this short are insertion sorted
+
+    /**
+     * Compares two rows
+     */
+    public interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Keys for a numeric provider, ordering rows as its comparison without a category order does
+     *
+     * @param numeric values
+     * @param n       number of rows
+     * @return a key for each row
+     */
+    public static long[] numericKeys(NumericProvider numeric, int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = numeric.isMissing(i) ? MISSING : sortable(numeric.doubleValue(i) + 0.0);   // -0 == 0
+        return keys;
+    }
+
+    /**
+     * Keys for primitive values, ordering them as Double.compare does
+     *
+     * @param values values to order
+     * @param n      number of values to use
+     * @return a key for each value
+     */
+    public static long[] doubleKeys(double[] values, int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) keys[i] = sortable(values[i]);
+        return keys;
+    }
+
+    /**
+     * Keys that order rows as the field compares them
+     *
+     * @param field the field
+     * @return a key for each row, or null if the values have no simple key and must be compared as objects
+     */
+    public static long[] fieldKeys(Field field) {
+        MapInt order = field.comparisonOrder();
+        int n = field.rowCount();
+        long[] keys = new long[n];
+
+        DictionaryColumnProvider dictionary = field.dictionaryProvider();
+        if (dictionary != null) {
+            // Rank each code once; codes are already in sorted order
+            Object[] values = dictionary.dictionary();
+            int[] rank = new int[values.length];
+            for (int c = 0; c < rank.length; c++) rank[c] = order.isEmpty() ? c : order.get(values[c]);
+            for (int i = 0; i < n; i++) {
+                int code = dictionary.code(i);
+                keys[i] = code < 0 ? MISSING : rank[code];
+            }
+            return keys;
+        }
+
+        NumericProvider numeric = field.numericProvider();
+        if (numeric != null && order.isEmpty()) return numericKeys(numeric, n);
+
+        for (int i = 0; i < n; i++) {
+            Object v = field.value(i);
+            if (v == null) keys[i] = MISSING;
+            else if (!order.isEmpty()) keys[i] = order.get(v);
+            else if (v instanceof Number) keys[i] = sortable(((Number) v).doubleValue());
+            else return null;                                   // Objects are compared by the field
+        }
+        return keys;
+    }
+
+    /**
+     * Keys that order values as Data.compare does, when they are all numbers or missing
+     *
+     * @param values values to order
+     * @return a key for each value, or null if some are not numbers
+     */
+    public static long[] valueKeys(Object[] values) {
+        long[] keys = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Object v = values[i];
+            if (v == null) keys[i] = MISSING;
+            else if (v instanceof Number) keys[i] = sortable(((Number) v).doubleValue());
+            else return null;
+        }
+        return keys;
+    }
+
+    /**
+     * Reverse the order the keys define, in place. Missing values then sort first, as they do for a negated comparison
+     *
+     * @param keys keys to change
+     */
+    public static void reverse(long[] keys) {
+        for (int i = 0; i < keys.length; i++) keys[i] = ~keys[i];
+    }
+
+    /**
+     * Sort rows by keys, the first key being most important
+     *
+     * @param rows rows to sort, indexing into the keys; the array may be changed
+     * @param keys keys for each row
+     * @return the sorted rows
+     */
+    public static int[] sort(int[] rows, final long[][] keys) {
+        if (keys.length == 0) return rows;
+        if (keys.length == 1 && rows.length > SMALL) return radixSort(rows, keys[0]);
+        return mergeSort(rows, new RowComparator() {
+            public int compare(int a, int b) {
+                for (long[] k : keys)
+                    if (k[a] != k[b]) return k[a] < k[b] ? -1 : 1;
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * Stable merge sort of rows
+     *
+     * @param rows       rows to sort; sorted in place
+     * @param comparator defines the order
+     * @return the sorted rows
+     */
+    public static int[] mergeSort(int[] rows, RowComparator comparator) {
+        int n = rows.length;
+        for (int lo = 0; lo < n; lo += SMALL) insertionSort(rows, lo, Math.min(n, lo + SMALL), comparator);
+        if (n <= SMALL) return rows;
+
+        int[] from = rows, to = new int[n];
+        for (int width = SMALL; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(n, lo + width), hi = Math.min(n, lo + 2 * width);
+                if (mid == hi || comparator.compare(from[mid - 1], from[mid]) <= 0) {
+                    // Already in order
+                    System.arraycopy(from, lo, to, lo, hi - lo);
+                    continue;
+                }
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) to[k++] = comparator.compare(from[j], from[i]) < 0 ? from[j++] : from[i++];
+                while (i < mid) to[k++] = from[i++];
+                while (j < hi) to[k++] = from[j++];
+            }
+            int[] t = from;
+            from = to;
+            to = t;
+        }
+        if (from != rows) System.arraycopy(from, 0, rows, 0, n);
+        return rows;
+    }
+
+    /* LSD radix sort on the key bits that vary, carrying the keys with the rows so they are read sequentially */
+    private static int[] radixSort(int[] rows, long[] key) {
+        int n = rows.length;
+        long[] k = new long[n];
+        long min = MISSING, max = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            long v = key[rows[i]];
+            k[i] = v;
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        long span = max - min;                                  // Unsigned, as the range may exceed a signed long
+        if (span == 0) return rows;
+        for (int i = 0; i < n; i++) k[i] -= min;
+
+        int bits = 64 - Long.numberOfLeadingZeros(span);
+        int[] rowsOut = new int[n];
+        long[] keysOut = new long[n];
+        int[] counts = new int[1 << RADIX_BITS];
+        int mask = counts.length - 1;
+        for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) counts[(int) (k[i] >>> shift) & mask]++;
+            for (int d = 0, total = 0; d < counts.length; d++) {
+                int c = counts[d];
+                counts[d] = total;
+                total += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int at = counts[(int) (k[i] >>> shift) & mask]++;
+                rowsOut[at] = rows[i];
+                keysOut[at] = k[i];
+            }
+            int[] r = rows;
+            rows = rowsOut;
+            rowsOut = r;
+            long[] t = k;
+            k = keysOut;
+            keysOut = t;
+        }
+        return rows;
+    }
+
+    private static void insertionSort(int[] rows, int lo, int hi, RowComparator comparator) {
+        for (int i = lo + 1; i < hi; i++) {
+            int v = rows[i];
+            int j = i - 1;
+            while (j >= lo && comparator.compare(rows[j], v) > 0) {
+                rows[j + 1] = rows[j];
+                j--;
+            }
+            rows[j + 1] = v;
+        }
+    }
+
+    /* Doubles as longs in the same order; NaN sorts above everything else, as for Double.compare */
+    private static long sortable(double d) {
+        long bits = Double.doubleToLongBits(d);
+        return bits < 0 ? bits ^ Long.MAX_VALUE : bits;
+    }
+}
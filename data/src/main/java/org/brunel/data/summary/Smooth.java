@@ -19,17 +19,19 @@ package org.brunel.data.summary;
 import org.brunel.data.Field;
 import org.brunel.data.auto.Auto;
 
-import java.util.List;
-
 /**
- * Calculates a smooth fit function
+ * Calculates a smooth fit function.
+ * The fit at every data x value is found in one sweep of a sliding window over the sorted data, keeping running
+ * kernel sums so the whole smooth takes linear time. Values that are not data x values are evaluated directly.
  */
 public class Smooth extends Fit {
     private final double window;                              // Window width for the data
+    private final double[] fitted;                            // Fit at each x[i]
 
-    public Smooth(Field y, Field x, Double windowPercent, List<Integer> rows) {
-        super(y, x, rows);
+    public Smooth(Field y, Field x, Double windowPercent, int[] rows, int start, int end) {
+        super(y, x, rows, start, end);
         this.window = getWindowWidth(x, windowPercent);
+        this.fitted = fitAll();
     }
 
     private double getWindowWidth(Field x, Double windowPercent) {
@@ -54,7 +56,84 @@ public class Smooth extends Fit {
     public Object get(Object value) {
         Double at = vx(value);
         if (at == null) return null;
-        return reverseY(eval(at, this.window));
+        int i = find(at);
+        return reverseY(i < 0 ? eval(at, this.window) : fitted[i]);
+    }
+
+    /*
+        The Epanechnikov kernel weight is 0.75(1-d*d) for d = (x[i]-at)/h, and zero for |d| >= 1.
+        Writing u = (x[i]-c)/h and a = (at-c)/h for an anchor c, the weight is 0.75((1-a*a) + 2a*u - u*u), so the
+        weighted sums for any 'at' follow from sums of 1, u, u*u, y, u*y and u*u*y over the points in the window.
+        Those are updated as points enter and leave the window. So that rounding does not build up, the sums are
+        recalculated with a new anchor each time the window has moved past all the points of the last calculation;
+        every point is in at most one of those recalculations, so the total work is linear.
+     */
+    private double[] fitAll() {
+        int n = x.length;
+        double[] result = new double[n];
+        double h = window;
+        if (!(h > 0)) {
+            // No usable window; every value is the mean
+            for (int i = 0; i < n; i++) result[i] = my;
+            return result;
+        }
+
+        double[] sums = new double[6];                          // Sums of 1, u, uu, y, uy, uuy in the window
+        double c = 0;                                           // Anchor for u
+        int low = 0, high = 0;                                  // The window holds points low ... high-1
+        int anchoredHigh = 0;                                   // Window end when the sums were last recalculated
+        for (int i = 0; i < n; i++) {
+            double at = x[i];
+            if (i > 0 && at == x[i - 1]) {
+                result[i] = result[i - 1];
+                continue;
+            }
+            if (at != at) {
+                // NaN values are sorted last, and have no defined fit
+                result[i] = my;
+                continue;
+            }
+            while (high < n && x[high] < at + h) accumulate(sums, high++, c, h, 1);
+            while (x[low] <= at - h) accumulate(sums, low++, c, h, -1);
+            if (low >= anchoredHigh) {
+                c = at;
+                for (int j = 0; j < 6; j++) sums[j] = 0;
+                for (int j = low; j < high; j++) accumulate(sums, j, c, h, 1);
+                anchoredHigh = high;
+            }
+
+            double a = (at - c) / h;
+            double b = 1 - a * a;
+            double sw = b * sums[0] + 2 * a * sums[1] - sums[2];
+            double sy = b * sums[3] + 2 * a * sums[4] - sums[5];
+            result[i] = sy / sw;                                // The point at 'at' has full weight, so sw > 0
+        }
+        return result;
+    }
+
+    // Add (sign = 1) or remove (sign = -1) point i from the window sums
+    private void accumulate(double[] sums, int i, double c, double h, int sign) {
+        double u = (x[i] - c) / h;
+        double v = y[i] * sign;
+        sums[0] += sign;
+        sums[1] += u * sign;
+        sums[2] += u * u * sign;
+        sums[3] += v;
+        sums[4] += u * v;
+        sums[5] += u * u * v;
+    }
+
+    // The index of the value in the sorted x values, or -1 if it is not one of them
+    private int find(double at) {
+        int p = 0;
+        int q = x.length - 1;
+        while (p <= q) {
+            int t = (p + q) >> 1;
+            if (x[t] < at) p = t + 1;
+            else if (x[t] > at) q = t - 1;
+            else return t;
+        }
+        return -1;
     }
 
     private double eval(double at, double h) {
@@ -20,32 +20,47 @@ import org.brunel.data.Field;
 import org.brunel.data.Fields;
 import org.brunel.data.util.ItemsList;
 import org.brunel.data.util.Range;
-
-import java.util.ArrayList;
-import java.util.List;
+import org.brunel.data.values.NumericProvider;
 
 public final class SummaryValues {
     private final Field[] fields;                                   // the fields we use
     private final Field[] xFields;                                  // the fields to use as 'X' values
-    public final List<Integer> rows = new ArrayList<>();     // Which data rows have been aggregated into this
-    private final ArrayList<Field> groupFields;                     // Fields that group results
+    private final int[] rows;                                       // Data rows (shared; ours are from start to end)
+    private final int start, end;                                   // Range of 'rows' aggregated into this
+    private final int fitGroup;                                     // Group of rows used for fits
+    private final int[] fitRows, fitOffsets;                        // Rows for each fit group (shared)
     public double[] percentSums;
 
-    public SummaryValues(Field[] fields, Field[] xFields, Field[] allDimensions) {
+    /**
+     * Define the values for one summary group
+     *
+     * @param fields     the fields we use
+     * @param xFields    the fields to use as 'X' values
+     * @param rows       data rows, ordered by summary group
+     * @param start      start of this group's rows
+     * @param end        end of this group's rows (exclusive)
+     * @param fitGroup   the group of rows that share all dimensions except the 'X' fields
+     * @param fitRows    data rows, ordered by fit group (may be null if no fits are needed)
+     * @param fitOffsets fit group g has fitRows[fitOffsets[g]] ... fitRows[fitOffsets[g+1]-1]
+     */
+    public SummaryValues(Field[] fields, Field[] xFields, int[] rows, int start, int end,
+                         int fitGroup, int[] fitRows, int[] fitOffsets) {
         this.fields = fields;
         this.xFields = xFields;
-
-        // Create an array of fields that group the results
-        this.groupFields = new ArrayList<>();
-        for (Field f : allDimensions) {
-            boolean isGroup = true;
-            for (Field x : xFields) if (x == f) isGroup = false;
-            if (isGroup) groupFields.add(f);
-        }
+        this.rows = rows;
+        this.start = start;
+        this.end = end;
+        this.fitGroup = fitGroup;
+        this.fitRows = fitRows;
+        this.fitOffsets = fitOffsets;
     }
 
     public int firstRow() {
-        return rows.get(0);
+        return rows[start];
+    }
+
+    public int rowCount() {
+        return end - start;
     }
 
     /**
@@ -57,34 +72,32 @@ public final class SummaryValues {
      */
     public Object get(int fieldIndex, MeasureField m) {
         String summary = m.method;
-        if (summary.equals("count")) return rows.size();
+        if (summary.equals("count")) return rowCount();
         Field x = xFields.length == 0 ? null : xFields[xFields.length - 1];   // Innermost is the one
-        int index = rows.get(0);
+        int index = rows[start];
 
         if (summary.equals("fit")) {
-            Fit fit = m.getFit(groupFields, index);
-            if (fit == null) fit = new Regression(m.field, x, validForGroup(index));
-            m.setFit(groupFields, index, fit);
+            Fit fit = m.getFit(fitGroup);
+            if (fit == null) {
+                fit = new Regression(m.field, x, fitRows, fitOffsets[fitGroup], fitOffsets[fitGroup + 1]);
+                m.setFit(fitGroup, fit);
+            }
             return fit.get(x.value(index));
         }
 
         if (summary.equals("smooth")) {
-            Fit fit = m.getFit(groupFields, index);
+            Fit fit = m.getFit(fitGroup);
             if (fit == null) {
                 Double windowPercent = null;
                 if (m.option != null)
                     windowPercent = Double.parseDouble(m.option);
-                fit = new Smooth(m.field, x, windowPercent, validForGroup(index));
+                fit = new Smooth(m.field, x, windowPercent, fitRows, fitOffsets[fitGroup], fitOffsets[fitGroup + 1]);
+                m.setFit(fitGroup, fit);
             }
-            m.setFit(groupFields, index, fit);
-            return fit.get(x.value(rows.get(0)));
+            return fit.get(x.value(index));
         }
 
-        Object[] data = new Object[rows.size()];
-        for (int i = 0; i < data.length; i++)
-            data[i] = fields[fieldIndex].value(rows.get(i));
-
-        Field f = Fields.makeColumnField("temp", null, data);
+        Field f = makeGroupField(fields[fieldIndex]);
 
         Double mean = f.numProperty("mean");
         if (summary.equals("percent")) {
@@ -116,19 +129,23 @@ public final class SummaryValues {
         return f.property(summary);
     }
 
-    protected Object makeRange(MeasureField m, Field f, String a, String b) {
-        return Range.make(f.numProperty(a), f.numProperty(b), m.getDateFormat());
+    // A field containing only the rows for this group
+    private Field makeGroupField(Field field) {
+        NumericProvider numeric = field.numericProvider();
+        if (numeric != null) {
+            // Copy the primitive values directly
+            int[] order = new int[rowCount()];
+            for (int i = 0; i < order.length; i++) order[i] = rows[start + i];
+            return new Field("temp", null, numeric.permute(order));
+        }
+        Object[] data = new Object[rowCount()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = field.value(rows[start + i]);
+        return Fields.makeColumnField("temp", null, data);
     }
 
-    private List<Integer> validForGroup(int index) {
-        ArrayList<Integer> list = new ArrayList<>();
-        int n = fields[0].rowCount();
-        for (int i = 0; i < n; i++) {
-            boolean valid = true;
-            for (Field f : groupFields) if (f.compareRows(index, i) != 0) valid = false;
-            if (valid) list.add(i);
-        }
-        return list;
+    protected Object makeRange(MeasureField m, Field f, String a, String b) {
+        return Range.make(f.numProperty(a), f.numProperty(b), m.getDateFormat());
     }
 
 }
@@ -19,11 +19,11 @@ package org.brunel.data.util;
 import org.brunel.data.Data;
 import org.brunel.translator.JSTranslation;
 
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -32,22 +32,31 @@ import java.util.TimeZone;
 @JSTranslation(ignore = true)
 public class Dates {
 
-    // Keep 100 known mappings
+    // Keep 1000 known mappings for text the scanner does not recognize
     private static final Map<String, Date> parsed = new LinkedHashMap<String, Date>() {
         protected boolean removeEldestEntry(Map.Entry<String, Date> eldest) {
             return size() > 1000;
         }
     };
 
-    private static final List<SimpleDateFormat> dateFormats;
-    private static final SimpleDateFormat[] outputFormats;
+    // Date formats are not thread-safe, so each thread has its own copies
+    private static final ThreadLocal<SimpleDateFormat[]> dateFormats = new ThreadLocal<SimpleDateFormat[]>() {
+        protected SimpleDateFormat[] initialValue() {
+            return makeDateFormats();
+        }
+    };
+    private static final ThreadLocal<SimpleDateFormat[]> outputFormats = new ThreadLocal<SimpleDateFormat[]>() {
+        protected SimpleDateFormat[] initialValue() {
+            return makeOutputFormats();
+        }
+    };
 
     public static Object getPattern(DateFormat dateFormat) {
-        return outputFormats[dateFormat.ordinal()].toPattern();
+        return outputFormats.get()[dateFormat.ordinal()].toPattern();
     }
 
     public static String format(Date date, DateFormat dateFormat) {
-        return outputFormats[dateFormat.ordinal()].format(date);
+        return outputFormats.get()[dateFormat.ordinal()].format(date);
     }
 
     public static Date parse(Object c) {
@@ -55,22 +64,135 @@ public class Dates {
         if (c instanceof Number) return new Date(Math.round(((Number) c).doubleValue() * Data.MILLIS_PER_DAY));
         String s = c.toString().trim();
         if (s.isEmpty()) return null;
-        if (parsed.containsKey(s)) return parsed.get(s);
-
-        Date result = null;
-        for (SimpleDateFormat f : dateFormats)
-            try {
-                result = f.parse(s);
-                break;
-            } catch (ParseException ignored) {
-                // Unsuccessful; keep trying
-            }
-        parsed.put(s, result);
+
+        // Common ISO and US forms are recognized directly; every format needs a digit somewhere
+        Date result = scan(s);
+        if (result != null || !hasDigit(s)) return result;
+
+        synchronized (parsed) {
+            if (parsed.containsKey(s)) return parsed.get(s);
+        }
+
+        result = parseWithFormats(s);
+        synchronized (parsed) {
+            parsed.put(s, result);
+        }
         return result;
     }
 
-    static {
-        outputFormats = new SimpleDateFormat[]{
+    /* Use the first format that matches, without the cost of an exception for each that does not */
+    static Date parseWithFormats(String s) {
+        ParsePosition position = new ParsePosition(0);
+        for (SimpleDateFormat f : dateFormats.get()) {
+            position.setIndex(0);
+            Date result = f.parse(s, position);
+            if (result != null) return result;
+        }
+        return null;
+    }
+
+    /*
+     * Recognizes y-M-d (optionally followed by 'T' and H:m, H:m:s or H:m:s.SSS, or by a space and H:m:s),
+     * and M/d/y (optionally followed by a space and H:m or H:m:s), with a four digit year and every field
+     * in its usual range. These give the same result as the first of the date formats to match them;
+     * anything else returns null so the formats can decide.
+     */
+    private static Date scan(String s) {
+        int n = s.length();
+        int[] f = new int[7];                   // year, month, day, hour, minute, second, millisecond
+        int i;
+        boolean iso = n > 4 && s.charAt(4) == '-';
+        if (iso) {
+            i = number(s, 0, 4, 4, f, 0);
+            if (i < 0 || !at(s, i, '-')) return null;
+            i = number(s, i + 1, 1, 2, f, 1);
+            if (i < 0 || !at(s, i, '-')) return null;
+            i = number(s, i + 1, 1, 2, f, 2);
+        } else {
+            i = number(s, 0, 1, 2, f, 1);
+            if (i < 0 || !at(s, i, '/')) return null;
+            i = number(s, i + 1, 1, 2, f, 2);
+            if (i < 0 || !at(s, i, '/')) return null;
+            i = number(s, i + 1, 4, 4, f, 0);
+        }
+        if (i < 0) return null;
+
+        if (i < n) {
+            // A time part
+            char sep = s.charAt(i);
+            boolean isoT = iso && sep == 'T';
+            if (sep != ' ' && !isoT) return null;
+            i = number(s, i + 1, 1, 2, f, 3);
+            if (i < 0 || !at(s, i, ':')) return null;
+            i = number(s, i + 1, 1, 2, f, 4);
+            if (i < 0) return null;
+            if (i == n) {
+                // No seconds; y-M-d H:m is read by a format that ignores the time
+                if (iso && !isoT) return null;
+            } else {
+                if (!at(s, i, ':')) return null;
+                i = number(s, i + 1, 1, 2, f, 5);
+                if (i < 0) return null;
+                if (i < n) {
+                    // Fractions of a second are read as a count of milliseconds, and only after a 'T'
+                    if (!isoT || !at(s, i, '.')) return null;
+                    i = number(s, i + 1, 1, 3, f, 6);
+                    if (i != n) return null;
+                }
+            }
+        }
+
+        // Out of range values are rolled over by the lenient formats; leave those to them
+        int year = f[0], month = f[1], day = f[2];
+        if (year < 1600 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) return null;
+        if (f[3] > 23 || f[4] > 59 || f[5] > 59) return null;
+
+        long millis = daysFromCivil(year, month, day) * 86400000L
+                + ((f[3] * 60L + f[4]) * 60L + f[5]) * 1000L + f[6];
+        return new Date(millis);
+    }
+
+    /* Reads between min and max digits into f[index]; returns the index after them, or -1 */
+    private static int number(String s, int start, int min, int max, int[] f, int index) {
+        int v = 0, i = start;
+        while (i < s.length() && i - start < max) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') break;
+            v = v * 10 + (c - '0');
+            i++;
+        }
+        if (i - start < min) return -1;
+        if (i < s.length() && i - start == max && Character.isDigit(s.charAt(i))) return -1;
+        f[index] = v;
+        return i;
+    }
+
+    private static boolean at(String s, int i, char c) {
+        return i < s.length() && s.charAt(i) == c;
+    }
+
+    private static boolean hasDigit(String s) {
+        for (int i = 0; i < s.length(); i++) if (Character.isDigit(s.charAt(i))) return true;
+        return false;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /* Days since 1970-01-01 in the proleptic Gregorian calendar */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static SimpleDateFormat[] makeOutputFormats() {
+        SimpleDateFormat[] formats = new SimpleDateFormat[]{
                 new SimpleDateFormat("HH:mm:ss"),            // seconds
                 new SimpleDateFormat("HH:mm"),                // hours and minutes
                 new SimpleDateFormat("MMM d HH:mm"),        // day and hour
@@ -78,8 +200,13 @@ public class Dates {
                 new SimpleDateFormat("MMM yyyy"),            // months
                 new SimpleDateFormat("yyyy")                // years
         };
+        for (SimpleDateFormat df : formats)
+            df.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return formats;
+    }
 
-        dateFormats = new LinkedList<>();
+    private static SimpleDateFormat[] makeDateFormats() {
+        List<SimpleDateFormat> dateFormats = new ArrayList<>();
         dateFormats.add(new SimpleDateFormat("y-M-d'T'H:m:s.SSS", Locale.US));
         dateFormats.add(new SimpleDateFormat("y-M-d'T'H:m:s", Locale.US));
         dateFormats.add(new SimpleDateFormat("y-M-d'T'H:m", Locale.US));
@@ -106,11 +233,9 @@ public class Dates {
         dateFormats.add(new SimpleDateFormat("H:m:s", Locale.US));
         dateFormats.add(new SimpleDateFormat("H:m", Locale.US));
 
-        for (SimpleDateFormat df : outputFormats)
-            df.setTimeZone(TimeZone.getTimeZone("UTC"));
-
         for (SimpleDateFormat format : dateFormats)
             format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormats.toArray(new SimpleDateFormat[dateFormats.size()]);
     }
 
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.util;
+
+import org.brunel.translator.JSTranslation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Pools for parallel work, shared by everything using the same number of threads
+ */
+@JSTranslation(ignore = true)
+public class ForkJoinPools {
+
+    private static final Map<Integer, ForkJoinPool> POOLS = new HashMap<>();
+
+    public static synchronized ForkJoinPool get(int parallelism) {
+        ForkJoinPool pool = POOLS.get(parallelism);
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+            POOLS.put(parallelism, pool);
+        }
+        return pool;
+    }
+}
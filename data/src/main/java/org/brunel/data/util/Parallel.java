@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.util;
+
+import org.brunel.translator.JSTranslation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decides how to divide work over rows into chunks that can run at the same time.
+ * Operations are only divided when they are called from inside a ForkJoinPool, which is how a
+ * parallel build is requested; otherwise (and always in Javascript) there is a single chunk.
+ * Each chunk must write only its own part of the results, so the output does not depend on the chunking.
+ */
+public class Parallel {
+
+    private static final int MIN_CHUNK = 8192;          // Smaller chunks are not worth a task
+
+    /**
+     * The number of chunks to divide the work into
+     *
+     * @param n number of items (rows or groups) to process
+     * @return number of chunks; 1 means run serially
+     */
+    @JSTranslation(js = "return 1;")
+    public static int chunkCount(int n) {
+        if (n < 2 * MIN_CHUNK || !ForkJoinTask.inForkJoinPool()) return 1;
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        return Math.min(pool.getParallelism() * 4, n / MIN_CHUNK);
+    }
+
+    /**
+     * The first item of a chunk; chunk i covers chunkStart(i) up to, but not including, chunkStart(i+1)
+     *
+     * @param chunk      chunk index (chunkCount for the end of the last one)
+     * @param chunkCount number of chunks
+     * @param n          number of items
+     * @return start index
+     */
+    public static int chunkStart(int chunk, int chunkCount, int n) {
+        return (int) Math.floor((double) n * chunk / chunkCount);
+    }
+
+    /**
+     * Run the tasks in the current pool and wait for them all to complete
+     *
+     * @param tasks work to run
+     */
+    @JSTranslation(ignore = true)
+    public static void runAll(final Runnable[] tasks) {
+        RecursiveAction[] actions = new RecursiveAction[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            final Runnable task = tasks[i];
+            actions[i] = new RecursiveAction() {
+                protected void compute() {
+                    task.run();
+                }
+            };
+        }
+        ForkJoinTask.invokeAll(actions);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.util;
+
+import org.brunel.data.Data;
+import org.brunel.data.values.NumericProvider;
+
+/**
+ * Finds items by their rank without sorting all the data.
+ * A bounded heap is used when only the few largest items are needed; otherwise quickselect
+ * places a single item in its sorted position in linear time.
+ * Numbers are ordered as Data.compare orders them, so NaN is the largest and -0.0 is below 0.0.
+ */
+public class Selection {
+
+    /**
+     * Find the rows holding the largest values
+     *
+     * @param values provider to search; missing rows are ignored
+     * @param k      number of rows wanted
+     * @return up to k rows, in descending order of value
+     */
+    public static int[] largestRows(NumericProvider values, int k) {
+        // Min-heap of the largest values seen so far, so the root is the one to replace
+        double[] keys = new double[k];
+        int[] rows = new int[k];
+        int size = 0;
+        int n = values.count();
+        for (int i = 0; i < n; i++) {
+            if (values.isMissing(i)) continue;
+            double v = values.doubleValue(i);
+            if (size < k) {
+                int j = size++;
+                while (j > 0) {
+                    int parent = (j - 1) >> 1;
+                    if (Data.compareNumbers(keys[parent], v) <= 0) break;
+                    keys[j] = keys[parent];
+                    rows[j] = rows[parent];
+                    j = parent;
+                }
+                keys[j] = v;
+                rows[j] = i;
+            } else if (k > 0 && Data.compareNumbers(v, keys[0]) > 0) {
+                siftDown(keys, rows, size, v, i);
+            }
+        }
+
+        // Remove the smallest repeatedly, filling the result from the end
+        int[] result = new int[size];
+        while (size > 0) {
+            result[--size] = rows[0];
+            if (size > 0) siftDown(keys, rows, size, keys[size], rows[size]);
+        }
+        return result;
+    }
+
+    /**
+     * Reorder so the item at position k is the one that would be there if the range were sorted ascending,
+     * with no larger items before it and no smaller ones after it. The rows are moved along with their keys.
+     *
+     * @param keys values to select by
+     * @param rows row for each key
+     * @param from first index of the range to use
+     * @param to   index after the end of the range
+     * @param k    position wanted, within the range
+     */
+    public static void select(double[] keys, int[] rows, int from, int to, int k) {
+        int low = from, high = to - 1;
+        while (high > low) {
+            double a = keys[low], b = keys[(low + high) >> 1], c = keys[high];
+            double pivot;
+            if (Data.compareNumbers(a, b) < 0)
+                pivot = Data.compareNumbers(b, c) < 0 ? b : (Data.compareNumbers(a, c) < 0 ? c : a);
+            else
+                pivot = Data.compareNumbers(a, c) < 0 ? a : (Data.compareNumbers(b, c) < 0 ? c : b);
+            int i = low, j = high;
+            while (i <= j) {
+                while (Data.compareNumbers(keys[i], pivot) < 0) i++;
+                while (Data.compareNumbers(keys[j], pivot) > 0) j--;
+                if (i <= j) {
+                    double t = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = t;
+                    int r = rows[i];
+                    rows[i] = rows[j];
+                    rows[j] = r;
+                    i++;
+                    j--;
+                }
+            }
+            // Items between j and i equal the pivot, so if k is there we are done
+            if (k <= j) high = j;
+            else if (k >= i) low = i;
+            else return;
+        }
+    }
+
+    /**
+     * Reorder so the item at position k is the one that would be there if the range were sorted
+     * using Data.compare, with no larger items before it and no smaller ones after it.
+     *
+     * @param data items to reorder
+     * @param from first index of the range to use
+     * @param to   index after the end of the range
+     * @param k    position wanted, within the range
+     */
+    public static void selectObjects(Object[] data, int from, int to, int k) {
+        int low = from, high = to - 1;
+        while (high > low) {
+            Object a = data[low], b = data[(low + high) >> 1], c = data[high];
+            Object pivot;
+            if (Data.compare(a, b) < 0)
+                pivot = Data.compare(b, c) < 0 ? b : (Data.compare(a, c) < 0 ? c : a);
+            else
+                pivot = Data.compare(a, c) < 0 ? a : (Data.compare(b, c) < 0 ? c : b);
+            int i = low, j = high;
+            while (i <= j) {
+                while (Data.compare(data[i], pivot) < 0) i++;
+                while (Data.compare(data[j], pivot) > 0) j--;
+                if (i <= j) {
+                    Object t = data[i];
+                    data[i] = data[j];
+                    data[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) high = j;
+            else if (k >= i) low = i;
+            else return;
+        }
+    }
+
+    /* Place the key and row at the root of the min-heap and move it down to where it belongs */
+    private static void siftDown(double[] keys, int[] rows, int size, double v, int row) {
+        int j = 0;
+        while (true) {
+            int child = 2 * j + 1;
+            if (child >= size) break;
+            if (child + 1 < size && Data.compareNumbers(keys[child + 1], keys[child]) < 0) child++;
+            if (Data.compareNumbers(keys[child], v) >= 0) break;
+            keys[j] = keys[child];
+            rows[j] = rows[child];
+            j = child;
+        }
+        keys[j] = v;
+        rows[j] = row;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.values;
+
+import org.brunel.data.util.MapInt;
+
+/**
+ * The rank of each dictionary code in a category order.
+ * All fields are final, so an instance may be shared between threads without locking; a thread that sees the
+ * instance also sees its completed ranks.
+ */
+final class CategoryRanks {
+    final MapInt order;                                 // The category order the ranks were made for
+    final int[] ranks;                                  // Category order rank for each code
+
+    CategoryRanks(MapInt order, Object[] dictionary) {
+        this.order = order;
+        int[] r = new int[dictionary.length];
+        for (int i = 0; i < r.length; i++) r[i] = order.get(dictionary[i]);
+        this.ranks = r;
+    }
+}
@@ -18,7 +18,9 @@ package org.brunel.data.values;
 
 import org.brunel.data.Data;
 import org.brunel.data.util.MapInt;
+import org.brunel.translator.JSTranslation;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -26,6 +28,37 @@ import java.util.Set;
 
 public class ColumnProvider implements Provider {
 
+    /**
+     * Create the most compact provider for the data.
+     * Columns of doubles or dates are stored in primitive form, and columns of repeated strings are
+     * dictionary encoded; all others use a column of objects
+     *
+     * @param column data to store
+     * @return provider for the data
+     */
+    @JSTranslation(js = "return new $$CLASS$$(column);")
+    public static Provider make(Object[] column) {
+        boolean allDoubles = true, allDates = true, allStrings = true;
+        int valid = 0;
+        for (Object o : column) {
+            if (o == null) continue;
+            valid++;
+            if (o.getClass() != Double.class) allDoubles = false;
+            if (o.getClass() != Date.class) allDates = false;
+            if (o.getClass() != String.class) allStrings = false;
+            if (!allDoubles && !allDates && !allStrings) break;
+        }
+        if (valid == 0) return new ColumnProvider(column);
+        if (allDoubles) return DoubleColumnProvider.fromObjects(column);
+        if (allDates) return LongDateColumnProvider.fromObjects(column);
+        if (allStrings) {
+            // Codes only save space when values repeat; mostly unique strings are better left as they are
+            DictionaryColumnProvider dictionary = DictionaryColumnProvider.fromObjects(column);
+            if (dictionary.dictionary().length * 2 <= valid) return dictionary;
+        }
+        return new ColumnProvider(column);
+    }
+
     public static Provider copy(Provider base) {
         Object[] data = new Object[base.count()];
         for (int i = 0; i < data.length; i++) data[i] = base.value(i);
@@ -33,17 +66,20 @@ public class ColumnProvider implements Provider {
     }
 
     private final Object[] column;
+    private int size;                                   // Expected memory use, or -1 if it must be recalculated
 
     public ColumnProvider(Object[] column) {
         // Use a common store so common copies are not duplicated
         Map<Object, Object> common = new HashMap<>();
         this.column = new Object[column.length];
+        size = 24 + 4 * column.length;
         for (int i = 0; i < column.length; i++) {
             Object value = column[i];
             Object stored = common.get(value);
             if (stored == null) {
                 common.put(value, value);
                 this.column[i] = value;
+                size += sizeOf(value);
             } else {
                 this.column[i] = stored;
             }
@@ -55,25 +91,32 @@ public class ColumnProvider implements Provider {
     }
 
     public int expectedSize() {
-        Set<Object> seen = new HashSet<>();
-        int total = 24 + 4 * column.length;
-        for (Object c : column) {
-            if (c == null) continue;
-            if (seen.add(c)) {
-                if (c instanceof String)
-                    total += (42 + ((String) c).length() * 2);
-                else
-                    total += 16;
-            }
-        }
-        return total;
+        if (size < 0) size = calculateSize();
+        return size;
     }
 
     public Provider setValue(Object o, int index) {
+        // Values may be shared between rows, so the size is only known again after counting distinct values
+        if (o != column[index]) size = -1;
         column[index] = o;
         return this;
     }
 
+    private int calculateSize() {
+        Set<Object> seen = new HashSet<>();
+        int total = 24 + 4 * column.length;
+        for (Object c : column)
+            if (c != null && seen.add(c)) total += sizeOf(c);
+        return total;
+    }
+
+    /* Memory used by a distinct value */
+    private static int sizeOf(Object o) {
+        if (o == null) return 0;
+        if (o instanceof String) return 42 + ((String) o).length() * 2;
+        return 16;
+    }
+
     public int compareRows(int a, int b, MapInt categoryOrder) {
         // Use the defined order if given
         Object p = column[a];
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.data.Data;
+import org.brunel.data.util.MapInt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores a categorical column as integer codes into a sorted dictionary of the distinct values.
+ * Because the dictionary is sorted, comparing codes is the same as comparing the values.
+ * Codes are held in the smallest integer type that fits the dictionary; -1 means missing
+ */
+public class DictionaryColumnProvider implements Provider {
+
+    /**
+     * Build from objects, which must all be null or mutually comparable values
+     *
+     * @param column source data
+     * @return provider holding the data
+     */
+    public static DictionaryColumnProvider fromObjects(Object[] column) {
+        Map<Object, Integer> index = new HashMap<>();
+        for (Object o : column)
+            if (o != null && !index.containsKey(o)) index.put(o, index.size());
+
+        // Sort the distinct values, then map from their index in the hash to their sorted position
+        Object[] dictionary = new Object[index.size()];
+        for (Map.Entry<Object, Integer> e : index.entrySet()) dictionary[e.getValue()] = e.getKey();
+        Data.sort(dictionary);
+        for (int i = 0; i < dictionary.length; i++) index.put(dictionary[i], i);
+
+        DictionaryColumnProvider result = new DictionaryColumnProvider(dictionary, column.length);
+        for (int i = 0; i < column.length; i++)
+            result.setCode(i, column[i] == null ? -1 : index.get(column[i]));
+        return result;
+    }
+
+    /**
+     * Build from codes assigned in any order, such as the order values were first seen while reading
+     *
+     * @param values distinct values; the code for a value is its index in this array
+     * @param codes  code for each row, -1 for missing (may be longer than needed)
+     * @param n      number of rows
+     * @return provider holding the data, with the dictionary sorted
+     */
+    public static DictionaryColumnProvider fromCodes(Object[] values, int[] codes, int n) {
+        Object[] dictionary = new Object[values.length];
+        for (int i = 0; i < values.length; i++) dictionary[i] = values[i];
+        Data.sort(dictionary);
+
+        // Map from the original codes to sorted ones
+        Map<Object, Integer> sorted = new HashMap<>();
+        for (int i = 0; i < dictionary.length; i++) sorted.put(dictionary[i], i);
+        int[] remap = new int[values.length];
+        for (int i = 0; i < values.length; i++) remap[i] = sorted.get(values[i]);
+
+        DictionaryColumnProvider result = new DictionaryColumnProvider(dictionary, n);
+        for (int i = 0; i < n; i++) result.setCode(i, codes[i] < 0 ? -1 : remap[codes[i]]);
+        return result;
+    }
+
+    private final Object[] dictionary;                  // Sorted distinct values
+    private final byte[] byteCodes;                     // Used when the dictionary is small
+    private final short[] shortCodes;                   // Used for a medium-sized dictionary
+    private final int[] intCodes;                       // Used for large dictionaries
+    private CategoryRanks ranks;                        // Ranks for the last category order used
+
+    private DictionaryColumnProvider(Object[] dictionary, int n) {
+        this.dictionary = dictionary;
+        if (dictionary.length < 128) {
+            byteCodes = new byte[n];
+            shortCodes = null;
+            intCodes = null;
+        } else if (dictionary.length < 32768) {
+            byteCodes = null;
+            shortCodes = new short[n];
+            intCodes = null;
+        } else {
+            byteCodes = null;
+            shortCodes = null;
+            intCodes = new int[n];
+        }
+    }
+
+    /**
+     * The code for a row
+     *
+     * @param index row to access
+     * @return index into the dictionary, or -1 if missing
+     */
+    public int code(int index) {
+        if (byteCodes != null) return byteCodes[index];
+        if (shortCodes != null) return shortCodes[index];
+        return intCodes[index];
+    }
+
+    /**
+     * Find the code used for a value
+     *
+     * @param o value to look for
+     * @return index into the dictionary, or -1 if it is not present
+     */
+    public int codeOf(Object o) {
+        if (o == null) return -1;
+        int low = 0;
+        int high = dictionary.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >> 1;
+            int c = Data.compare(dictionary[mid], o);
+            if (c < 0) low = mid + 1;
+            else if (c > 0) high = mid - 1;
+            else return dictionary[mid].equals(o) ? mid : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Count how many rows use each code
+     *
+     * @return array of counts, indexed by code
+     */
+    public int[] codeCounts() {
+        int[] counts = new int[dictionary.length];
+        int n = count();
+        for (int i = 0; i < n; i++) {
+            int c = code(i);
+            if (c >= 0) counts[c]++;
+        }
+        return counts;
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        int p = code(a);
+        int q = code(b);
+        if (p == q) return 0;
+        if (p < 0) return 1;
+        if (q < 0) return -1;
+        if (categoryOrder == null || categoryOrder.isEmpty()) return p - q;
+        int[] r = ranksFor(categoryOrder);
+        return r[p] - r[q];
+    }
+
+    public int count() {
+        if (byteCodes != null) return byteCodes.length;
+        if (shortCodes != null) return shortCodes.length;
+        return intCodes.length;
+    }
+
+    /**
+     * The distinct values, sorted
+     *
+     * @return the dictionary (not a copy, so must not be modified)
+     */
+    public Object[] dictionary() {
+        return dictionary;
+    }
+
+    public int expectedSize() {
+        int n = count();
+        int total = 24 + 24 + 4 * dictionary.length;
+        if (byteCodes != null) total += n;
+        else if (shortCodes != null) total += 2 * n;
+        else total += 4 * n;
+        for (Object c : dictionary) {
+            if (c instanceof String)
+                total += (42 + ((String) c).length() * 2);
+            else
+                total += 16;
+        }
+        return total;
+    }
+
+    /**
+     * Create a provider with the rows in the given order, sharing this dictionary
+     *
+     * @param order rows of this provider to use (may contain duplicates or omit rows)
+     * @return new provider
+     */
+    public DictionaryColumnProvider permute(int[] order) {
+        DictionaryColumnProvider result = new DictionaryColumnProvider(dictionary, order.length);
+        for (int i = 0; i < order.length; i++) result.setCode(i, code(order[i]));
+        return result;
+    }
+
+    public Provider setValue(Object o, int index) {
+        int c = codeOf(o);
+        if (o != null && c < 0) return ColumnProvider.copy(this).setValue(o, index);
+        setCode(index, c);
+        return this;
+    }
+
+    public Object value(int index) {
+        int c = code(index);
+        return c < 0 ? null : dictionary[c];
+    }
+
+    private void setCode(int index, int c) {
+        if (byteCodes != null) byteCodes[index] = (byte) c;
+        else if (shortCodes != null) shortCodes[index] = (short) c;
+        else intCodes[index] = c;
+    }
+
+    // Converts the category order into a lookup by code, so comparisons need no hashing
+    // The ranks are read once into a local and replaced whole, so threads sharing this provider never see them part-built
+    private int[] ranksFor(MapInt categoryOrder) {
+        CategoryRanks r = ranks;
+        if (r == null || r.order != categoryOrder) {
+            r = new CategoryRanks(categoryOrder, dictionary);
+            ranks = r;
+        }
+        return r.ranks;
+    }
+}
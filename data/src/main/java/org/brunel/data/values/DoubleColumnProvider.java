@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+/**
+ * Stores a column of numbers as primitive doubles
+ */
+public class DoubleColumnProvider extends NumericProvider {
+
+    /**
+     * Build from objects, which must all be null or numbers; NaN values are stored as missing, as in fromValues
+     *
+     * @param column source data
+     * @return provider holding the data
+     */
+    public static DoubleColumnProvider fromObjects(Object[] column) {
+        double[] values = new double[column.length];
+        int[] validBits = makeValidBits(column.length);
+        for (int i = 0; i < column.length; i++) {
+            if (column[i] != null) {
+                values[i] = ((Number) column[i]).doubleValue();
+                if (!Double.isNaN(values[i])) setValid(validBits, i, true);
+            }
+        }
+        return new DoubleColumnProvider(values, validBits);
+    }
+
+    /**
+     * Build directly from values; NaN values are stored as missing
+     *
+     * @param values data to use (not copied)
+     * @return provider holding the data
+     */
+    public static DoubleColumnProvider fromValues(double[] values) {
+        int[] validBits = makeValidBits(values.length);
+        for (int i = 0; i < values.length; i++)
+            if (!Double.isNaN(values[i])) setValid(validBits, i, true);
+        return new DoubleColumnProvider(values, validBits);
+    }
+
+    /**
+     * Build directly from values and a bitmap of the rows that have values
+     *
+     * @param values    data to use (not copied)
+     * @param validBits bit set for each row with a value, 32 rows to an int (not copied)
+     * @return provider holding the data
+     */
+    public static DoubleColumnProvider fromValidBits(double[] values, int[] validBits) {
+        return new DoubleColumnProvider(values, validBits);
+    }
+
+    private final double[] values;
+
+    DoubleColumnProvider(double[] values, int[] validBits) {
+        super(validBits);
+        this.values = values;
+    }
+
+    public int count() {
+        return values.length;
+    }
+
+    public double doubleValue(int index) {
+        return isMissing(index) ? Double.NaN : values[index];
+    }
+
+    public int expectedSize() {
+        return 24 + 24 + 8 * values.length + validBitsSize();
+    }
+
+    public NumericProvider permute(int[] order) {
+        double[] result = new double[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = values[order[i]];
+        return new DoubleColumnProvider(result, permuteValidBits(order));
+    }
+
+    public Provider setValue(Object o, int index) {
+        if (o == null) {
+            setValid(validBits, index, false);
+            return this;
+        }
+        if (o instanceof Double) {
+            values[index] = (Double) o;
+            setValid(validBits, index, !Double.isNaN(values[index]));
+            return this;
+        }
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    public Object value(int index) {
+        return isMissing(index) ? null : values[index];
+    }
+
+    int comparePresent(int a, int b) {
+        double p = values[a];
+        double q = values[b];
+        if (p < q) return -1;
+        if (p > q) return 1;
+        // Equal, or NaN is involved; NaN sorts high as it does for Double.compare
+        boolean pNaN = Double.isNaN(p), qNaN = Double.isNaN(q);
+        return pNaN == qNaN ? 0 : (pNaN ? 1 : -1);
+    }
+}
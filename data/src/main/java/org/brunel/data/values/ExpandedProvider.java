@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.values;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.util.MapInt;
+
+/**
+ * Provides a field's values for data expanded to all combinations of some key fields, without copying them.
+ * Each row is either a row of the original field, or (encoded as -1 - combination) a combination of keys with no
+ * data. For a key field, such rows take their value from the combination; for other fields they are missing.
+ */
+public class ExpandedProvider implements Provider {
+
+    private final Field base;                           // The original values
+    private final int[] source;                         // Original row, or -1 - combination; shared by all fields
+    private final Object[] keyValues;                   // Values for this key in a combination (null if not a key)
+    private final int stride;                           // Step in the combination index for this key
+
+    /**
+     * Define the provider
+     *
+     * @param base      the original values
+     * @param source    for each row, the original row or -1 - the combination index
+     * @param keyValues if the field is a key, its value for each digit of the combination index; otherwise null
+     * @param stride    if the field is a key, the combination index step between its values
+     */
+    public ExpandedProvider(Field base, int[] source, Object[] keyValues, int stride) {
+        this.base = base;
+        this.source = source;
+        this.keyValues = keyValues;
+        this.stride = stride;
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        Object p = value(a);
+        Object q = value(b);
+        if (p == q) return 0;
+        if (p == null) return 1;
+        if (q == null) return -1;
+        if (categoryOrder == null || categoryOrder.isEmpty())
+            return Data.compare(p, q);
+        else
+            return categoryOrder.get(p) - categoryOrder.get(q);
+    }
+
+    public int count() {
+        return source.length;
+    }
+
+    public int expectedSize() {
+        // The original values belong to the original data, so only the rows are counted
+        return 24 + source.length * 4;
+    }
+
+    public Provider setValue(Object o, int index) {
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    public Object value(int index) {
+        int row = source[index];
+        if (row >= 0) return base.value(row);
+        if (keyValues == null) return null;
+        int combination = -1 - row;
+        return keyValues[((int) (combination / stride)) % keyValues.length];      // Explicit cast needed for Javascript
+    }
+
+}
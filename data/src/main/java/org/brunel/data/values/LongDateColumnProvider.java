@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import java.util.Date;
+
+/**
+ * Stores a column of dates as milliseconds since the epoch.
+ * The numeric value of a date is in days, matching Data.asNumeric
+ */
+public class LongDateColumnProvider extends NumericProvider {
+
+    private static final double MILLIS_PER_DAY = 86400000.0;
+
+    /**
+     * Build from objects, which must all be null or dates
+     *
+     * @param column source data
+     * @return provider holding the data
+     */
+    public static LongDateColumnProvider fromObjects(Object[] column) {
+        long[] millis = new long[column.length];
+        int[] validBits = makeValidBits(column.length);
+        for (int i = 0; i < column.length; i++) {
+            if (column[i] != null) {
+                millis[i] = ((Date) column[i]).getTime();
+                setValid(validBits, i, true);
+            }
+        }
+        return new LongDateColumnProvider(millis, validBits);
+    }
+
+    /**
+     * Build directly from times and a bitmap of the rows that have values
+     *
+     * @param millis    milliseconds since the epoch (not copied)
+     * @param validBits bit set for each row with a value, 32 rows to an int (not copied)
+     * @return provider holding the data
+     */
+    public static LongDateColumnProvider fromValidBits(long[] millis, int[] validBits) {
+        return new LongDateColumnProvider(millis, validBits);
+    }
+
+    private final long[] millis;
+
+    LongDateColumnProvider(long[] millis, int[] validBits) {
+        super(validBits);
+        this.millis = millis;
+    }
+
+    public int count() {
+        return millis.length;
+    }
+
+    public double doubleValue(int index) {
+        return isMissing(index) ? Double.NaN : millis[index] / MILLIS_PER_DAY;
+    }
+
+    public int expectedSize() {
+        return 24 + 24 + 8 * millis.length + validBitsSize();
+    }
+
+    public NumericProvider permute(int[] order) {
+        long[] result = new long[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = millis[order[i]];
+        return new LongDateColumnProvider(result, permuteValidBits(order));
+    }
+
+    public Provider setValue(Object o, int index) {
+        if (o == null) {
+            setValid(validBits, index, false);
+            return this;
+        }
+        if (o instanceof Date) {
+            millis[index] = ((Date) o).getTime();
+            setValid(validBits, index, true);
+            return this;
+        }
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    public Object value(int index) {
+        return isMissing(index) ? null : new Date(millis[index]);
+    }
+
+    int comparePresent(int a, int b) {
+        long p = millis[a];
+        long q = millis[b];
+        return p < q ? -1 : (p > q ? 1 : 0);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.translator.JSTranslation;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Reads a column of numbers or dates from a buffer, such as a memory-mapped file, rather than the Java heap.
+ * Values are ints, doubles or millisecond longs, one after another. Only the bits of the valid rows are held
+ * on the heap, so that is all expectedSize reports. Setting a value copies the column onto the heap.
+ */
+@JSTranslation(ignore = true)
+public class MappedNumericProvider extends NumericProvider {
+
+    private static final double MILLIS_PER_DAY = 86400000.0;
+
+    private static final int INTS = 0;
+    private static final int DOUBLES = 1;
+    private static final int DATES = 2;
+
+    /**
+     * Read ints from a buffer
+     *
+     * @param buffer    values, from index zero; it must not be changed
+     * @param n         number of rows
+     * @param validBits bit set for each row with a value, 32 rows to an int (not copied)
+     * @return provider reading the buffer
+     */
+    public static MappedNumericProvider ints(ByteBuffer buffer, int n, int[] validBits) {
+        return new MappedNumericProvider(buffer, n, INTS, validBits);
+    }
+
+    /**
+     * Read doubles from a buffer
+     *
+     * @param buffer    values, from index zero; it must not be changed
+     * @param n         number of rows
+     * @param validBits bit set for each row with a value, 32 rows to an int (not copied)
+     * @return provider reading the buffer
+     */
+    public static MappedNumericProvider doubles(ByteBuffer buffer, int n, int[] validBits) {
+        return new MappedNumericProvider(buffer, n, DOUBLES, validBits);
+    }
+
+    /**
+     * Read dates, as long milliseconds since the epoch, from a buffer
+     *
+     * @param buffer    values, from index zero; it must not be changed
+     * @param n         number of rows
+     * @param validBits bit set for each row with a value, 32 rows to an int (not copied)
+     * @return provider reading the buffer
+     */
+    public static MappedNumericProvider dates(ByteBuffer buffer, int n, int[] validBits) {
+        return new MappedNumericProvider(buffer, n, DATES, validBits);
+    }
+
+    private final ByteBuffer buffer;                    // Only absolute reads are used, so it can be shared
+    private final int n;
+    private final int kind;
+
+    private MappedNumericProvider(ByteBuffer buffer, int n, int kind, int[] validBits) {
+        super(validBits);
+        this.buffer = buffer;
+        this.n = n;
+        this.kind = kind;
+    }
+
+    public int count() {
+        return n;
+    }
+
+    public double doubleValue(int index) {
+        if (isMissing(index)) return Double.NaN;
+        if (kind == INTS) return buffer.getInt(index << 2);
+        if (kind == DOUBLES) return buffer.getDouble(index << 3);
+        return buffer.getLong(index << 3) / MILLIS_PER_DAY;
+    }
+
+    public int expectedSize() {
+        return 24 + 24 + validBitsSize();
+    }
+
+    public NumericProvider permute(int[] order) {
+        int[] bits = permuteValidBits(order);
+        if (kind == DATES) {
+            long[] millis = new long[order.length];
+            for (int i = 0; i < order.length; i++) millis[i] = buffer.getLong(order[i] << 3);
+            return new LongDateColumnProvider(millis, bits);
+        }
+        double[] values = new double[order.length];
+        for (int i = 0; i < order.length; i++) values[i] = number(order[i]);
+        return new DoubleColumnProvider(values, bits);
+    }
+
+    public Provider setValue(Object o, int index) {
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    public Object value(int index) {
+        if (isMissing(index)) return null;
+        if (kind == DATES) return new Date(buffer.getLong(index << 3));
+        return number(index);
+    }
+
+    int comparePresent(int a, int b) {
+        if (kind == DATES) {
+            long p = buffer.getLong(a << 3);
+            long q = buffer.getLong(b << 3);
+            return p < q ? -1 : (p > q ? 1 : 0);
+        }
+        double p = number(a);
+        double q = number(b);
+        if (p < q) return -1;
+        if (p > q) return 1;
+        // Equal, or NaN is involved; NaN sorts high as it does for Double.compare
+        boolean pNaN = Double.isNaN(p), qNaN = Double.isNaN(q);
+        return pNaN == qNaN ? 0 : (pNaN ? 1 : -1);
+    }
+
+    /* The number at a row, ignoring whether it is valid */
+    private double number(int index) {
+        return kind == INTS ? buffer.getInt(index << 2) : buffer.getDouble(index << 3);
+    }
+}
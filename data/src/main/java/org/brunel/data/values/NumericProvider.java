@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.data.util.MapInt;
+
+/**
+ * Base class for providers that store their values in primitive arrays.
+ * Missing values are recorded in a validity bitmap, one bit per row held in 32-bit words (so the
+ * code works the same in Javascript), so numeric consumers can read values without boxing them.
+ */
+public abstract class NumericProvider implements Provider {
+
+    /**
+     * Make a bit set for which rows have values, with no rows set
+     *
+     * @param n number of rows
+     * @return bits, 32 rows to an int
+     */
+    public static int[] makeValidBits(int n) {
+        return new int[(n + 31) >> 5];
+    }
+
+    /**
+     * Set whether a row has a value
+     *
+     * @param bits  bit set to change
+     * @param index row to set
+     * @param valid true if the row has a value
+     */
+    public static void setValid(int[] bits, int index, boolean valid) {
+        if (valid) bits[index >> 5] |= 1 << (index & 31);
+        else bits[index >> 5] &= ~(1 << (index & 31));
+    }
+
+    protected final int[] validBits;                    // Bit set when the row has a value
+
+    NumericProvider(int[] validBits) {
+        this.validBits = validBits;
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        boolean p = isMissing(a);
+        boolean q = isMissing(b);
+        if (p) return q ? 0 : 1;
+        if (q) return -1;
+        if (categoryOrder == null || categoryOrder.isEmpty())
+            return comparePresent(a, b);
+        else
+            return categoryOrder.get(value(a)) - categoryOrder.get(value(b));
+    }
+
+    /**
+     * The value at the row as a primitive
+     *
+     * @param index row to access
+     * @return the value, or NaN if it is missing
+     */
+    public abstract double doubleValue(int index);
+
+    /**
+     * Whether the row has no value
+     *
+     * @param index row to access
+     * @return true if the value is missing
+     */
+    public boolean isMissing(int index) {
+        return (validBits[index >> 5] & (1 << (index & 31))) == 0;
+    }
+
+    /**
+     * Create a compact provider of the same type holding the rows in the given order
+     *
+     * @param order rows of this provider to use (may contain duplicates or omit rows)
+     * @return new provider
+     */
+    public abstract NumericProvider permute(int[] order);
+
+    /**
+     * The number of rows that have values
+     *
+     * @return count of non-missing rows
+     */
+    public int validCount() {
+        int n = count();
+        int total = 0;
+        for (int i = 0; i < n; i++) if (!isMissing(i)) total++;
+        return total;
+    }
+
+    // Compare two rows known to be valid
+    abstract int comparePresent(int a, int b);
+
+    // Bitmap of the valid values after a permutation
+    int[] permuteValidBits(int[] order) {
+        int[] bits = makeValidBits(order.length);
+        for (int i = 0; i < order.length; i++)
+            if (!isMissing(order[i])) setValid(bits, i, true);
+        return bits;
+    }
+
+    int validBitsSize() {
+        return 24 + 4 * validBits.length;
+    }
+}
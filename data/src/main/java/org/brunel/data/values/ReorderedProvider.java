@@ -18,42 +18,69 @@ package org.brunel.data.values;
 
 import org.brunel.data.util.MapInt;
 
+/**
+ * Provides the rows of another provider in a new order, or a subset of them, without copying the values.
+ * The rows are held in a selection shared by all the fields reordered the same way, and reordering again composes
+ * the selections rather than touching the values, so columns that are never read cost nothing.
+ * Numbers and dictionary codes are only copied into a compact column when primitive access is wanted.
+ */
 public class ReorderedProvider implements Provider {
 
-    private final Provider base;
-    private final int[] order;
-
-    public ReorderedProvider(Provider base, int[] order) {
+    /**
+     * Make a provider that reorders another
+     *
+     * @param base provider to reorder
+     * @param rows the rows of the base to use
+     * @return provider for those rows
+     */
+    public static ReorderedProvider make(Provider base, RowSelection rows) {
         if (base instanceof ReorderedProvider) {
-            // Convolute the two orders and go directly to the original
+            // Compose the two selections and go directly to the original
             ReorderedProvider other = (ReorderedProvider) base;
-            this.base = other.base;
-            this.order = new int[order.length];
-            for (int i=0; i<order.length; i++) this.order[i] = other.order[order[i]];
-        } else {
-            this.base = base;
-            this.order = order;
+            return new ReorderedProvider(other.base, other.rows.select(rows));
         }
+        return new ReorderedProvider(base, rows);
+    }
+
+    private final Provider base;
+    private final RowSelection rows;
+
+    private ReorderedProvider(Provider base, RowSelection rows) {
+        this.base = base;
+        this.rows = rows;
     }
 
     public int compareRows(int a, int b, MapInt categoryOrder) {
-        return base.compareRows(order[a], order[b], categoryOrder);
+        return base.compareRows(rows.row(a), rows.row(b), categoryOrder);
     }
 
     public int count() {
-        return order.length;
+        return rows.count();
     }
 
     public int expectedSize() {
-        return 24 + order.length * 4 + base.expectedSize();
+        return 24 + rows.count() * 4 + base.expectedSize();
+    }
+
+    /**
+     * Copy numbers or dictionary codes into their own column, so they can be accessed as primitives
+     *
+     * @return the copied column, or this if the values are objects
+     */
+    public Provider materialize() {
+        if (base instanceof NumericProvider) return ((NumericProvider) base).permute(rows.rows());
+        if (base instanceof DictionaryColumnProvider) return ((DictionaryColumnProvider) base).permute(rows.rows());
+        return this;
     }
 
     public Provider setValue(Object o, int index) {
-        return ColumnProvider.copy(this).setValue(o, index);
+        Provider copy = materialize();
+        if (copy == this) copy = ColumnProvider.copy(this);
+        return copy.setValue(o, index);
     }
 
     public Object value(int index) {
-        return base.value(order[index]);
+        return base.value(rows.row(index));
     }
 
 }
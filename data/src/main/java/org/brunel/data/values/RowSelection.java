@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.values;
+
+/**
+ * A choice of rows from some data, in order, that may be shared by all the fields reordered or filtered the same way.
+ * Selecting from a selection composes the two, and the result is remembered so that the other fields making the
+ * same choice from the same selection share it rather than each building their own.
+ */
+public class RowSelection {
+
+    /**
+     * Make a selection of rows
+     *
+     * @param rows the rows to use, by index into the original data; the array is not copied, so must not be changed
+     * @return the selection
+     */
+    public static RowSelection make(int[] rows) {
+        return new RowSelection(rows, null);
+    }
+
+    private final int[] rows;
+    private final RowSelection source;                  // The selection this was chosen by, from its parent
+    private RowSelection last;                          // The last selection composed from this one
+
+    private RowSelection(int[] rows, RowSelection source) {
+        this.rows = rows;
+        this.source = source;
+    }
+
+    public int count() {
+        return rows.length;
+    }
+
+    public int row(int index) {
+        return rows[index];
+    }
+
+    /**
+     * The rows, by index into the original data
+     *
+     * @return the rows, not copied, so must not be changed
+     */
+    public int[] rows() {
+        return rows;
+    }
+
+    /**
+     * Compose this selection with another, giving rows from the original data
+     *
+     * @param selection choice of rows from this selection
+     * @return the choice of rows from the original data
+     */
+    public RowSelection select(RowSelection selection) {
+        RowSelection result = last;                     // Read once, as another thread may replace it
+        if (result != null && result.source == selection) return result;
+        int[] composed = new int[selection.rows.length];
+        for (int i = 0; i < composed.length; i++) composed[i] = rows[selection.rows[i]];
+        result = new RowSelection(composed, selection);
+        last = result;
+        return result;
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.brunel.data;
 
+import org.brunel.translator.JSTranslation;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -36,6 +37,14 @@ public class TestData {
 
     }
 
+    @Test
+    public void testCompareNumbers() {
+        double[] values = new double[]{Double.NEGATIVE_INFINITY, -2.5, -0.0, 0.0, 1, Double.POSITIVE_INFINITY, Double.NaN};
+        for (double a : values)
+            for (double b : values)
+                assertEquals(a + " vs " + b, Integer.signum(Double.compare(a, b)), Data.compareNumbers(a, b));
+    }
+
     private String compare(Object a, Object b) {
         int x = Data.compare(a, b);
         if (x == 0) return "=";
@@ -83,6 +92,15 @@ public class TestData {
         assertEquals(1000, g.rowCount());
         assertEquals(0, g.valid());}
 
+    @JSTranslation(ignore = true)
+    @Test
+    public void testNumericText() {
+        String[] numbers = new String[]{"1", "-2", "+3.5", "1.", ".5", "1e5", "2.5E-3", "1.5f", "7d", "0x1p4", "Infinity"};
+        for (String s : numbers) assertEquals(s, Double.parseDouble(s), Data.asNumeric(s), 1e-12);
+        String[] others = new String[]{"-", ".", "e5", "1e", "1e+", "12abc", "1,000", "2010-01-05", "NaN", "N/A", "x1"};
+        for (String s : others) assertEquals(s, null, Data.asNumeric(s));
+    }
+
     @Test
     public void testDates() {
         assertEquals(0.0, Data.asNumeric(Data.asDate("1970-01-01")), 0.001);
@@ -16,9 +16,21 @@
 
 package org.brunel.data;
 
+import org.brunel.data.values.ColumnProvider;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.brunel.data.values.DoubleColumnProvider;
+import org.brunel.data.values.LongDateColumnProvider;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.data.values.ReorderedProvider;
 import org.junit.Test;
 
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class TestProviders {
 
@@ -68,4 +80,149 @@ public class TestProviders {
         assertEquals("1, 2, 3, 4", Data.join(a.categories()));
     }
 
+    @Test
+    public void testDoubleColumn() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{3.0, null, 1.0, 2.5, null, 1.0});
+        a.setNumeric();
+        NumericProvider numeric = a.numericProvider();
+        assertTrue(numeric instanceof DoubleColumnProvider);
+        assertEquals(6, a.rowCount());
+        assertEquals(3.0, a.value(0));
+        assertNull(a.value(1));
+        assertTrue(numeric.isMissing(4));
+        assertTrue(Double.isNaN(numeric.doubleValue(4)));
+        assertEquals(2.5, numeric.doubleValue(3), 1e-9);
+        assertEquals(4, numeric.validCount());
+        assertEquals(1.875, a.numProperty("mean"), 1e-9);
+        assertEquals(1.75, a.numProperty("median"), 1e-9);
+        assertEquals("1, 2.5, 3", Data.join(a.categories()));
+
+        // Missing values sort to the end
+        assertTrue(a.compareRows(0, 2) > 0);
+        assertTrue(a.compareRows(1, 2) > 0);
+        assertEquals(0, a.compareRows(2, 5));
+
+        // Permuting keeps primitive storage
+        Field p = Fields.permute(a, new int[]{5, 4, 3}, false);
+        assertTrue(p.numericProvider() instanceof DoubleColumnProvider);
+        assertEquals("1, ?, 2.5", p.valueFormatted(0) + ", " + p.valueFormatted(1) + ", " + p.valueFormatted(2));
+
+        // Setting a value of a different type converts the storage
+        a.setValue("x", 0);
+        assertEquals("x", a.value(0));
+        assertNull(a.numericProvider());
+    }
+
+    @Test
+    public void testPrimitiveAccessLeavesProvider() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{1.0, 2.0, null, 4.0});
+        Field p = Fields.permute(a, new int[]{3, 2, 1, 0}, false);
+        assertTrue(p.provider instanceof ReorderedProvider);
+
+        // The copied column is made once and kept apart from the field's own provider
+        NumericProvider numeric = p.numericProvider();
+        assertSame(numeric, p.numericProvider());
+        assertTrue(p.provider instanceof ReorderedProvider);
+        assertEquals(4.0, numeric.doubleValue(0), 1e-9);
+        assertTrue(numeric.isMissing(1));
+        assertEquals(4.0, p.value(0));
+    }
+
+    @Test
+    public void testNaNIsMissing() {
+        NumericProvider a = (NumericProvider) ColumnProvider.make(new Object[]{1.0, Double.NaN, null});
+        NumericProvider b = DoubleColumnProvider.fromValues(new double[]{1.0, Double.NaN, Double.NaN});
+        for (int i = 0; i < 3; i++) {
+            assertEquals(b.isMissing(i), a.isMissing(i));
+            assertEquals(b.value(i), a.value(i));
+        }
+        assertTrue(a.isMissing(1));
+        a.setValue(2.0, 1);
+        assertEquals(2.0, a.value(1));
+        a.setValue(Double.NaN, 1);
+        assertNull(a.value(1));
+    }
+
+    @Test
+    public void testColumnSizeFollowsChanges() {
+        ColumnProvider column = new ColumnProvider(new Object[]{"abc", "abc", 1, null});
+        int size = column.expectedSize();
+        assertEquals(24 + 4 * 4 + 42 + 6 + 16, size);
+        column.setValue("a much longer value", 3);
+        assertTrue(column.expectedSize() > size);
+        column.setValue(null, 3);
+        assertEquals(size, column.expectedSize());
+        column.setValue("abc", 2);                              // Shares the existing string
+        assertEquals(size - 16, column.expectedSize());
+    }
+
+    @Test
+    public void testMixedColumnsAreNotPrimitive() {
+        assertNull(Fields.makeColumnField("a", "b", new Object[]{1, 2.0}).numericProvider());
+        assertNull(Fields.makeColumnField("a", "b", new Object[]{"a", 2.0}).numericProvider());
+        assertNull(Fields.makeColumnField("a", "b", new Object[]{null, null}).numericProvider());
+    }
+
+    @Test
+    public void testDateColumn() {
+        Date d1 = new Date(86400000L * 3);
+        Date d2 = new Date(86400000L * 5);
+        Field a = Fields.makeColumnField("a", "b", new Object[]{d2, null, d1});
+        NumericProvider numeric = a.numericProvider();
+        assertTrue(numeric instanceof LongDateColumnProvider);
+        assertEquals(d2, a.value(0));
+        assertNull(a.value(1));
+        assertEquals(3.0, numeric.doubleValue(2), 1e-9);
+        assertTrue(a.compareRows(2, 0) < 0);
+        a.setNumeric();
+        assertEquals(3.0, a.min(), 1e-9);
+        assertEquals(5.0, a.max(), 1e-9);
+    }
+
+    @Test
+    public void testDictionaryColumn() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{"b", "a", null, "b", "c", "b", "a"});
+        DictionaryColumnProvider dictionary = a.dictionaryProvider();
+        assertTrue(dictionary != null);
+        assertArrayEquals(new Object[]{"a", "b", "c"}, dictionary.dictionary());
+        assertEquals(1, dictionary.code(0));
+        assertEquals(-1, dictionary.code(2));
+        assertEquals("c", a.value(4));
+        assertNull(a.value(2));
+
+        // Stats come from the codes
+        assertEquals(7, a.numProperty("n"), 0.001);
+        assertEquals(6, a.numProperty("valid"), 0.001);
+        assertEquals(3, a.numProperty("unique"), 0.001);
+        assertEquals("b", a.property("mode"));
+        assertArrayEquals(new Object[]{"a", "b", "c"}, a.categories());
+        assertArrayEquals(new int[]{2, 3, 1}, (int[]) a.property("categoryCounts"));
+
+        // Missing values sort last
+        assertTrue(a.compareRows(1, 0) < 0);
+        assertTrue(a.compareRows(2, 4) > 0);
+        assertEquals(0, a.compareRows(0, 3));
+
+        // Setting a value not in the dictionary falls back to objects
+        a.setValue("d", 2);
+        assertEquals("d", a.value(2));
+        assertNull(a.dictionaryProvider());
+    }
+
+    @Test
+    public void testDictionaryColumnWithCategoryOrder() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{"low", "high", "mid", "low", "high", "mid"});
+        a.set("categories", new Object[]{"low", "mid", "high"});
+        a.set("categoriesOrdered", true);
+        assertTrue(a.compareRows(0, 2) < 0);
+        assertTrue(a.compareRows(2, 1) < 0);
+        assertArrayEquals(new int[]{2, 2, 2}, (int[]) a.property("categoryCounts"));
+    }
+
+    @Test
+    public void testUniqueStringsAreNotDictionaryEncoded() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{"x", "y", "z"});
+        assertNull(a.dictionaryProvider());
+    }
+
 }
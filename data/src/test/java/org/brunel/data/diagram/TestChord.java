@@ -80,4 +80,46 @@ public class TestChord {
         assertEquals("0, 0, 6, 0, 0", Data.join(data[4]));      // y ->
     }
 
+    @Test
+    public void testPrune() {
+        // Total sizes are a=1, b=2, c=8, x=5, y=6
+        Chord data = new Chord(simple, "A", "B", "C").prune(3);
+        assertEquals(3, data.groupCount());
+        assertEquals("c", data.group(0));
+        assertEquals("x", data.group(1));
+        assertEquals("y", data.group(2));
+        double[][] m = data.matrix();
+        assertEquals("0, 2, 6", Data.join(m[0]));
+        assertEquals("2, 0, 0", Data.join(m[1]));
+        assertEquals("6, 0, 0", Data.join(m[2]));
+        assertEquals(3, data.index(0, 1));
+        assertEquals(4, data.index(2, 0));
+    }
+
+    @Test
+    public void testMissingSizeIsSkipped() {
+        Dataset data = Dataset.make(CSV.read("A,B,C\na,x,1\nb,x,\nc,y,3"));
+        double[][] m = new Chord(data, "A", "B", "C").matrix();
+        // Columns:   a  b  c  x  y
+        assertEquals("0, 0, 0, 1, 0", Data.join(m[0]));         // a -> x
+        assertEquals("0, 0, 0, 0, 0", Data.join(m[1]));         // b has no size
+        assertEquals("0, 0, 0, 0, 3", Data.join(m[2]));         // c -> y
+    }
+
+    @Test
+    public void testSparseLinks() {
+        // Many groups, each linked to only a few others
+        StringBuilder b = new StringBuilder("A,B");
+        for (int i = 0; i < 20000; i++) b.append("\nf").append(i).append(",t").append(i % 7);
+        Chord data = new Chord(Dataset.make(CSV.read(b.toString())), "A", "B", null);
+        assertEquals(20007, data.groupCount());
+        assertEquals(40000, data.adjacency().linkCount());
+        assertEquals(2857, data.adjacency().nodeWeight(data.groupCount() - 1), 1e-9);
+
+        data.prune(7);
+        assertEquals("t0, t1, t2, t3, t4, t5, t6", Data.join(new Object[]{data.group(0), data.group(1),
+                data.group(2), data.group(3), data.group(4), data.group(5), data.group(6)}));
+        assertEquals(0, data.adjacency().linkCount());
+    }
+
 }
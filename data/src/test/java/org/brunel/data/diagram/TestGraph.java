@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.diagram;
+
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestGraph {
+
+    private static final Dataset nodes = Dataset.make(CSV.read(Data.join(new String[]{
+            "N", "a", "b", "c", "d", "e"
+    }, "\n")));
+
+    private static final Dataset edges = Dataset.make(CSV.read(Data.join(new String[]{
+            "F,T",
+            "a,b",
+            "a,c",
+            "b,c",
+            "a,z",
+            "d,a",
+            "c,a",
+    }, "\n")));
+
+    @Test
+    public void testGraph() {
+        Graph g = Graph.make(nodes, "N", edges, "F", "T");
+        assertEquals(5, g.nodes.length);
+        assertEquals(5, g.links.length);                    // The link to 'z' has no node
+        assertEquals("a--b", g.links[0].key);
+        assertEquals(5, g.links[4].row);
+        assertSame(g.nodes[2], g.links[4].source);
+
+        // Node weights are their degrees; a and c are linked twice
+        Adjacency adjacency = g.adjacency();
+        assertEquals(4, adjacency.nodeWeight(0), 1e-9);
+        assertEquals(0, adjacency.nodeWeight(4), 1e-9);
+        assertEquals(2, adjacency.weight(adjacency.find(0, 2)), 1e-9);
+        assertEquals(5, adjacency.row(adjacency.find(0, 2)));
+        assertEquals(-1, adjacency.find(0, 4));
+    }
+
+    @Test
+    public void testPrune() {
+        Graph g = Graph.make(nodes, "N", edges, "F", "T").prune(2);
+        assertEquals(2, g.nodes.length);
+        assertEquals("a", g.nodes[0].key);
+        assertEquals("c", g.nodes[1].key);
+        assertEquals(2, g.links.length);
+        assertEquals("a--c", g.links[0].key);
+        assertEquals("c--a", g.links[1].key);
+        assertEquals(2, g.adjacency().nodeCount());
+        assertEquals(2, g.adjacency().linkCount());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.io;
+
+import org.brunel.data.Field;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the streaming CSV reader gives the same results as parsing the text
+ */
+public class TestCSVReader {
+
+    private static final String TRICKY = "Name, \"Value (units)\",Notes\r\n"
+            + "a,1,\"quoted, with comma\"\r\n"
+            + "b,2,\"a \"\"double\"\" quote\"\r\n"
+            + " c ,,\"\"\r\n"
+            + "a,3.5,caf\u00e9 \u00fcber\n"
+            + "b,-2,\"multi\nline\"\n"
+            + "a,7,last";
+
+    @Test
+    public void testMatchesCSV() throws Exception {
+        check(TRICKY);
+        check("a\tb\n1\t2\n3\t4\n\nignored\tafter blank\n");
+        check("x|y\n\"1\"|2\n");
+        check("only,header");
+    }
+
+    @Test
+    public void testRepeatedValuesUseDictionary() throws Exception {
+        StringBuilder b = new StringBuilder("region,sales\n");
+        for (int i = 0; i < 5000; i++) b.append(i % 3 == 0 ? "north" : "south").append(',').append(i % 17).append('\n');
+        check(b.toString());
+        Field[] fields = CSVReader.read(stream(b.toString()));
+        assertEquals(2, fields[0].uniqueValuesCount());
+        assertEquals("south", fields[0].value(4999));
+    }
+
+    @Test
+    public void testBadLineLength() throws Exception {
+        try {
+            CSVReader.read(stream("a,b\n1,2\n3\n"));
+            fail("Expected an error");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Line 3 had 1 entries; expected 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFileAndBuffer() throws Exception {
+        File file = File.createTempFile("brunel", ".csv");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(TRICKY.getBytes("UTF-8"));
+        }
+        Field[] expected = CSV.read(TRICKY);
+        assertSame(expected, CSVReader.read(file));
+        assertSame(expected, CSVReader.read(ByteBuffer.wrap(TRICKY.getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void testParallelMatchesSerial() throws Exception {
+        // Quoted line ends and separators are placed so that some chunk boundaries fall inside quotes
+        Random random = new Random(3);
+        StringBuilder b = new StringBuilder("id,category,\"text\",value\r\n");
+        for (int i = 0; i < 40000; i++) {
+            b.append(i).append(',').append("c").append(random.nextInt(8)).append(',');
+            if (i % 7 == 0) b.append("\"line one\r\nline \"\"two\"\", with comma\"");
+            else b.append("plain ").append(random.nextInt(100000));
+            b.append(',').append(random.nextDouble()).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        String text = b.toString();
+        byte[] bytes = text.getBytes("UTF-8");
+        Field[] serial = CSVReader.read(ByteBuffer.wrap(bytes), 1);
+        assertSame(CSV.read(text), serial);
+        assertSame(serial, CSVReader.read(ByteBuffer.wrap(bytes), 4));
+
+        // Memory-mapped style (not backed by an array) buffers are read the same way
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertSame(serial, CSVReader.read(direct, 4));
+
+        // An empty line ends the data, even in a later chunk; later errors are then ignored
+        String ended = text + "\nextra,line\n";
+        assertSame(serial, CSVReader.read(ByteBuffer.wrap(ended.getBytes("UTF-8")), 4));
+    }
+
+    @Test
+    public void testParallelBadLineLength() throws Exception {
+        StringBuilder b = new StringBuilder("a,b\n");
+        for (int i = 0; i < 200000; i++) b.append(i).append(i == 150000 ? "\n" : ",x\n");
+        try {
+            CSVReader.read(ByteBuffer.wrap(b.toString().getBytes("UTF-8")), 4);
+            fail("Expected an error");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Line 150002 had 1 entries; expected 2", e.getMessage());
+        }
+    }
+
+    private void check(String text) throws Exception {
+        assertSame(CSV.read(text), CSVReader.read(stream(text)));
+    }
+
+    private void assertSame(Field[] expected, Field[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].name, actual[i].name);
+            assertEquals(expected[i].label, actual[i].label);
+            assertEquals(expected[i].rowCount(), actual[i].rowCount());
+            for (int r = 0; r < expected[i].rowCount(); r++)
+                assertEquals(expected[i].value(r), actual[i].value(r));
+        }
+    }
+
+    private ByteArrayInputStream stream(String text) throws Exception {
+        return new ByteArrayInputStream(text.getBytes("UTF-8"));
+    }
+}
@@ -24,10 +24,14 @@ import org.brunel.data.Fields;
 import org.brunel.translator.JSTranslation;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Date;
@@ -271,6 +275,112 @@ public class TestSerialize {
 
     }
 
+    @JSTranslation(ignore = true)
+    @Test
+    public void testColumnarRoundTrip() throws Exception {
+        Dataset dataset = Dataset.make(CSV.read("a,b,c,d\n1,x,1.5,2010-01-05\n,,,\n-3,\u2026,NaN,1970-01-01"));
+        Dataset copy = roundTrip(dataset);
+        assertEquals(3, copy.rowCount());
+        for (Field f : dataset.fields) {
+            Field g = copy.field(f.name);
+            assertEquals(f.label, g.label);
+            assertEquals(f.isNumeric(), g.isNumeric());
+            assertEquals(f.isDate(), g.isDate());
+            for (int i = 0; i < 3; i++) assertEquals(0, Data.compare(f.value(i), g.value(i)));
+        }
+        assertEquals("Count", copy.field("#count").label);
+
+        // The older format can still be read
+        byte[] older = Serialize.serializeDataset(dataset);
+        Dataset d = Serialize.readDataset(Channels.newChannel(new ByteArrayInputStream(older)), null);
+        assertEquals("x", d.field("b").value(0));
+    }
+
+    @JSTranslation(ignore = true)
+    @Test
+    public void testColumnarLargeData() throws Exception {
+        // Enough rows that the columns need several pages
+        int n = 100000;
+        Object[] ints = new Object[n], doubles = new Object[n], text = new Object[n];
+        for (int i = 0; i < n; i++) {
+            ints[i] = i % 97 == 0 ? null : (double) (i * 7 - 5000);
+            doubles[i] = i / 3.0;
+            text[i] = i % 5 == 0 ? null : "item " + (i % 1000);
+        }
+        Dataset dataset = Dataset.make(new Field[]{
+                Data.toNumeric(Fields.makeColumnField("ints", "Integers", ints)),
+                Data.toNumeric(Fields.makeColumnField("doubles", null, doubles)),
+                Fields.makeColumnField("text", null, text)}, false);
+
+        byte[] bytes = columnarBytes(dataset);
+        assertTrue(bytes.length < Serialize.serializeDataset(dataset).length / 2);
+
+        Dataset copy = (Dataset) Serialize.deserialize(bytes);
+        assertEquals(n, copy.rowCount());
+        for (int i = 0; i < n; i += 7) {
+            assertEquals(ints[i], copy.field("ints").value(i));
+            assertEquals(doubles[i], copy.field("doubles").value(i));
+            assertEquals(text[i], copy.field("text").value(i));
+        }
+    }
+
+    @JSTranslation(ignore = true)
+    @Test
+    public void testColumnarSubsets() throws Exception {
+        Dataset dataset = Dataset.make(CSV.read(CannedData.whiskey));
+        byte[] bytes = columnarBytes(dataset);
+        String[] names = {"Rating", "Country"};
+
+        // Read from a stream, skipping the other columns
+        Dataset d = Serialize.readDataset(Channels.newChannel(new ByteArrayInputStream(bytes)), names);
+        assertEquals(2 + 3, d.fields.length);
+        assertEquals(dataset.field("Rating").numProperty("mean"), d.field("Rating").numProperty("mean"), 1e-9);
+
+        // Read directly from a file
+        Path f = Files.createTempFile("data", "ser");
+        Files.write(f, bytes);
+        try (FileChannel channel = FileChannel.open(f)) {
+            d = Serialize.readDatasetColumns(channel, names);
+        }
+        Files.delete(f);
+        assertEquals(2 + 3, d.fields.length);
+        assertEquals(dataset.rowCount(), d.rowCount());
+        assertEquals(dataset.field("Country").value(17), d.field("Country").value(17));
+        assertEquals(dataset.field("Rating").numProperty("mean"), d.field("Rating").numProperty("mean"), 1e-9);
+    }
+
+    @JSTranslation(ignore = true)
+    @Test
+    public void testStoredColumns() throws Exception {
+        // Data written for mapping can also be read as a stream, with or without its stored columns
+        Dataset dataset = Dataset.make(CSV.read(CannedData.whiskey));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serialize.writeMappableDataset(dataset, Channels.newChannel(out));
+        byte[] bytes = out.toByteArray();
+
+        Dataset d = Serialize.readDataset(Channels.newChannel(new ByteArrayInputStream(bytes)), null);
+        assertEquals(dataset.rowCount(), d.rowCount());
+        assertEquals(dataset.field("Rating").numProperty("mean"), d.field("Rating").numProperty("mean"), 1e-9);
+
+        d = Serialize.readDataset(Channels.newChannel(new ByteArrayInputStream(bytes)), new String[]{"Country"});
+        assertEquals(dataset.field("Country").value(17), d.field("Country").value(17));
+    }
+
+    @JSTranslation(ignore = true)
+    private Dataset roundTrip(Dataset dataset) throws Exception {
+        byte[] bytes = columnarBytes(dataset);
+        assertEquals(Serialize.VERSION, bytes[0]);
+        assertEquals(Serialize.DATASET_VERSION_NUMBER, bytes[1]);
+        return Serialize.readDataset(Channels.newChannel(new ByteArrayInputStream(bytes)), null);
+    }
+
+    @JSTranslation(ignore = true)
+    private byte[] columnarBytes(Dataset dataset) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serialize.writeDataset(dataset, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
     private String dump(byte[] bytes) {
         String b = "";
         for (int i = 0; i < bytes.length; i++) {
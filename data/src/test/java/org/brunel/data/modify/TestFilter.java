@@ -19,9 +19,14 @@ package org.brunel.data.modify;
 import org.brunel.data.CannedData;
 import org.brunel.data.Data;
 import org.brunel.data.Dataset;
+import org.brunel.data.Field;
 import org.brunel.data.io.CSV;
+import org.brunel.data.util.Selection;
+import org.brunel.data.values.MappedNumericProvider;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+
 import static org.junit.Assert.assertEquals;
 
 public class TestFilter {
@@ -118,4 +123,107 @@ public class TestFilter {
         assertEquals("A|B|C|D|#count|#row -- b|x|2|3|1|2 -- c|y|1|2|1|3", CannedData.dump(a));
     }
 
+    @Test
+    public void testFilterAcrossWords() {
+        // Enough rows to span several bitmap words, with unique names and numbers so no dictionaries are used
+        String[] lines = new String[101];
+        lines[0] = "N,V,C";
+        for (int i = 1; i <= 100; i++) lines[i] = "name" + i + "," + i + ",c" + (i % 3);
+        Dataset data = Dataset.make(CSV.read(Data.join(lines, "\n")));
+
+        Dataset a = data.filter("V in 10,70");
+        assertEquals(61, a.rowCount());
+        assertEquals(10.0, a.field("V").value(0));
+        assertEquals(70.0, a.field("V").value(60));
+
+        a = data.filter("N is name5,name40,name99");
+        assertEquals(3, a.rowCount());
+        assertEquals("name99", a.field("N").value(2));
+
+        a = data.filter("V !is 32,33,64; C is c1");
+        assertEquals(33, a.rowCount());
+        assertEquals(97.0, a.field("V").value(31));
+    }
+
+    @Test
+    public void testFilterByRanksLarge() {
+        // Each value from 0 to 499 appears twice, with a missing value at the end
+        String[] lines = new String[1002];
+        lines[0] = "V";
+        for (int i = 1; i <= 1000; i++) lines[i] = "" + (i * 37) % 500;
+        lines[1001] = "";
+        Dataset data = Dataset.make(CSV.read(Data.join(lines, "\n")));
+
+        // Near the top
+        Dataset a = data.filter("V ranked 1,5");
+        assertEquals(6, a.rowCount());
+        assertEquals(497.0, a.field("V").min(), 1e-9);
+
+        // Far from the top
+        a = data.filter("V ranked 300,700");
+        assertEquals(402, a.rowCount());
+        assertEquals(150.0, a.field("V").min(), 1e-9);
+        assertEquals(350.0, a.field("V").max(), 1e-9);
+
+        // Clipped to the data
+        a = data.filter("V !ranked -5,2000");
+        assertEquals(0, a.rowCount());
+    }
+    @Test
+    public void testFilterThenSortComposesRows() {
+        Dataset a = simple.filter("D in 1.5, 4.5").sort("D");
+        assertEquals("A|B|C|D|#count|#row -- a|x|1|4|1|1 -- b|x|2|3|1|2 -- c|y|1|2|1|3", CannedData.dump(a));
+
+        // Primitive access copies the chosen rows into their own column
+        assertEquals(4.0, a.field("D").numericProvider().doubleValue(0), 1e-9);
+        assertEquals(2.0, a.field("D").numericProvider().doubleValue(2), 1e-9);
+
+        // Setting a value in the result does not change the original
+        a.field("C").setValue(99, 0);
+        assertEquals(99, a.field("C").value(0));
+        assertEquals(1.0, simple.field("C").value(0));
+    }
+
+
+    @Test
+    public void testNumericEdgeCasesMatchCompare() {
+        // A mapped column can hold NaN as a valid value; rows are -0.0, 0.0, NaN, 2.0, all valid
+        double[] values = new double[]{-0.0, 0.0, Double.NaN, 2.0};
+        ByteBuffer buffer = ByteBuffer.allocate(8 * values.length);
+        for (int i = 0; i < values.length; i++) buffer.putDouble(i << 3, values[i]);
+        Field f = new Field("V", null, MappedNumericProvider.doubles(buffer, values.length, new int[]{15}));
+
+        // As for Data.compare, NaN lies above any range and -0.0 is below 0.0
+        assertEquals(10, passing(new FilterCondition(f, 3, new Object[]{0.0, 5.0})));
+        assertEquals(5, passing(new FilterCondition(f, -3, new Object[]{0.0, 5.0})));
+        assertEquals(1, passing(new FilterCondition(f, 3, new Object[]{-0.0, -0.0})));
+        assertEquals(2, passing(new FilterCondition(f, 2, new Object[]{0.0})));
+        assertEquals(9, passing(new FilterCondition(f, 2, new Object[]{2.0, -0.0})));
+    }
+
+    @Test
+    public void testRankingEdgeCasesMatchCompare() {
+        // Rows are -0.0, 0.0, NaN, 2.0, all valid; NaN is the largest and -0.0 the smallest
+        double[] values = new double[]{-0.0, 0.0, Double.NaN, 2.0};
+        ByteBuffer buffer = ByteBuffer.allocate(8 * values.length);
+        for (int i = 0; i < values.length; i++) buffer.putDouble(i << 3, values[i]);
+        MappedNumericProvider numeric = MappedNumericProvider.doubles(buffer, values.length, new int[]{15});
+        assertEquals("2, 3, 1, 0", Data.join(Selection.largestRows(numeric, 4)));
+
+        // Selection puts the same items in each position
+        int[] expected = new int[]{3, 2, 4, 0, 1};
+        for (int k = 0; k < expected.length; k++) {
+            double[] keys = new double[]{2.0, Double.NaN, 0.0, -0.0, 1.0};
+            int[] rows = new int[]{0, 1, 2, 3, 4};
+            Selection.select(keys, rows, 0, keys.length, k);
+            assertEquals(expected[k], rows[k]);
+        }
+    }
+
+    /* Bits of the rows of a four-row field which pass the condition */
+    private static int passing(FilterCondition condition) {
+        int[] bits = new int[]{15};
+        condition.apply(bits, 0, 1);
+        return bits[0];
+    }
 }
@@ -19,6 +19,7 @@ package org.brunel.data.modify;
 import org.brunel.data.CannedData;
 import org.brunel.data.Data;
 import org.brunel.data.Dataset;
+import org.brunel.data.Field;
 import org.brunel.data.io.CSV;
 import org.junit.Assert;
 import org.junit.Test;
@@ -54,5 +55,31 @@ public class TestFit {
         Assert.assertEquals("C|X|Y|#count|#row -- a|1|1|1|1 -- a|2|2|1|2 -- b|1|3|1|3 -- b|2|3|1|4 -- b|3|3|1|5", CannedData.dump(a));
     }
 
+    @Test
+    public void testSmoothMatchesKernelSums() {
+        // Two groups with repeated, unevenly spaced x values
+        StringBuilder b = new StringBuilder("G,X,Y");
+        for (int i = 0; i < 400; i++)
+            b.append("\n").append(i % 2 == 0 ? "a" : "b").append(",").append((i * 7 % 37) * (i * 7 % 37) * 0.25)
+                    .append(",").append(Math.sin(i));
+        Dataset data = Dataset.make(CSV.read(b.toString()));
+        Dataset a = data.summarize("Y=Y:smooth:20; X=X:base; G=G");
+
+        Field g = a.field("G"), x = a.field("X"), y = a.field("Y");
+        double h = (data.field("X").max() - data.field("X").min()) * 20 / 200;
+        for (int r = 0; r < a.rowCount(); r++) {
+            double at = Data.asNumeric(x.value(r));
+            double sw = 0, sy = 0;
+            for (int i = 0; i < data.rowCount(); i++) {
+                if (!data.field("G").value(i).equals(g.value(r))) continue;
+                double d = (Data.asNumeric(data.field("X").value(i)) - at) / h;
+                if (Math.abs(d) >= 1) continue;
+                double w = 0.75 * (1 - d * d);
+                sw += w;
+                sy += w * Data.asNumeric(data.field("Y").value(i));
+            }
+            Assert.assertEquals(sy / sw, Data.asNumeric(y.value(r)), 1e-9);
+        }
+    }
 
 }
@@ -25,6 +25,7 @@ import org.brunel.data.Fields;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestStack {
 
@@ -157,6 +158,46 @@ public class TestStack {
                 CannedData.dump(a));
     }
 
+    @Test
+    public void testOrderedDataIsNotSorted() {
+        // The rows are already in stacking order, so the original fields are kept
+        Dataset a = Stack.transform(simple, "D; A; B; false");
+        assertTrue(a.field("C") == simple.field("C"));
+
+        // The bounds are stored as primitives
+        assertEquals(2.0, a.field("D$lower").numericProvider().doubleValue(3), 1e-9);
+        assertEquals(3.0, a.field("D$upper").numericProvider().doubleValue(3), 1e-9);
+
+        // Reversed data must be sorted
+        Dataset b = Stack.transform(simple.retainRows(new int[]{3, 2, 1, 0}), "D; A; B; false");
+        assertEquals(CannedData.dump(a), CannedData.dump(b));
+    }
+
+    @Test
+    public void testFullStackingOfSparseData() {
+        // Each x has a value for one group only; all 300 x 20 combinations are generated
+        StringBuilder b = new StringBuilder("X,G,Y");
+        for (int i = 0; i < 300; i++) b.append("\n").append(i).append(",g").append(i % 20).append(",1");
+        Dataset data = Dataset.make(CSV.read(b.toString()));
+        Dataset a = Stack.transform(data, "Y; X; G; true");
+        assertEquals(300 * 20, a.rowCount());
+
+        // Groups are in descending order within each x; missing combinations have no y and add nothing
+        assertEquals("0|g9|?|0|0", row(a, 0));
+        assertEquals("0|g1|?|0|0", row(a, 18));
+        assertEquals("0|g0|1|0|1", row(a, 19));
+        assertEquals("1|g10|?|0|0", row(a, 37));
+        assertEquals("1|g1|1|0|1", row(a, 38));
+        assertEquals("1|g0|?|1|1", row(a, 39));
+    }
+
+    private String row(Dataset data, int index) {
+        String[] names = {"X", "G", "Y", "Y$lower", "Y$upper"};
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) values[i] = data.field(names[i]).valueFormatted(index);
+        return Data.join(values, "|");
+    }
+
     @Test public void testLargeData() {
         // Ensure that stacking is not slow. This test was due to a defect we found with large data.
         // The test will always work, but should not kill the system doing so ...
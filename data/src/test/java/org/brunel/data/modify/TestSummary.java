@@ -128,6 +128,15 @@ public class TestSummary {
                 CannedData.dump(a));
     }
 
+    @Test
+    public void testAccumulatedStats() {
+        String spec = "gender = gender; a = salary:sum; b = salary:variance; c = jobtime:range; d = minority:valid";
+        Dataset a = Summarize.transform(data, spec);
+        assertEquals("gender|a|b|c|d|#count|#row -- " +
+                "Female|309,750|39,765,511|97\u202698|12|12|3, 4, 8, 9, 10, 11, 14, 20, 21, 23, 24, 25 -- " +
+                "Male|548,300|4.347e8|97\u202698|13|13|1, 2, 5, 6, 7, 12, 13, 15, 16, 17, 18, \u2026", CannedData.dump(a));
+    }
+
     @Test
     public void testSimpleStatsNonNumeric() {
         String spec = "gender = gender; a = jobcat: mean; b = jobcat:min;  d = jobcat: valid; e = jobcat:median; f = jobcat:stddev; g = jobcat:unique ; h = jobcat:mode";
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.stats;
+
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestQuantiles {
+
+    @Test
+    public void testHingesMatchSortedStats() {
+        Random random = new Random(1234);
+        Quantiles quantiles = new Quantiles();
+        for (int n = 1; n < 300; n += 7) {
+            quantiles.clear();
+            Object[] data = new Object[n];
+            for (int i = 0; i < n; i++) {
+                // Plenty of ties, to exercise partitioning of equal values
+                double v = random.nextInt(20) + 0.5;
+                data[i] = v;
+                quantiles.add(v);
+            }
+            Field f = Fields.makeColumnField("a", null, data);
+            double[] hinges = quantiles.tukeyHinges();
+            assertEquals(f.numProperty("q1"), hinges[0], 1e-9);
+            assertEquals(f.numProperty("median"), hinges[1], 1e-9);
+            assertEquals(f.numProperty("q3"), hinges[2], 1e-9);
+        }
+    }
+
+    @Test
+    public void testBufferIsReused() {
+        Quantiles quantiles = new Quantiles();
+        assertNull(quantiles.tukeyHinges());
+        for (int i = 100; i > 0; i--) quantiles.add(i);
+        assertEquals(50.5, quantiles.tukeyHinges()[1], 1e-9);
+        quantiles.clear();
+        quantiles.add(3);
+        quantiles.add(Double.NaN);
+        quantiles.add(1);
+        assertEquals(3, quantiles.size());
+        assertEquals(3, quantiles.tukeyHinges()[1], 1e-9);
+    }
+
+    @Test
+    public void testDigestApproximatesQuantiles() {
+        Random random = new Random(99);
+        TDigest digest = new TDigest(200);
+        for (int i = 0; i < 100000; i++) digest.add(random.nextDouble());
+        assertEquals(100000, digest.count(), 1e-9);
+        assertEquals(0.25, digest.quantile(0.25), 0.01);
+        assertEquals(0.5, digest.quantile(0.5), 0.01);
+        assertEquals(0.99, digest.quantile(0.99), 0.002);
+    }
+}
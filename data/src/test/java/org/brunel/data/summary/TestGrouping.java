@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestGrouping {
+
+    @Test
+    public void testHashedGroupsAreInSortedOrder() {
+        Field a = Fields.makeColumnField("A", null, new Object[]{"b", "a", "b", null, "a", "b", "a", "b"});
+        Field b = Fields.makeColumnField("B", null, new Object[]{2.0, 1.0, 1.0, 1.0, 1.0, 2.0, 1.0, 1.0});
+        Field[] fields = new Field[]{a, b};
+        int[] group = new int[8];
+        int count = Grouping.assignGroups(new FieldRowComparison(fields, null, false), fields, group);
+        assertEquals(4, count);
+        assertEquals("2, 0, 1, 3, 0, 2, 0, 1", Data.join(group));
+
+        int[] offsets = new int[count + 1];
+        int[] rows = Grouping.makeGroupRows(group, count, offsets);
+        assertEquals("0, 3, 5, 7, 8", Data.join(offsets));
+        assertEquals("1, 4, 6, 2, 7, 0, 5, 3", Data.join(rows));
+    }
+
+    @Test
+    public void testUniqueKeysAreSorted() {
+        Field a = Fields.makeColumnField("A", null, new Object[]{5.0, 3.0, 4.0, 1.0});
+        Field[] fields = new Field[]{a};
+        int[] group = new int[4];
+        int count = Grouping.assignGroups(new FieldRowComparison(fields, null, false), fields, group);
+        assertEquals(4, count);
+        assertEquals("3, 1, 2, 0", Data.join(group));
+    }
+
+    @Test
+    public void testNumbersOfDifferentTypesGroupTogether() {
+        // Enough repeats that groups are found by hashing
+        Object[] values = new Object[24];
+        Object[] pattern = new Object[]{1, 1.0, 2L, 2.0, 1, 3.5};
+        for (int i = 0; i < values.length; i++) values[i] = pattern[i % pattern.length];
+        Field a = Fields.makeColumnField("A", null, values);
+        Field[] fields = new Field[]{a};
+        int[] group = new int[24];
+        int count = Grouping.assignGroups(new FieldRowComparison(fields, null, false), fields, group);
+        assertEquals(3, count);
+        assertEquals("0, 0, 1, 1, 0, 2", Data.join(Arrays.copyOf(group, 6)));
+    }
+}
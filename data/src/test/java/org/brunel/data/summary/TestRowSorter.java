@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.brunel.data.values.DictionaryColumnProvider;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestRowSorter {
+
+    @Test
+    public void testSortMatchesComparison() {
+        Random random = new Random(17);
+        int n = 5000;
+        Object[] numbers = new Object[n], dates = new Object[n], strings = new Object[n], mixed = new Object[n];
+        double[] special = {Double.NaN, -0.0, 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+        for (int i = 0; i < n; i++) {
+            int r = random.nextInt(20);
+            numbers[i] = r == 0 ? null : r == 1 ? special[random.nextInt(5)] : (double) (random.nextInt(200) - 100) / 4;
+            dates[i] = r == 2 ? null : new Date(random.nextInt(1000) * 3600000L);
+            strings[i] = r == 3 ? null : "s" + random.nextInt(50);
+            mixed[i] = r == 4 ? null : r < 10 ? (Object) ("m" + random.nextInt(5)) : (Object) random.nextInt(7);
+        }
+        Field[] fields = {Fields.makeColumnField("n", null, numbers), Fields.makeColumnField("d", null, dates),
+                new Field("s", null, DictionaryColumnProvider.fromObjects(strings)),
+                Fields.makeColumnField("m", null, mixed)};
+
+        // Single fields use keys (radix sorted), multiple fields merge sort them, and mixed objects are compared
+        check(new Field[]{fields[0]}, new boolean[]{true}, true);
+        check(new Field[]{fields[0]}, new boolean[]{false}, true);
+        check(new Field[]{fields[1]}, new boolean[]{false}, true);
+        check(new Field[]{fields[2]}, null, false);
+        check(new Field[]{fields[2], fields[0], fields[1]}, new boolean[]{true, false, true}, true);
+        check(new Field[]{fields[3], fields[0]}, new boolean[]{false, true}, true);
+    }
+
+    @Test
+    public void testOrder() {
+        assertEquals("3, 1, 4, 0, 2", Data.join(Data.order(new Object[]{5.0, 2, null, -1.5, 4}, true)));
+        assertEquals("2, 0, 4, 1, 3", Data.join(Data.order(new Object[]{5.0, 2, null, -1.5, 4}, false)));
+        assertEquals("1, 0, 2", Data.join(Data.order(new Object[]{"b", "a", "c"}, true)));
+    }
+
+    private void check(Field[] fields, boolean[] ascending, boolean rowsBreakTies) {
+        FieldRowComparison comparison = new FieldRowComparison(fields, ascending, rowsBreakTies);
+        Integer[] expected = new Integer[fields[0].rowCount()];
+        for (int i = 0; i < expected.length; i++) expected[i] = i;
+        Arrays.sort(expected, comparison);
+        assertArrayEquals(Data.toPrimitive(expected), comparison.makeSortedOrder());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.util;
+
+import org.brunel.translator.JSTranslation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that date recognition gives the same results as the date formats
+ */
+public class TestDates {
+
+    @JSTranslation(ignore = true)
+    @Test
+    public void testScannedFormsMatchFormats() {
+        String[] fixed = new String[]{
+                "2010-01-05", "2010-1-5", "2012-02-29", "2011-02-29", "2010-13-01", "1500-01-01",
+                "2010-01-05T10:20", "2010-01-05T10:20:30", "2010-01-05T10:20:30.5", "2010-01-05T10:20:30.123",
+                "2010-01-05T10:20:30.1234", "2010-01-05T10:20:30Z", "2010-01-05T24:00:00", "2010-01-05 10:20:30",
+                "2010-01-05 10:20", "2010-01-05 10:20:30.5", "1/5/2010", "12/31/1999", "13/5/2010", "1/5/10",
+                "1/5/2010 10:20", "1/5/2010 10:20:30", "1/5/2010T10:20", "2/30/2010", "1/5/2010 10:61"
+        };
+        for (String s : fixed) assertEquals(s, Dates.parseWithFormats(s), Dates.parse(s));
+
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            String s;
+            int year = 1590 + random.nextInt(500), month = random.nextInt(14), day = random.nextInt(33);
+            String time = random.nextBoolean() ? "" : random.nextInt(25) + ":" + random.nextInt(61) + ":" + random.nextInt(61);
+            if (random.nextBoolean())
+                s = year + "-" + month + "-" + day + (time.isEmpty() ? "" : "T" + time);
+            else
+                s = month + "/" + day + "/" + year + (time.isEmpty() ? "" : " " + time);
+            assertEquals(s, Dates.parseWithFormats(s), Dates.parse(s));
+        }
+    }
+
+    @JSTranslation(ignore = true)
+    @Test
+    public void testParseFromManyThreads() throws Exception {
+        final String[] text = new String[500];
+        for (int i = 0; i < text.length; i++) text[i] = "Jan " + (i % 28 + 1) + ", " + (1900 + i);
+        final Date[] expected = new Date[text.length];
+        for (int i = 0; i < text.length; i++) expected[i] = Dates.parseWithFormats(text[i]);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        for (int i = 0; i < text.length; i++)
+                            if (!expected[i].equals(Dates.parse(text[i]))) return false;
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) assertEquals(true, result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
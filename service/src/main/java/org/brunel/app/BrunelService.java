@@ -22,7 +22,6 @@ import org.brunel.build.util.ContentReader;
 import org.brunel.build.util.DataCache;
 import org.brunel.data.Dataset;
 import org.brunel.match.BestMatch;
-import org.brunel.util.BrunelD3Result;
 import org.brunel.util.D3Integration;
 import org.brunel.util.WebDisplay;
 
@@ -41,7 +40,12 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 
 /**
@@ -97,7 +101,25 @@ public class BrunelService extends Application {
 
     	try {
     		if (prefix != null) brunelSrc = D3Integration.prefixAllDataStatements(brunelSrc, prefix);
-    		BrunelD3Result result = D3Integration.createBrunelResult(data, brunelSrc, width, height, visId, controlsId);
+    		final D3Builder builder = D3Integration.createBrunelBuilder(data, brunelSrc, width, height, visId, controlsId);
+    		//Make the parts that are not streamed now, so their errors are reported below
+    		builder.getStyleOverrides();
+    		builder.getControls();
+    		//Stream the result so large data tables are not built as one String
+    		StreamingOutput result = new StreamingOutput() {
+    			public void write(OutputStream os) throws IOException {
+    				try {
+    					Writer writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+    					D3Integration.writeBrunelJSON(builder, writer);
+    					writer.flush();
+    				}
+    				catch (RuntimeException ex) {
+    					//Reported as an error response unless output has already been sent
+    					ex.printStackTrace();
+    					throw makeException(ex.getMessage(), ex, Status.INTERNAL_SERVER_ERROR.getStatusCode(), false);
+    				}
+    			}
+    		};
     		return Response.ok(result).header("Access-Control-Allow-Origin", "*").build();
     	}
     	catch (Exception ex) {
@@ -18,6 +18,8 @@ package org.brunel.app;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 
@@ -25,6 +27,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 
@@ -41,7 +44,8 @@ public class JSONMessageBodyWriter<T> implements MessageBodyWriter<T> {
 	private final Gson gson = new Gson();
 
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mt) {
-        return true;
+        //Streamed content writes itself
+        return !StreamingOutput.class.isAssignableFrom(type);
     }
 
     public long getSize(T t, Class<?> aClass, Type type, Annotation[] annotations, MediaType mediaType) {
@@ -54,9 +58,9 @@ public class JSONMessageBodyWriter<T> implements MessageBodyWriter<T> {
 
 
     	//Return as UTF-8 (for python parsing)
-    	String json =  gson.toJson(gsonArtifact);
-    	byte[] utf8json = json.getBytes("UTF8");
-	    os.write(utf8json);
+    	Writer writer = new OutputStreamWriter(os, "UTF8");
+    	gson.toJson(gsonArtifact, writer);
+    	writer.flush();
 
     }
 